@@ -3,6 +3,7 @@ package uk.gov.ons.census.action.builders;
 import java.time.OffsetDateTime;
 import java.util.UUID;
 import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.model.dto.CasesSelected;
 import uk.gov.ons.census.action.model.dto.Event;
 import uk.gov.ons.census.action.model.dto.EventType;
 import uk.gov.ons.census.action.model.dto.FieldCaseSelected;
@@ -39,6 +40,38 @@ public class CaseSelectedBuilder {
     return responseManagementEvent;
   }
 
+  public ResponseManagementEvent buildPrintCasesSelectedMessage(
+      UUID batchId, String packCode, UUID actionRuleId, long[] caseRefs) {
+    ResponseManagementEvent responseManagementEvent =
+        buildEventWithoutPayload(EventType.PRINT_CASES_SELECTED);
+    CasesSelected casesSelected = buildCasesSelected(actionRuleId, caseRefs);
+    responseManagementEvent.getPayload().setCasesSelected(casesSelected);
+
+    casesSelected.setBatchId(batchId == null ? null : batchId.toString());
+    casesSelected.setPackCode(packCode);
+
+    return responseManagementEvent;
+  }
+
+  public ResponseManagementEvent buildFieldCasesSelectedMessage(
+      UUID actionRuleId, long[] caseRefs) {
+    ResponseManagementEvent responseManagementEvent =
+        buildEventWithoutPayload(EventType.FIELD_CASES_SELECTED);
+    responseManagementEvent
+        .getPayload()
+        .setCasesSelected(buildCasesSelected(actionRuleId, caseRefs));
+
+    return responseManagementEvent;
+  }
+
+  private CasesSelected buildCasesSelected(UUID actionRuleId, long[] caseRefs) {
+    CasesSelected casesSelected = new CasesSelected();
+    casesSelected.setActionRuleId(actionRuleId);
+    casesSelected.setCaseCount(caseRefs.length);
+    casesSelected.setCaseRefs(caseRefs);
+    return casesSelected;
+  }
+
   private ResponseManagementEvent buildEventWithoutPayload(EventType eventType) {
     ResponseManagementEvent responseManagementEvent = new ResponseManagementEvent();
     Event event = new Event();
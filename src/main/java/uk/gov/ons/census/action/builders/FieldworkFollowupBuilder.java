@@ -1,13 +1,14 @@
 package uk.gov.ons.census.action.builders;
 
 import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.model.CaseDetails;
 import uk.gov.ons.census.action.model.dto.FieldworkFollowup;
-import uk.gov.ons.census.action.model.entity.Case;
 
 @Component
 public class FieldworkFollowupBuilder {
 
-  public FieldworkFollowup buildFieldworkFollowup(Case caze, String actionPlan, String actionType) {
+  public FieldworkFollowup buildFieldworkFollowup(
+      CaseDetails caze, String actionPlan, String actionType) {
 
     FieldworkFollowup followup = new FieldworkFollowup();
     followup.setAddressLine1(caze.getAddressLine1());
@@ -1,29 +1,16 @@
 package uk.gov.ons.census.action.builders;
 
-import java.util.Set;
+import static uk.gov.ons.census.action.utility.ActionTypeHelper.doesNotRequireUacQid;
+
 import java.util.UUID;
 import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.model.CaseDetails;
 import uk.gov.ons.census.action.model.UacQidTuple;
 import uk.gov.ons.census.action.model.dto.PrintFileDto;
 import uk.gov.ons.census.action.model.entity.ActionType;
-import uk.gov.ons.census.action.model.entity.Case;
 
 @Component
 public class PrintFileDtoBuilder {
-  private static final Set<ActionType> doesNotRequireUacQidActionTypes =
-      Set.of(
-          ActionType.P_RL_1RL1A,
-          ActionType.P_RL_1RL2BA,
-          ActionType.P_RL_2RL1A,
-          ActionType.P_RL_2RL2BA,
-          ActionType.P_RL_1IRL2B,
-          ActionType.P_RL_1IRL1,
-          ActionType.P_RL_1RL4A,
-          ActionType.P_NC_NCLTA1,
-          ActionType.P_NC_NCLTA2B
-          // Adding to this list will result in no UAC being sent on the printed
-          // letter/questionnaire. Please be certain of what you're doing before adding to it.
-          );
   private final UacQidLinkBuilder uacQidLinkBuilder;
 
   public PrintFileDtoBuilder(UacQidLinkBuilder uacQidLinkBuilder) {
@@ -31,13 +18,15 @@ public class PrintFileDtoBuilder {
   }
 
   public PrintFileDto buildPrintFileDto(
-      Case selectedCase, String packCode, UUID batchId, ActionType actionType, UUID actionRuleId) {
+      CaseDetails selectedCase,
+      String packCode,
+      UUID batchId,
+      ActionType actionType,
+      UUID actionRuleId) {
 
     PrintFileDto printFileDto = new PrintFileDto();
 
-    // "EQ launched but not submitted/completed" reminders don't have a UAC-QID pair for security
-    // because the respondent has already partially filled in their EQ.
-    if (!doesNotRequireUacQidActionTypes.contains(actionType)) {
+    if (!doesNotRequireUacQid(actionType)) {
       UacQidTuple uacQidTuple =
           uacQidLinkBuilder.getUacQidLinks(selectedCase, actionType, actionRuleId);
 
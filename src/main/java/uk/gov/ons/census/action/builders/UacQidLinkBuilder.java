@@ -1,10 +1,15 @@
 package uk.gov.ons.census.action.builders;
 
 import static uk.gov.ons.census.action.model.dto.EventType.RM_UAC_CREATED;
+import static uk.gov.ons.census.action.utility.ActionTypeHelper.doesNotRequireUacQid;
 import static uk.gov.ons.census.action.utility.ActionTypeHelper.isExpectedCapacityActionType;
 
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -12,14 +17,15 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import uk.gov.ons.census.action.cache.UacQidCache;
+import uk.gov.ons.census.action.model.CaseDetails;
 import uk.gov.ons.census.action.model.UacQidTuple;
 import uk.gov.ons.census.action.model.dto.Event;
 import uk.gov.ons.census.action.model.dto.Payload;
 import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
 import uk.gov.ons.census.action.model.dto.UacQidCreated;
 import uk.gov.ons.census.action.model.dto.UacQidDTO;
+import uk.gov.ons.census.action.model.entity.ActionHandler;
 import uk.gov.ons.census.action.model.entity.ActionType;
-import uk.gov.ons.census.action.model.entity.Case;
 import uk.gov.ons.census.action.model.entity.UacQidLink;
 import uk.gov.ons.census.action.model.repository.UacQidLinkRepository;
 
@@ -72,6 +78,10 @@ public class UacQidLinkBuilder {
   private final RabbitTemplate rabbitTemplate;
   private final String uacQidCreatedExchange;
 
+  // Set while building a pipelined chunk, whose build threads mustn't query the DB themselves
+  private final ThreadLocal<Map<UUID, List<UacQidLink>>> prefetchedUacQidLinks =
+      new ThreadLocal<>();
+
   public UacQidLinkBuilder(
       UacQidLinkRepository uacQidLinkRepository,
       UacQidCache uacQidCache,
@@ -84,20 +94,43 @@ public class UacQidLinkBuilder {
   }
 
   public UacQidTuple getUacQidLinks(
-      Case linkedCase, ActionType actionType, UUID actionRuleOrFulfilmentBatchId) {
+      CaseDetails linkedCase, ActionType actionType, UUID actionRuleOrFulfilmentBatchId) {
     if (isInitialContactNotExpectedCapacityActionType(actionType)) {
       return fetchExistingUacQidPairsForAction(linkedCase, actionType);
-    } else if (isExpectedCapacityActionType(actionType)) {
-      // We override the address level for these action types because we want to create individual
-      // uac qid pairs
-      return createNewUacQidPairsForAction(
-          linkedCase, actionType, "U", actionRuleOrFulfilmentBatchId);
     } else {
       return createNewUacQidPairsForAction(linkedCase, actionType, actionRuleOrFulfilmentBatchId);
     }
   }
 
-  public UacQidLink createNewUacQidPair(Case linkedCase, String questionnaireType, UUID batchId) {
+  /**
+   * Reads the UAC-QID links of a whole chunk's cases in one query, on the chunk's own thread, so
+   * that they can be handed to the build threads with {@link #runWithUacQidLinks}. Every case asked
+   * for is in the map, even if it has no links.
+   */
+  public Map<UUID, List<UacQidLink>> findUacQidLinks(Collection<UUID> caseIds) {
+    Map<UUID, List<UacQidLink>> uacQidLinks = new HashMap<>();
+    if (caseIds.isEmpty()) {
+      return uacQidLinks;
+    }
+
+    caseIds.forEach(caseId -> uacQidLinks.put(caseId, new ArrayList<>()));
+    for (UacQidLink uacQidLink : uacQidLinkRepository.findByCaseIdIn(caseIds)) {
+      uacQidLinks.get(uacQidLink.getCaseId()).add(uacQidLink);
+    }
+    return uacQidLinks;
+  }
+
+  public void runWithUacQidLinks(Map<UUID, List<UacQidLink>> uacQidLinks, Runnable work) {
+    prefetchedUacQidLinks.set(uacQidLinks);
+    try {
+      work.run();
+    } finally {
+      prefetchedUacQidLinks.remove();
+    }
+  }
+
+  public UacQidLink createNewUacQidPair(
+      CaseDetails linkedCase, String questionnaireType, UUID batchId) {
     UacQidDTO newUacQidPair = uacQidCache.getUacQidPair(Integer.parseInt(questionnaireType));
     UacQidCreated uacQidCreated = new UacQidCreated();
     uacQidCreated.setCaseId(linkedCase.getCaseId());
@@ -128,10 +161,15 @@ public class UacQidLinkBuilder {
     return uacQidLink;
   }
 
-  private UacQidTuple fetchExistingUacQidPairsForAction(Case linkedCase, ActionType actionType) {
+  private UacQidTuple fetchExistingUacQidPairsForAction(
+      CaseDetails linkedCase, ActionType actionType) {
     UUID caseId = linkedCase.getCaseId();
 
-    List<UacQidLink> uacQidLinks = uacQidLinkRepository.findByCaseId(caseId);
+    Map<UUID, List<UacQidLink>> prefetched = prefetchedUacQidLinks.get();
+    List<UacQidLink> uacQidLinks =
+        prefetched != null && prefetched.containsKey(caseId)
+            ? prefetched.get(caseId)
+            : uacQidLinkRepository.findByCaseId(caseId);
 
     if (uacQidLinks == null || uacQidLinks.isEmpty()) {
       throw new RuntimeException(
@@ -151,7 +189,7 @@ public class UacQidLinkBuilder {
   }
 
   private boolean isStateCorrectForSingleUacQidPair(
-      Case linkedCase, List<UacQidLink> uacQidLinks, ActionType actionType) {
+      CaseDetails linkedCase, List<UacQidLink> uacQidLinks, ActionType actionType) {
     return (!isQuestionnaireWelsh(linkedCase.getTreatmentCode())
             // CE_IC02 is single QID letter but includes welsh questionnaire treatment codes
             || actionType == ActionType.CE1_IC02)
@@ -159,7 +197,7 @@ public class UacQidLinkBuilder {
   }
 
   private boolean isStateCorrectForSecondWelshUacQidPair(
-      Case linkedCase, List<UacQidLink> uacQidLinks) {
+      CaseDetails linkedCase, List<UacQidLink> uacQidLinks) {
     return isQuestionnaireWelsh(linkedCase.getTreatmentCode())
         && uacQidLinks.size()
             == NUM_OF_UAC_QID_PAIRS_NEEDED_BY_A_WALES_INITIAL_CONTACT_QUESTIONNAIRE;
@@ -193,38 +231,30 @@ public class UacQidLinkBuilder {
   }
 
   private UacQidTuple createNewUacQidPairsForAction(
-      Case linkedCase,
-      ActionType actionType,
-      String addressLevel,
-      UUID actionRuleOrFulfilmentBatchId) {
-    UacQidTuple uacQidTuple = new UacQidTuple();
-    String questionnaireType =
-        calculateQuestionnaireType(linkedCase.getCaseType(), linkedCase.getRegion(), addressLevel);
+      CaseDetails linkedCase, ActionType actionType, UUID actionRuleOrFulfilmentBatchId) {
+    List<String> questionnaireTypes =
+        calculateNewQuestionnaireTypes(
+            actionType,
+            linkedCase.getCaseType(),
+            linkedCase.getRegion(),
+            linkedCase.getAddressLevel());
+    if (questionnaireTypes.isEmpty()) {
+      throw new RuntimeException(
+          String.format("Action type '%s' doesn't need new UACs", actionType));
+    }
 
+    UacQidTuple uacQidTuple = new UacQidTuple();
     uacQidTuple.setUacQidLink(
-        createNewUacQidPair(linkedCase, questionnaireType, actionRuleOrFulfilmentBatchId));
-    if (actionType.equals(ActionType.P_QU_H2)) {
+        createNewUacQidPair(linkedCase, questionnaireTypes.get(0), actionRuleOrFulfilmentBatchId));
+    if (questionnaireTypes.size() > 1) {
       uacQidTuple.setUacQidLinkWales(
           Optional.of(
               createNewUacQidPair(
-                  linkedCase, WALES_IN_WELSH_QUESTIONNAIRE_TYPE, actionRuleOrFulfilmentBatchId)));
-    } else if (actionType.equals(ActionType.CE_IC10)) {
-      uacQidTuple.setUacQidLinkWales(
-          Optional.of(
-              createNewUacQidPair(
-                  linkedCase,
-                  WALES_IN_WELSH_QUESTIONNAIRE_TYPE_CE_CASES,
-                  actionRuleOrFulfilmentBatchId)));
+                  linkedCase, questionnaireTypes.get(1), actionRuleOrFulfilmentBatchId)));
     }
     return uacQidTuple;
   }
 
-  private UacQidTuple createNewUacQidPairsForAction(
-      Case linkedCase, ActionType actionType, UUID actionRuleOrFulfilmentBatchId) {
-    return createNewUacQidPairsForAction(
-        linkedCase, actionType, linkedCase.getAddressLevel(), actionRuleOrFulfilmentBatchId);
-  }
-
   private boolean isQuestionnaireWelsh(String treatmentCode) {
     return ((treatmentCode.startsWith(HOUSEHOLD_INITIAL_CONTACT_QUESTIONNAIRE_TREATMENT_CODE_PREFIX)
             || treatmentCode.startsWith(CE_INITIAL_CONTACT_QUESTIONNAIRE_TREATMENT_CODE_PREFIX)
@@ -249,10 +279,37 @@ public class UacQidLinkBuilder {
         String.format("Can't find UAC QID '%s' for case", otherAllowableQuestionnaireType));
   }
 
-  private boolean isInitialContactNotExpectedCapacityActionType(ActionType actionType) {
+  // These action types reuse the case's existing UAC-QID pairs, rather than creating new ones
+  public static boolean isInitialContactNotExpectedCapacityActionType(ActionType actionType) {
     return initialContactNotExpectedCapacityActionTypes.contains(actionType);
   }
 
+  /**
+   * The questionnaire types of the new UAC-QID pairs a case needs for an action type, if any, with
+   * the Welsh language pair second. This is what new pairs are created from, and what the cache
+   * forecasts from, so the two can't disagree.
+   */
+  public static List<String> calculateNewQuestionnaireTypes(
+      ActionType actionType, String caseType, String region, String addressLevel) {
+    if (actionType.getHandler() != ActionHandler.PRINTER
+        || initialContactNotExpectedCapacityActionTypes.contains(actionType)
+        || doesNotRequireUacQid(actionType)) {
+      return List.of();
+    }
+
+    // We override the address level for expected capacity action types because we want to create
+    // individual uac qid pairs
+    String questionnaireType =
+        calculateQuestionnaireType(
+            caseType, region, isExpectedCapacityActionType(actionType) ? "U" : addressLevel);
+    if (actionType.equals(ActionType.P_QU_H2)) {
+      return List.of(questionnaireType, WALES_IN_WELSH_QUESTIONNAIRE_TYPE);
+    } else if (actionType.equals(ActionType.CE_IC10)) {
+      return List.of(questionnaireType, WALES_IN_WELSH_QUESTIONNAIRE_TYPE_CE_CASES);
+    }
+    return List.of(questionnaireType);
+  }
+
   public static String calculateQuestionnaireType(
       String caseType, String region, String addressLevel) {
     String country = region.substring(0, 1);
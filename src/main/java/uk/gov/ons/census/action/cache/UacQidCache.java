@@ -1,23 +1,52 @@
 package uk.gov.ons.census.action.cache;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import uk.gov.ons.census.action.client.UacQidServiceClient;
 import uk.gov.ons.census.action.model.dto.UacQidDTO;
 
+/**
+ * Holds a pool of UAC-QID pairs per questionnaire type, topped up from the UAC service in the
+ * background whenever it drops below the low watermark. Getting a pair takes no locks: the check
+ * for a top up is a compare-and-set on the type's pool, and the pool itself is lock-free.
+ *
+ * <p>When adaptive, each questionnaire type's low watermark and fetch count are sized from its
+ * measured consumption rate and the UAC service's measured latency: the watermark is enough pairs
+ * to last twice as long as a top up takes, and a top up fetches enough for the target supply time.
+ * Both are bounded by the configured limits, and no top up takes the total cached over the maximum
+ * unless its type has run out.
+ *
+ * <p>A chunk can reserve all the pairs it needs up front instead, so its cases don't each take a
+ * pair and register a rollback hook of their own.
+ *
+ * <p>A type which is a long way short can have several fetches from the UAC service in flight at
+ * once, up to a limit per type. The shortfall is split between them, so long as each still asks for
+ * a worthwhile number of pairs.
+ *
+ * <p>With correlated publisher confirms, and no outbox, a chunk's messages are published before
+ * its transaction commits and can't be taken back, so a pair which has been handed out is never
+ * put back if the transaction rolls back: its case may already have been announced or printed.
+ * Only a reservation's unused pairs go back.
+ */
 @Component
 public class UacQidCache {
+  private static final long RATE_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
   private final UacQidServiceClient uacQidServiceClient;
+  private final ThreadPoolExecutor fetchExecutor;
 
   @Value("${uacservice.uacqid-cache-min}")
   private int cacheMin;
@@ -28,22 +57,80 @@ public class UacQidCache {
   @Value("${uacservice.uacqid-get-timeout}")
   private long uacQidGetTimout;
 
-  private static final Executor executor = Executors.newFixedThreadPool(8);
+  @Value("${uacservice.uacqid-pool-capacity}")
+  private int poolCapacity;
+
+  @Value("${uacservice.uacqid-adaptive.enabled}")
+  private boolean adaptive;
+
+  @Value("${uacservice.uacqid-adaptive.min-watermark}")
+  private int minWatermark;
+
+  @Value("${uacservice.uacqid-adaptive.min-fetch-count}")
+  private int minFetch;
+
+  @Value("${uacservice.uacqid-adaptive.max-fetch-count}")
+  private int maxFetch;
+
+  @Value("${uacservice.uacqid-adaptive.target-supply}")
+  private double targetSupplySeconds;
 
-  private Map<Integer, BlockingQueue<UacQidDTO>> uacQidLinkQueueMap = new ConcurrentHashMap<>();
-  private Set<Integer> isToppingUpQueue = ConcurrentHashMap.newKeySet();
+  @Value("${uacservice.uacqid-adaptive.max-cached}")
+  private int maxCached;
 
-  public UacQidCache(UacQidServiceClient uacQidServiceClient) {
+  @Value("${uacservice.uacqid-fetch.max-concurrent-per-type}")
+  private int maxConcurrentFetches;
+
+  @Value("${uacservice.uacqid-fetch.min-request-size}")
+  private int minRequestSize;
+
+  @Value("${spring.rabbitmq.publisher-confirm-type}")
+  private String publisherConfirmType;
+
+  @Value("${queueconfig.outbox.enabled}")
+  private boolean outboxEnabled;
+
+  private Map<Integer, UacQidPool> uacQidPoolMap = new ConcurrentHashMap<>();
+  private Map<Integer, UacQidDemand> uacQidDemandMap = new ConcurrentHashMap<>();
+  private final ThreadLocal<UacQidReservation> boundReservation = new ThreadLocal<>();
+
+  public UacQidCache(
+      UacQidServiceClient uacQidServiceClient,
+      @Value("${uacservice.uacqid-fetch.threads}") int fetchThreads) {
     this.uacQidServiceClient = uacQidServiceClient;
+
+    // Shared by every questionnaire type, which each have their own limit on fetches in flight
+    fetchExecutor =
+        new ThreadPoolExecutor(
+            fetchThreads,
+            fetchThreads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("uac-qid-fetch-"));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    fetchExecutor.shutdownNow();
   }
 
   public UacQidDTO getUacQidPair(int questionnaireType) {
-    uacQidLinkQueueMap.computeIfAbsent(questionnaireType, key -> new LinkedBlockingDeque<>());
+    // The chunk's reservation already has a rollback hook for its pairs
+    UacQidReservation uacQidReservation = boundReservation.get();
+    if (uacQidReservation != null) {
+      UacQidDTO uacQidDTO = uacQidReservation.poll(questionnaireType);
+      if (uacQidDTO != null) {
+        return uacQidDTO;
+      }
+    }
+
+    UacQidPool uacQidPool = getUacQidPool(questionnaireType);
+    UacQidDemand uacQidDemand = getUacQidDemand(questionnaireType);
 
     try {
-      topUpQueue(questionnaireType);
-      UacQidDTO uacQidDTO =
-          uacQidLinkQueueMap.get(questionnaireType).poll(uacQidGetTimout, TimeUnit.SECONDS);
+      topUpQueue(questionnaireType, uacQidPool, uacQidDemand, 0);
+      UacQidDTO uacQidDTO = uacQidPool.take(TimeUnit.SECONDS.toNanos(uacQidGetTimout));
 
       if (uacQidDTO == null) {
         // The cache topper upper is executed in a separate thread, which can fail if uacqid api
@@ -52,15 +139,18 @@ public class UacQidCache {
         throw new RuntimeException(
             "Timeout getting UacQidDTO for questionnaireType :" + questionnaireType);
       }
+      uacQidDemand.recordTaken(1);
 
       // Put the UAC-QID back into the cache if the transaction rolls back
-      if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      if (TransactionSynchronizationManager.isActualTransactionActive()
+          && !publishedBeforeCommit()) {
         TransactionSynchronizationManager.registerSynchronization(
             new TransactionSynchronization() {
               @Override
               public void afterCompletion(int status) {
                 if (status == STATUS_ROLLED_BACK) {
-                  uacQidLinkQueueMap.get(questionnaireType).add(uacQidDTO);
+                  uacQidPool.add(uacQidDTO);
+                  uacQidDemand.recordTaken(-1);
                 }
               }
             });
@@ -72,25 +162,279 @@ public class UacQidCache {
     }
   }
 
-  private void topUpQueue(int questionnaireType) {
-    synchronized (isToppingUpQueue) {
-      if (!isToppingUpQueue.contains(questionnaireType)
-          && uacQidLinkQueueMap.get(questionnaireType).size() < cacheMin) {
-        isToppingUpQueue.add(questionnaireType);
+  /**
+   * Takes a number of pairs of one questionnaire type in one go, waiting for a top up if there
+   * aren't enough queued, and registers a single hook to put them all back if the transaction rolls
+   * back, unless they may already have been published.
+   */
+  public List<UacQidDTO> reserve(int questionnaireType, int count) {
+    List<UacQidDTO> uacQids = takeUacQidPairs(questionnaireType, count);
+
+    if (TransactionSynchronizationManager.isActualTransactionActive()
+        && !publishedBeforeCommit()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              if (status == STATUS_ROLLED_BACK) {
+                putBack(questionnaireType, uacQids);
+              }
+            }
+          });
+    }
+
+    return uacQids;
+  }
+
+  /**
+   * Takes all the pairs a chunk needs, per questionnaire type, before any of its cases are built.
+   * The reservation's pairs are handed out by getUacQidPair while it's bound to the building
+   * thread. A single hook puts them all back if the transaction rolls back, or puts back any which
+   * weren't needed if it commits or if the ones it handed out may already have been published.
+   */
+  public UacQidReservation reserve(Map<Integer, Integer> pairsPerType) {
+    Map<Integer, List<UacQidDTO>> reservedPairs = new HashMap<>();
+    try {
+      pairsPerType.forEach(
+          (questionnaireType, count) -> {
+            if (count > 0) {
+              reservedPairs.put(questionnaireType, takeUacQidPairs(questionnaireType, count));
+            }
+          });
+    } catch (RuntimeException e) {
+      reservedPairs.forEach(this::putBack);
+      throw e;
+    }
+
+    UacQidReservation uacQidReservation = new UacQidReservation(reservedPairs);
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              Map<Integer, List<UacQidDTO>> unusedPairs = uacQidReservation.drainUnusedPairs();
+              if (status == STATUS_ROLLED_BACK && !publishedBeforeCommit()) {
+                uacQidReservation.getReservedPairs().forEach(UacQidCache.this::putBack);
+              } else {
+                unusedPairs.forEach(UacQidCache.this::putBack);
+              }
+            }
+          });
+    }
+
+    return uacQidReservation;
+  }
+
+  private boolean publishedBeforeCommit() {
+    return "correlated".equalsIgnoreCase(publisherConfirmType) && !outboxEnabled;
+  }
+
+  // Binds the reservation to this thread while the work runs, which can be on any build thread
+  public void runWithReservation(UacQidReservation uacQidReservation, Runnable work) {
+    UacQidReservation previousReservation = boundReservation.get();
+    boundReservation.set(uacQidReservation);
+    try {
+      work.run();
+    } finally {
+      if (previousReservation != null) {
+        boundReservation.set(previousReservation);
       } else {
-        return;
+        boundReservation.remove();
       }
     }
+  }
+
+  private List<UacQidDTO> takeUacQidPairs(int questionnaireType, int count) {
+    UacQidPool uacQidPool = getUacQidPool(questionnaireType);
+    UacQidDemand uacQidDemand = getUacQidDemand(questionnaireType);
+
+    List<UacQidDTO> uacQids = new ArrayList<>(count);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(uacQidGetTimout);
+    boolean reserved = false;
+    try {
+      topUpQueue(questionnaireType, uacQidPool, uacQidDemand, count);
+      while (uacQids.size() < count) {
+        UacQidDTO uacQidDTO = uacQidPool.poll();
+        if (uacQidDTO == null) {
+          // Whatever was queued wasn't enough, so wait once for the rest
+          topUpQueue(questionnaireType, uacQidPool, uacQidDemand, count - uacQids.size());
+          uacQidDTO = uacQidPool.take(deadline - System.nanoTime());
+        }
+
+        if (uacQidDTO == null) {
+          throw new RuntimeException(
+              "Timeout reserving UacQidDTOs for questionnaireType :" + questionnaireType);
+        }
+        uacQids.add(uacQidDTO);
+      }
+
+      uacQidDemand.recordTaken(count);
+      reserved = true;
+      return uacQids;
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e.getMessage());
+    } finally {
+      if (!reserved) {
+        uacQidPool.addAll(uacQids);
+      }
+    }
+  }
 
-    executor.execute(
-        () -> {
-          try {
-            uacQidLinkQueueMap
-                .get(questionnaireType)
-                .addAll(uacQidServiceClient.getUacQids(questionnaireType, cacheFetch));
-          } finally {
-            isToppingUpQueue.remove(questionnaireType);
-          }
-        });
+  private void putBack(int questionnaireType, List<UacQidDTO> uacQids) {
+    if (uacQids.isEmpty()) {
+      return;
+    }
+
+    getUacQidPool(questionnaireType).addAll(uacQids);
+    getUacQidDemand(questionnaireType).recordTaken(-uacQids.size());
+  }
+
+  // A plain get first, because computeIfAbsent can lock even when the key's already there
+  private UacQidPool getUacQidPool(int questionnaireType) {
+    UacQidPool uacQidPool = uacQidPoolMap.get(questionnaireType);
+    return uacQidPool != null
+        ? uacQidPool
+        : uacQidPoolMap.computeIfAbsent(questionnaireType, key -> new UacQidPool(poolCapacity));
+  }
+
+  private UacQidDemand getUacQidDemand(int questionnaireType) {
+    UacQidDemand uacQidDemand = uacQidDemandMap.get(questionnaireType);
+    return uacQidDemand != null
+        ? uacQidDemand
+        : uacQidDemandMap.computeIfAbsent(
+            questionnaireType, key -> new UacQidDemand(System.nanoTime()));
+  }
+
+  // Reserving pairs in bulk needs them on top of the low watermark, and at least that many fetched
+  private void topUpQueue(
+      int questionnaireType, UacQidPool uacQidPool, UacQidDemand uacQidDemand, int pairsWanted) {
+    if (adaptive) {
+      uacQidDemand.sample(System.nanoTime(), RATE_SAMPLE_INTERVAL_NANOS);
+    }
+
+    // Pairs already on their way count, so concurrent fetches don't all chase the same shortfall
+    int queued = uacQidPool.size();
+    int supply = queued + uacQidPool.pairsBeingFetched();
+    if (supply >= getLowWatermark(uacQidDemand) + pairsWanted
+        || uacQidPool.freeFetches(maxConcurrentFetches) == 0) {
+      return;
+    }
+
+    int fetchCount =
+        Math.min(
+            Math.max(getFetchCount(uacQidDemand, queued), pairsWanted),
+            uacQidPool.capacity() - supply);
+    startFetches(questionnaireType, uacQidPool, uacQidDemand, fetchCount);
+  }
+
+  /**
+   * Starts topping up a questionnaire type's pool to the number of pairs it's expected to need
+   * soon, if it isn't already being topped up, so that the first cases needing them don't wait.
+   * Returns the number of pairs being fetched.
+   */
+  public int preWarm(int questionnaireType, int expectedPairs) {
+    UacQidPool uacQidPool = getUacQidPool(questionnaireType);
+    UacQidDemand uacQidDemand = getUacQidDemand(questionnaireType);
+
+    int fetchCount =
+        Math.min(expectedPairs, uacQidPool.capacity())
+            - uacQidPool.size()
+            - uacQidPool.pairsBeingFetched();
+    if (adaptive) {
+      fetchCount = Math.min(fetchCount, maxCached - getTotalCached());
+    }
+
+    return startFetches(questionnaireType, uacQidPool, uacQidDemand, fetchCount);
+  }
+
+  // Returns the number of pairs being fetched, which is less than asked for if fetches ran out
+  private int startFetches(
+      int questionnaireType, UacQidPool uacQidPool, UacQidDemand uacQidDemand, int fetchCount) {
+    if (fetchCount <= 0) {
+      return 0;
+    }
+
+    int requests =
+        Math.min(
+            uacQidPool.freeFetches(maxConcurrentFetches),
+            Math.max(fetchCount / Math.max(minRequestSize, 1), 1));
+    if (requests == 0) {
+      return 0;
+    }
+
+    int started = 0;
+    for (int i = 0; i < requests; i++) {
+      // Share the pairs out evenly, the first few requests taking any remainder
+      int requestSize = fetchCount / requests + (i < fetchCount % requests ? 1 : 0);
+      if (!uacQidPool.tryStartFetch(requestSize, maxConcurrentFetches)) {
+        break;
+      }
+
+      fetchUacQids(questionnaireType, uacQidPool, uacQidDemand, requestSize);
+      started += requestSize;
+    }
+    return started;
+  }
+
+  private void fetchUacQids(
+      int questionnaireType, UacQidPool uacQidPool, UacQidDemand uacQidDemand, int fetchCount) {
+    try {
+      fetchExecutor.execute(
+          () -> {
+            List<UacQidDTO> uacQids;
+            try {
+              long fetchStartNanos = System.nanoTime();
+              uacQids = uacQidServiceClient.getUacQids(questionnaireType, fetchCount);
+              uacQidDemand.recordFetch(System.nanoTime() - fetchStartNanos);
+            } finally {
+              uacQidPool.finishFetch(fetchCount);
+            }
+
+            // Only once the fetch is finished, otherwise whoever takes the last of these pairs
+            // could still see them as being fetched, and wait for a top up which never starts
+            uacQidPool.addAll(uacQids);
+          });
+    } catch (RejectedExecutionException e) {
+      // Shutting down, so the fetch will never run
+      uacQidPool.finishFetch(fetchCount);
+      throw e;
+    }
+  }
+
+  private int getLowWatermark(UacQidDemand uacQidDemand) {
+    if (!adaptive) {
+      return cacheMin;
+    }
+
+    double watermark = uacQidDemand.getPairsPerSecond() * uacQidDemand.getFetchSeconds() * 2;
+    return (int) Math.min(Math.max(Math.ceil(watermark), minWatermark), maxFetch);
+  }
+
+  private int getFetchCount(UacQidDemand uacQidDemand, int queued) {
+    if (!adaptive) {
+      return cacheFetch;
+    }
+
+    double fetchCount =
+        Math.max(
+            uacQidDemand.getPairsPerSecond() * targetSupplySeconds,
+            getLowWatermark(uacQidDemand));
+    int boundedFetchCount = (int) Math.min(Math.max(Math.ceil(fetchCount), minFetch), maxFetch);
+
+    int headroom = maxCached - getTotalCached();
+    if (boundedFetchCount <= headroom) {
+      return boundedFetchCount;
+    }
+
+    // Callers are already waiting when a type's run out, so it gets a minimal top up regardless
+    return queued == 0 ? minFetch : Math.min(headroom, boundedFetchCount);
+  }
+
+  private int getTotalCached() {
+    int totalCached = 0;
+    for (UacQidPool uacQidPool : uacQidPoolMap.values()) {
+      totalCached += uacQidPool.size() + uacQidPool.pairsBeingFetched();
+    }
+    return totalCached;
   }
 }
@@ -0,0 +1,57 @@
+package uk.gov.ons.census.action.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how quickly one questionnaire type's UAC-QID pairs are being used, and how long the UAC
+ * service takes to supply more, as moving averages which the cache sizes its top ups from.
+ */
+class UacQidDemand {
+  // The weight of each new measurement against everything measured before it
+  private static final double SMOOTHING = 0.5;
+
+  private final LongAdder taken = new LongAdder();
+
+  private long sampleStartNanos;
+  private double pairsPerSecond = 0;
+  private double fetchSeconds = 0;
+
+  UacQidDemand(long nowNanos) {
+    this.sampleStartNanos = nowNanos;
+  }
+
+  // Negative when pairs are put back by a rollback
+  void recordTaken(int pairs) {
+    taken.add(pairs);
+  }
+
+  // Takes a sample of the rate, if it's been at least sampleIntervalNanos since the last one
+  synchronized void sample(long nowNanos, long sampleIntervalNanos) {
+    long elapsedNanos = nowNanos - sampleStartNanos;
+    if (elapsedNanos < sampleIntervalNanos) {
+      return;
+    }
+
+    double sampledRate =
+        Math.max(taken.sumThenReset(), 0) / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    pairsPerSecond = SMOOTHING * sampledRate + (1 - SMOOTHING) * pairsPerSecond;
+    sampleStartNanos = nowNanos;
+  }
+
+  synchronized void recordFetch(long durationNanos) {
+    double sampledSeconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    fetchSeconds =
+        fetchSeconds == 0
+            ? sampledSeconds
+            : SMOOTHING * sampledSeconds + (1 - SMOOTHING) * fetchSeconds;
+  }
+
+  synchronized double getPairsPerSecond() {
+    return pairsPerSecond;
+  }
+
+  synchronized double getFetchSeconds() {
+    return fetchSeconds;
+  }
+}
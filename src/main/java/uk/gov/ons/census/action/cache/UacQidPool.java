@@ -0,0 +1,197 @@
+package uk.gov.ons.census.action.cache;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import uk.gov.ons.census.action.model.dto.UacQidDTO;
+
+/**
+ * One questionnaire type's UAC-QID pairs, in a bounded array-backed ring buffer which any number
+ * of threads can add to and take from without locking. Each slot has a sequence number which says
+ * whether it's ready to be written or read for the current lap of the ring, so adding or taking
+ * a pair is a single compare-and-set on the tail or head once the slot's ready.
+ *
+ * <p>Threads waiting for a pair park until one's added, rather than blocking on a lock. Pairs put
+ * back by a rollback while the ring is full go into a small overflow queue, so none are ever lost.
+ */
+class UacQidPool {
+  private final AtomicReferenceArray<UacQidDTO> slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  private final Queue<UacQidDTO> overflow = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger overflowSize = new AtomicInteger();
+
+  private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger fetchesInFlight = new AtomicInteger();
+  private final AtomicInteger pairsBeingFetched = new AtomicInteger();
+
+  // The capacity is rounded up to a power of two, so a position's slot is just its low bits
+  UacQidPool(int capacity) {
+    int slotCount = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    slots = new AtomicReferenceArray<>(slotCount);
+    sequences = new AtomicLongArray(slotCount);
+    mask = slotCount - 1;
+
+    for (int i = 0; i < slotCount; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(size, 0) + overflowSize.get();
+  }
+
+  int pairsBeingFetched() {
+    return pairsBeingFetched.get();
+  }
+
+  // Claims one of the type's concurrent fetches from the UAC service, unless they're all in use
+  boolean tryStartFetch(int pairs, int maxConcurrentFetches) {
+    int fetches;
+    do {
+      fetches = fetchesInFlight.get();
+      if (fetches >= maxConcurrentFetches) {
+        return false;
+      }
+    } while (!fetchesInFlight.compareAndSet(fetches, fetches + 1));
+
+    pairsBeingFetched.addAndGet(pairs);
+    return true;
+  }
+
+  void finishFetch(int pairs) {
+    pairsBeingFetched.addAndGet(-pairs);
+    fetchesInFlight.decrementAndGet();
+  }
+
+  int freeFetches(int maxConcurrentFetches) {
+    return Math.max(maxConcurrentFetches - fetchesInFlight.get(), 0);
+  }
+
+  void addAll(Collection<UacQidDTO> uacQids) {
+    for (UacQidDTO uacQid : uacQids) {
+      if (!offer(uacQid)) {
+        addToOverflow(uacQid);
+      }
+    }
+    wakeWaiters();
+  }
+
+  void add(UacQidDTO uacQid) {
+    if (!offer(uacQid)) {
+      addToOverflow(uacQid);
+    }
+    wakeWaiters();
+  }
+
+  // Returns null if there's still no pair when the timeout's up
+  UacQidDTO take(long timeoutNanos) throws InterruptedException {
+    UacQidDTO uacQid = poll();
+    if (uacQid != null) {
+      return uacQid;
+    }
+
+    long deadline = System.nanoTime() + timeoutNanos;
+    Thread thread = Thread.currentThread();
+    waiters.add(thread);
+    try {
+      // Polling again after registering means a pair added in between can't be missed
+      while ((uacQid = poll()) == null) {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+          return null;
+        }
+
+        LockSupport.parkNanos(this, remainingNanos);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+      return uacQid;
+    } finally {
+      waiters.remove(thread);
+    }
+  }
+
+  UacQidDTO poll() {
+    long position = head.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          UacQidDTO uacQid = slots.get(index);
+          slots.lazySet(index, null);
+          // Ready to be written again on the next lap
+          sequences.set(index, position + mask + 1);
+          return uacQid;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        return pollOverflow();
+      } else {
+        position = head.get();
+      }
+    }
+  }
+
+  private boolean offer(UacQidDTO uacQid) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.lazySet(index, uacQid);
+          // Ready to be read, which also publishes the pair written above
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  private void addToOverflow(UacQidDTO uacQid) {
+    overflow.add(uacQid);
+    overflowSize.incrementAndGet();
+  }
+
+  private UacQidDTO pollOverflow() {
+    if (overflowSize.get() == 0) {
+      return null;
+    }
+
+    UacQidDTO uacQid = overflow.poll();
+    if (uacQid != null) {
+      overflowSize.decrementAndGet();
+    }
+    return uacQid;
+  }
+
+  private void wakeWaiters() {
+    for (Thread waiter : waiters) {
+      LockSupport.unpark(waiter);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package uk.gov.ons.census.action.cache;
+
+import static uk.gov.ons.census.action.utility.ActionTypeHelper.isExpectedCapacityActionType;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.builders.UacQidLinkBuilder;
+import uk.gov.ons.census.action.model.CaseTypeCount;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.repository.ActionRuleRepository;
+import uk.gov.ons.census.action.model.repository.UacQidForecastRepository;
+import uk.gov.ons.census.action.poller.FulfilmentProcessor;
+
+/**
+ * Fills the UAC-QID pools ahead of demand, rather than waiting for the first case of a new action
+ * rule to find its pool empty. The action rules due to trigger within the look ahead are mapped to
+ * the questionnaire types their cases will need, and so are the fulfilments waiting to be
+ * processed, then each type's pool is topped up to the number of pairs expected, up to a limit.
+ *
+ * <p>A rule's cases are only counted once, while it's upcoming, as that's an expensive query.
+ */
+@Component
+public class UacQidPreWarmer {
+  private static final Logger log = LoggerFactory.getLogger(UacQidPreWarmer.class);
+
+  private final ActionRuleRepository actionRuleRepository;
+  private final UacQidForecastRepository uacQidForecastRepository;
+  private final UacQidCache uacQidCache;
+  private final boolean enabled;
+  private final long lookAheadMillis;
+  private final int maxPairs;
+
+  // Only used by the scheduled thread
+  private final Map<UUID, Map<Integer, Integer>> actionRulePairs = new HashMap<>();
+
+  public UacQidPreWarmer(
+      ActionRuleRepository actionRuleRepository,
+      UacQidForecastRepository uacQidForecastRepository,
+      UacQidCache uacQidCache,
+      @Value("${uacservice.pre-warm.enabled}") boolean enabled,
+      @Value("${uacservice.pre-warm.look-ahead}") long lookAheadMillis,
+      @Value("${uacservice.pre-warm.max-pairs}") int maxPairs) {
+    this.actionRuleRepository = actionRuleRepository;
+    this.uacQidForecastRepository = uacQidForecastRepository;
+    this.uacQidCache = uacQidCache;
+    this.enabled = enabled;
+    this.lookAheadMillis = lookAheadMillis;
+    this.maxPairs = maxPairs;
+  }
+
+  @Scheduled(fixedDelayString = "${uacservice.pre-warm.frequency}")
+  public void preWarm() {
+    if (!enabled) {
+      return;
+    }
+
+    Map<Integer, Integer> expectedPairs = new HashMap<>();
+
+    List<ActionRule> upcomingActionRules =
+        actionRuleRepository.findByHasTriggeredFalseAndTriggerDateTimeBefore(
+            OffsetDateTime.now().plus(lookAheadMillis, ChronoUnit.MILLIS));
+    Set<UUID> upcomingActionRuleIds =
+        upcomingActionRules.stream().map(ActionRule::getId).collect(Collectors.toSet());
+    actionRulePairs.keySet().retainAll(upcomingActionRuleIds);
+    for (ActionRule actionRule : upcomingActionRules) {
+      actionRulePairs
+          .computeIfAbsent(actionRule.getId(), id -> countActionRulePairs(actionRule))
+          .forEach(
+              (questionnaireType, pairs) ->
+                  expectedPairs.merge(questionnaireType, pairs, Integer::sum));
+    }
+
+    uacQidForecastRepository
+        .countFulfilmentsByCode()
+        .forEach(
+            (fulfilmentCode, fulfilments) ->
+                FulfilmentProcessor.determineQuestionnaireType(fulfilmentCode)
+                    .ifPresent(
+                        questionnaireType ->
+                            expectedPairs.merge(questionnaireType, fulfilments, Integer::sum)));
+
+    expectedPairs.forEach(
+        (questionnaireType, pairs) -> {
+          int fetching = uacQidCache.preWarm(questionnaireType, Math.min(pairs, maxPairs));
+          if (fetching > 0) {
+            log.with("questionnaireType", questionnaireType)
+                .with("expectedPairs", pairs)
+                .with("fetching", fetching)
+                .info("Pre-warming UAC QID cache");
+          }
+        });
+  }
+
+  private Map<Integer, Integer> countActionRulePairs(ActionRule actionRule) {
+    Map<Integer, Integer> pairs = new HashMap<>();
+    for (CaseTypeCount caseTypeCount :
+        uacQidForecastRepository.countCasesForActionRule(actionRule)) {
+      List<String> questionnaireTypes;
+      try {
+        questionnaireTypes =
+            UacQidLinkBuilder.calculateNewQuestionnaireTypes(
+                actionRule.getActionType(),
+                caseTypeCount.getCaseType(),
+                caseTypeCount.getRegion(),
+                caseTypeCount.getAddressLevel());
+      } catch (RuntimeException e) {
+        // These cases will fail when they're processed anyway, so there's nothing to pre-warm
+        continue;
+      }
+
+      int casePairs = getPairsPerType(actionRule, caseTypeCount);
+      for (String questionnaireType : questionnaireTypes) {
+        pairs.merge(Integer.parseInt(questionnaireType), casePairs, Integer::sum);
+      }
+    }
+    return pairs;
+  }
+
+  // An expected capacity action sends a pack, with new pairs, per expected resident of the case
+  private int getPairsPerType(ActionRule actionRule, CaseTypeCount caseTypeCount) {
+    return isExpectedCapacityActionType(actionRule.getActionType())
+        ? caseTypeCount.getExpectedCapacity()
+        : caseTypeCount.getCases();
+  }
+}
@@ -0,0 +1,54 @@
+package uk.gov.ons.census.action.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import uk.gov.ons.census.action.model.dto.UacQidDTO;
+
+/**
+ * The UAC-QID pairs taken from the cache for a whole chunk in one go. While a reservation's bound
+ * to a thread, the cache hands out its pairs first, so building each case's messages doesn't touch
+ * the shared pools. The pairs can be handed out on any of the chunk's build threads.
+ *
+ * <p>The reservation has a single rollback hook for the chunk's transaction: all its pairs go back
+ * to the cache if the chunk rolls back, and only the ones it didn't hand out if it commits.
+ */
+public class UacQidReservation {
+  private final Map<Integer, List<UacQidDTO>> reservedPairs;
+  private final Map<Integer, Queue<UacQidDTO>> unusedPairs = new HashMap<>();
+
+  UacQidReservation(Map<Integer, List<UacQidDTO>> reservedPairs) {
+    this.reservedPairs = reservedPairs;
+    reservedPairs.forEach(
+        (questionnaireType, uacQids) ->
+            unusedPairs.put(questionnaireType, new ConcurrentLinkedQueue<>(uacQids)));
+  }
+
+  // Returns null if none of this type were reserved, or they've all been handed out
+  UacQidDTO poll(int questionnaireType) {
+    Queue<UacQidDTO> uacQids = unusedPairs.get(questionnaireType);
+    return uacQids != null ? uacQids.poll() : null;
+  }
+
+  Map<Integer, List<UacQidDTO>> getReservedPairs() {
+    return reservedPairs;
+  }
+
+  // Draining them means none can still be handed out once they've gone back to the cache
+  Map<Integer, List<UacQidDTO>> drainUnusedPairs() {
+    Map<Integer, List<UacQidDTO>> unused = new HashMap<>();
+    unusedPairs.forEach(
+        (questionnaireType, uacQids) -> {
+          List<UacQidDTO> drained = new ArrayList<>();
+          UacQidDTO uacQid;
+          while ((uacQid = uacQids.poll()) != null) {
+            drained.add(uacQid);
+          }
+          unused.put(questionnaireType, drained);
+        });
+    return unused;
+  }
+}
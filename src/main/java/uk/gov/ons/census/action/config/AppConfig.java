@@ -7,14 +7,22 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import java.util.TimeZone;
 import javax.annotation.PostConstruct;
 import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import uk.gov.ons.census.action.messaging.CapturingRabbitTemplate;
+import uk.gov.ons.census.action.messaging.CompactEventCodec;
+import uk.gov.ons.census.action.messaging.MessageCompressor;
+import uk.gov.ons.census.action.messaging.MessageOutbox;
+import uk.gov.ons.census.action.messaging.OutboundMessageConverter;
+import uk.gov.ons.census.action.messaging.PublisherConnections;
 
 @Configuration
 @EnableScheduling
@@ -26,21 +34,70 @@ public class AppConfig {
   }
 
   @Bean
-  public RabbitTemplate rabbitTemplate(
-      ConnectionFactory connectionFactory, Jackson2JsonMessageConverter messageConverter) {
-    RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+  public CapturingRabbitTemplate rabbitTemplate(
+      ConnectionFactory connectionFactory,
+      RabbitProperties rabbitProperties,
+      Jackson2JsonMessageConverter messageConverter,
+      MessageCompressor messageCompressor,
+      PublisherConnections publisherConnections,
+      MessageOutbox messageOutbox,
+      @Value("${queueconfig.publisher-confirms.timeout}") long confirmTimeoutMillis,
+      @Value("${queueconfig.batching.enabled}") boolean batching,
+      @Value("${queueconfig.batching.batch-size}") int batchSize,
+      @Value("${queueconfig.batching.buffer-limit}") int batchBufferLimit,
+      @Value("${queueconfig.batching.timeout}") long batchTimeoutMillis,
+      @Value("${queueconfig.compact-events.enabled}") boolean compactEvents,
+      @Value("${queueconfig.compact-events.exchanges}") String[] compactEventExchanges) {
+    CapturingRabbitTemplate rabbitTemplate = new CapturingRabbitTemplate(connectionFactory);
     rabbitTemplate.setMessageConverter(messageConverter);
-    rabbitTemplate.setChannelTransacted(true);
+
+    // Confirms are switched on for the auto-configured connection factory by
+    // spring.rabbitmq.publisher-confirm-type, but we can't tell whether it was that factory we got
+    ConfirmType confirmType = rabbitProperties.getPublisherConfirmType();
+    if (confirmType == ConfirmType.CORRELATED) {
+      if (!connectionFactory.isPublisherConfirms()) {
+        throw new IllegalStateException(
+            "Publisher confirms were asked for, but the connection factory doesn't have them on");
+      }
+
+      // The DB transaction waits for the confirms before it commits, rather than an AMQP tx.commit
+      rabbitTemplate.setConfirmTimeout(confirmTimeoutMillis);
+    } else if (confirmType == ConfirmType.SIMPLE) {
+      // A channel in confirm mode can't be transacted, and we only know how to wait for correlated
+      throw new IllegalStateException("Only correlated publisher confirms are supported");
+    } else if (connectionFactory.isPublisherConfirms()) {
+      throw new IllegalStateException(
+          "The connection factory has publisher confirms on, so its channels can't be transacted");
+    } else {
+      rabbitTemplate.setChannelTransacted(true);
+    }
+
+    if (batching) {
+      rabbitTemplate.setBatching(batchSize, batchBufferLimit, batchTimeoutMillis);
+    }
+
+    if (compactEvents) {
+      for (String exchange : compactEventExchanges) {
+        rabbitTemplate.setExchangeContentType(exchange, CompactEventCodec.CONTENT_TYPE);
+      }
+    }
+
+    rabbitTemplate.setMessageCompressor(messageCompressor);
+    rabbitTemplate.setPublisherConnections(publisherConnections);
+    rabbitTemplate.setMessageOutbox(messageOutbox);
+
     return rabbitTemplate;
   }
 
   @Bean
-  public Jackson2JsonMessageConverter messageConverter() {
+  public OutboundMessageConverter messageConverter() {
     ObjectMapper objectMapper = new ObjectMapper();
     objectMapper.registerModule(new JavaTimeModule());
     objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    return new Jackson2JsonMessageConverter(objectMapper);
+    OutboundMessageConverter messageConverter = new OutboundMessageConverter(objectMapper);
+    messageConverter.registerCodec(new CompactEventCodec());
+    return messageConverter;
   }
 
   @Bean
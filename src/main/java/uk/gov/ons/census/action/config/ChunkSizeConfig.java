@@ -0,0 +1,43 @@
+package uk.gov.ons.census.action.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.gov.ons.census.action.poller.ChunkSizeController;
+
+@Configuration
+public class ChunkSizeConfig {
+  @Value("${scheduler.chunksize}")
+  private int chunkSize;
+
+  @Value("${scheduler.adaptive-chunksize.enabled}")
+  private boolean adaptiveChunkSizeEnabled;
+
+  @Value("${scheduler.adaptive-chunksize.min}")
+  private int minChunkSize;
+
+  @Value("${scheduler.adaptive-chunksize.max}")
+  private int maxChunkSize;
+
+  @Value("${scheduler.adaptive-chunksize.target-transaction-time}")
+  private long targetTransactionMillis;
+
+  @Bean
+  public ChunkSizeController caseChunkSizeController() {
+    return buildChunkSizeController("cases");
+  }
+
+  @Bean
+  public ChunkSizeController fulfilmentChunkSizeController() {
+    return buildChunkSizeController("fulfilments");
+  }
+
+  private ChunkSizeController buildChunkSizeController(String name) {
+    if (!adaptiveChunkSizeEnabled) {
+      return ChunkSizeController.fixed(name, chunkSize);
+    }
+
+    return new ChunkSizeController(
+        name, chunkSize, minChunkSize, maxChunkSize, targetTransactionMillis);
+  }
+}
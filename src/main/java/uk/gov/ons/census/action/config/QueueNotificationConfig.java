@@ -0,0 +1,28 @@
+package uk.gov.ons.census.action.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.gov.ons.census.action.poller.QueueWakeUp;
+
+@Configuration
+public class QueueNotificationConfig {
+  @Value("${scheduler.notify.idle-poll}")
+  private long idlePollMillis;
+
+  @Bean
+  public QueueWakeUp caseQueueWakeUp() {
+    return new QueueWakeUp(idlePollMillis);
+  }
+
+  @Bean
+  public QueueWakeUp fulfilmentQueueWakeUp() {
+    return new QueueWakeUp(idlePollMillis);
+  }
+
+  // For the priority lane workers, which take work from either queue
+  @Bean
+  public QueueWakeUp anyQueueWakeUp() {
+    return new QueueWakeUp(idlePollMillis);
+  }
+}
@@ -0,0 +1,125 @@
+package uk.gov.ons.census.action.config;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import uk.gov.ons.census.action.poller.ChunkPoller;
+import uk.gov.ons.census.action.poller.PriorityLaneScheduler;
+
+@Configuration
+public class WorkerConfig implements SchedulingConfigurer {
+  private static final Logger log = LoggerFactory.getLogger(WorkerConfig.class);
+
+  // Connections/channels over and above one per worker, for everything else that needs them
+  private static final int SPARE_CONNECTIONS = 2;
+
+  private final ChunkPoller chunkPoller;
+  private final PriorityLaneScheduler priorityLaneScheduler;
+
+  @Value("${scheduler.frequency}")
+  private long frequency;
+
+  @Value("${scheduler.case-workers}")
+  private int caseWorkers;
+
+  @Value("${scheduler.fulfilment-workers}")
+  private int fulfilmentWorkers;
+
+  @Value("${scheduler.lanes.enabled}")
+  private boolean lanesEnabled;
+
+  @Value("${scheduler.lanes.workers}")
+  private int laneWorkers;
+
+  @Value("${spring.task.scheduling.pool.size}")
+  private int schedulingPoolSize;
+
+  public WorkerConfig(ChunkPoller chunkPoller, PriorityLaneScheduler priorityLaneScheduler) {
+    this.chunkPoller = chunkPoller;
+    this.priorityLaneScheduler = priorityLaneScheduler;
+  }
+
+  @Bean
+  public ThreadPoolTaskScheduler taskScheduler() {
+    // Every worker holds on to a thread for as long as there's work, so they can't share the pool
+    ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+    taskScheduler.setPoolSize(
+        numberOfWorkers(caseWorkers, fulfilmentWorkers, lanesEnabled, laneWorkers)
+            + schedulingPoolSize);
+    taskScheduler.setThreadNamePrefix("scheduling-");
+    return taskScheduler;
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+    taskRegistrar.setScheduler(taskScheduler());
+
+    if (lanesEnabled) {
+      // Every worker takes chunks from both the fulfilments and the cases, by priority
+      for (int i = 0; i < laneWorkers; i++) {
+        taskRegistrar.addFixedDelayTask(priorityLaneScheduler::processLanes, frequency);
+      }
+
+      return;
+    }
+
+    // Each worker claims its own chunks in its own transactions; SKIP LOCKED keeps them apart
+    for (int i = 0; i < caseWorkers; i++) {
+      taskRegistrar.addFixedDelayTask(chunkPoller::processQueuedCases, frequency);
+    }
+
+    for (int i = 0; i < fulfilmentWorkers; i++) {
+      taskRegistrar.addFixedDelayTask(chunkPoller::processFulfilments, frequency);
+    }
+  }
+
+  @Bean
+  public static BeanPostProcessor workerResourceSizer(
+      @Value("${scheduler.case-workers}") int caseWorkers,
+      @Value("${scheduler.fulfilment-workers}") int fulfilmentWorkers,
+      @Value("${scheduler.lanes.enabled}") boolean lanesEnabled,
+      @Value("${scheduler.lanes.workers}") int laneWorkers,
+      @Value("${scheduler.pipeline.enabled}") boolean pipelineEnabled,
+      @Value("${scheduler.pipeline.build-threads}") int buildThreads) {
+    // The pipeline's build threads are shared by all the workers, and run outside their
+    // transactions, so anything they do need from the DB or Rabbit is on top of the workers' own
+    int requiredConnections =
+        numberOfWorkers(caseWorkers, fulfilmentWorkers, lanesEnabled, laneWorkers)
+            + (pipelineEnabled ? buildThreads : 0)
+            + SPARE_CONNECTIONS;
+
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource) {
+          HikariDataSource dataSource = (HikariDataSource) bean;
+          if (dataSource.getMaximumPoolSize() < requiredConnections) {
+            log.with("requiredConnections", requiredConnections)
+                .warn("DB connection pool too small for the number of workers, increasing it");
+            dataSource.setMaximumPoolSize(requiredConnections);
+          }
+        } else if (bean instanceof CachingConnectionFactory) {
+          CachingConnectionFactory connectionFactory = (CachingConnectionFactory) bean;
+          if (connectionFactory.getChannelCacheSize() < requiredConnections) {
+            connectionFactory.setChannelCacheSize(requiredConnections);
+          }
+        }
+
+        return bean;
+      }
+    };
+  }
+
+  private static int numberOfWorkers(
+      int caseWorkers, int fulfilmentWorkers, boolean lanesEnabled, int laneWorkers) {
+    return lanesEnabled ? laneWorkers : caseWorkers + fulfilmentWorkers;
+  }
+}
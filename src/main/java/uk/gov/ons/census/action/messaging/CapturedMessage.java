@@ -0,0 +1,14 @@
+package uk.gov.ons.census.action.messaging;
+
+import lombok.Value;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+
+/** A message which has been converted, ready to send, but not sent yet. */
+@Value
+public class CapturedMessage {
+  private String exchange;
+  private String routingKey;
+  private Message message;
+  private CorrelationData correlationData;
+}
@@ -0,0 +1,200 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * A RabbitTemplate which can hold on to the messages sent on a thread, instead of sending them.
+ * This lets messages be built (and converted) away from the thread which owns the transaction,
+ * then sent later by that thread, on its transacted channel.
+ *
+ * <p>When publisher confirms are used instead of transacted channels, it also makes the current
+ * transaction wait for the confirms for everything sent in it before committing.
+ *
+ * <p>When batching is enabled, the messages sent in a transaction are packed into batches per
+ * exchange and routing key before they're published. See the README for the batch format.
+ * Whatever's published, batch or not, can then be compressed, and published on a dedicated
+ * publisher connection for its exchange.
+ *
+ * <p>Objects converted for an exchange with its own content type are converted to that content
+ * type, when the message converter has a codec for it, rather than to JSON.
+ *
+ * <p>In outbox mode nothing is published at all. The messages are written to the outbox table in
+ * the current transaction instead, for the OutboxRelay to publish.
+ */
+public class CapturingRabbitTemplate extends RabbitTemplate {
+  private final ThreadLocal<List<CapturedMessage>> capturedMessages = new ThreadLocal<>();
+
+  private final Object batchesResourceKey = new Object();
+
+  // Zero unless we're using publisher confirms
+  private long confirmTimeoutMillis = 0;
+
+  // Null unless we're compressing messages
+  private MessageCompressor messageCompressor;
+
+  // Null unless we're publishing on dedicated connections
+  private PublisherConnections publisherConnections;
+
+  // Null unless messages go to the outbox instead of being published
+  private MessageOutbox messageOutbox;
+
+  // Empty unless some exchanges are sent something other than JSON
+  private final Map<String, String> exchangeContentTypes = new ConcurrentHashMap<>();
+
+  // Zero unless we're batching messages
+  private int batchSize = 0;
+  private int batchBufferLimit;
+  private long batchTimeoutMillis;
+
+  public CapturingRabbitTemplate(ConnectionFactory connectionFactory) {
+    super(connectionFactory);
+  }
+
+  // Runs the work, returning everything it sent instead of sending it
+  public List<CapturedMessage> capture(Runnable work) {
+    List<CapturedMessage> messages = new ArrayList<>();
+    capturedMessages.set(messages);
+    try {
+      work.run();
+    } finally {
+      capturedMessages.remove();
+    }
+
+    return messages;
+  }
+
+  public void setConfirmTimeout(long confirmTimeoutMillis) {
+    this.confirmTimeoutMillis = confirmTimeoutMillis;
+  }
+
+  public void setBatching(int batchSize, int batchBufferLimit, long batchTimeoutMillis) {
+    this.batchSize = batchSize;
+    this.batchBufferLimit = batchBufferLimit;
+    this.batchTimeoutMillis = batchTimeoutMillis;
+  }
+
+  public void setMessageCompressor(MessageCompressor messageCompressor) {
+    this.messageCompressor = messageCompressor;
+  }
+
+  public void setPublisherConnections(PublisherConnections publisherConnections) {
+    this.publisherConnections = publisherConnections;
+  }
+
+  public void setMessageOutbox(MessageOutbox messageOutbox) {
+    this.messageOutbox = messageOutbox;
+  }
+
+  public void setExchangeContentType(String exchange, String contentType) {
+    exchangeContentTypes.put(exchange, contentType);
+  }
+
+  @Override
+  public void convertAndSend(
+      String exchange, String routingKey, Object object, CorrelationData correlationData) {
+    String contentType = exchangeContentTypes.get(exchange);
+    if (contentType == null || object instanceof Message) {
+      super.convertAndSend(exchange, routingKey, object, correlationData);
+      return;
+    }
+
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentType(contentType);
+    send(
+        exchange,
+        routingKey,
+        getMessageConverter().toMessage(object, messageProperties),
+        correlationData);
+  }
+
+  public void send(CapturedMessage capturedMessage) {
+    send(
+        capturedMessage.getExchange(),
+        capturedMessage.getRoutingKey(),
+        capturedMessage.getMessage(),
+        capturedMessage.getCorrelationData());
+  }
+
+  @Override
+  public void send(
+      String exchange, String routingKey, Message message, CorrelationData correlationData) {
+    List<CapturedMessage> messages = capturedMessages.get();
+    if (messages != null) {
+      messages.add(new CapturedMessage(exchange, routingKey, message, correlationData));
+      return;
+    }
+
+    if (messageOutbox != null && messageOutbox.isEnabled()) {
+      messageOutbox.add(new CapturedMessage(exchange, routingKey, message, correlationData));
+      return;
+    }
+
+    MessageBatches messageBatches =
+        batchSize > 0
+            ? MessageBatches.forCurrentTransaction(
+                batchesResourceKey,
+                batchSize,
+                batchBufferLimit,
+                batchTimeoutMillis,
+                this::publish)
+            : null;
+    if (messageBatches != null) {
+      if (confirmTimeoutMillis > 0) {
+        // Make sure we'll wait for the confirms, even if nothing's published until commit time
+        PendingConfirms.forCurrentTransaction(this, confirmTimeoutMillis);
+      }
+
+      messageBatches.add(exchange, routingKey, message);
+      return;
+    }
+
+    publish(new CapturedMessage(exchange, routingKey, message, correlationData));
+  }
+
+  private void publish(CapturedMessage capturedMessage) {
+    String exchange = capturedMessage.getExchange();
+    String routingKey = capturedMessage.getRoutingKey();
+    Message message =
+        messageCompressor != null
+            ? messageCompressor.compress(exchange, routingKey, capturedMessage.getMessage())
+            : capturedMessage.getMessage();
+    CorrelationData correlationData = capturedMessage.getCorrelationData();
+
+    if (confirmTimeoutMillis <= 0) {
+      doPublish(exchange, routingKey, message, correlationData);
+      return;
+    }
+
+    CorrelationData confirmCorrelationData =
+        correlationData != null ? correlationData : new CorrelationData();
+    doPublish(exchange, routingKey, message, confirmCorrelationData);
+
+    PendingConfirms pendingConfirms =
+        PendingConfirms.forCurrentTransaction(this, confirmTimeoutMillis);
+    if (pendingConfirms != null) {
+      pendingConfirms.add(confirmCorrelationData);
+    } else {
+      // There's no transaction to hold up, so make sure this one got there before carrying on
+      PendingConfirms.awaitConfirm(confirmCorrelationData, confirmTimeoutMillis);
+    }
+  }
+
+  private void doPublish(
+      String exchange, String routingKey, Message message, CorrelationData correlationData) {
+    RabbitTemplate publisherTemplate =
+        publisherConnections != null ? publisherConnections.getTemplate(exchange) : null;
+    if (publisherTemplate != null) {
+      publisherTemplate.send(exchange, routingKey, message, correlationData);
+    } else {
+      super.send(exchange, routingKey, message, correlationData);
+    }
+  }
+}
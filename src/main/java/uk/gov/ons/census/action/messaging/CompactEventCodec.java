@@ -0,0 +1,272 @@
+package uk.gov.ons.census.action.messaging;
+
+import static uk.gov.ons.census.action.model.dto.EventType.FIELD_CASES_SELECTED;
+import static uk.gov.ons.census.action.model.dto.EventType.FIELD_CASE_SELECTED;
+import static uk.gov.ons.census.action.model.dto.EventType.PRINT_CASES_SELECTED;
+import static uk.gov.ons.census.action.model.dto.EventType.PRINT_CASE_SELECTED;
+import static uk.gov.ons.census.action.model.dto.EventType.RM_UAC_CREATED;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import uk.gov.ons.census.action.model.dto.CasesSelected;
+import uk.gov.ons.census.action.model.dto.Event;
+import uk.gov.ons.census.action.model.dto.EventType;
+import uk.gov.ons.census.action.model.dto.FieldCaseSelected;
+import uk.gov.ons.census.action.model.dto.Payload;
+import uk.gov.ons.census.action.model.dto.PrintCaseSelected;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+import uk.gov.ons.census.action.model.dto.UacQidCreated;
+
+/**
+ * A compact binary encoding of the internal events: the UAC QID created event and the case
+ * selected events. Fields are written in a fixed order, with no names, so every message only
+ * carries its values. The schema (version 1) is described in the README, and decode is the
+ * reference decoder for it.
+ */
+public class CompactEventCodec implements MessageBodyCodec {
+  public static final String CONTENT_TYPE = "application/x-rm-compact-event";
+
+  private static final int SCHEMA_VERSION = 1;
+
+  // An event type's code is its position in this list, so only ever add to the end of it
+  private static final List<EventType> EVENT_TYPES =
+      List.of(
+          RM_UAC_CREATED,
+          PRINT_CASE_SELECTED,
+          FIELD_CASE_SELECTED,
+          PRINT_CASES_SELECTED,
+          FIELD_CASES_SELECTED);
+
+  @Override
+  public String getContentType() {
+    return CONTENT_TYPE;
+  }
+
+  @Override
+  public boolean canEncode(Object object) {
+    if (!(object instanceof ResponseManagementEvent)) {
+      return false;
+    }
+
+    ResponseManagementEvent responseManagementEvent = (ResponseManagementEvent) object;
+    Event event = responseManagementEvent.getEvent();
+    Payload payload = responseManagementEvent.getPayload();
+    if (event == null || payload == null || event.getType() == null) {
+      return false;
+    }
+
+    switch (event.getType()) {
+      case RM_UAC_CREATED:
+        return payload.getUacQidCreated() != null;
+      case PRINT_CASE_SELECTED:
+        return payload.getPrintCaseSelected() != null;
+      case FIELD_CASE_SELECTED:
+        return payload.getFieldCaseSelected() != null;
+      case PRINT_CASES_SELECTED:
+      case FIELD_CASES_SELECTED:
+        return payload.getCasesSelected() != null
+            && payload.getCasesSelected().getCaseRefs() != null;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public void encode(Object object, OutputStream outputStream) throws IOException {
+    ResponseManagementEvent responseManagementEvent = (ResponseManagementEvent) object;
+    Event event = responseManagementEvent.getEvent();
+    Payload payload = responseManagementEvent.getPayload();
+    DataOutputStream out = new DataOutputStream(outputStream);
+
+    out.writeByte(SCHEMA_VERSION);
+    out.writeByte(EVENT_TYPES.indexOf(event.getType()));
+    writeString(out, event.getSource());
+    writeString(out, event.getChannel());
+    writeDateTime(out, event.getDateTime());
+    writeString(out, event.getTransactionId());
+
+    switch (event.getType()) {
+      case RM_UAC_CREATED:
+        UacQidCreated uacQidCreated = payload.getUacQidCreated();
+        writeString(out, uacQidCreated.getUac());
+        writeString(out, uacQidCreated.getQid());
+        writeUuid(out, uacQidCreated.getCaseId());
+        writeUuid(out, uacQidCreated.getBatchId());
+        break;
+      case PRINT_CASE_SELECTED:
+        PrintCaseSelected printCaseSelected = payload.getPrintCaseSelected();
+        writeVarLong(out, printCaseSelected.getCaseRef());
+        writeString(out, printCaseSelected.getPackCode());
+        writeUuid(out, printCaseSelected.getActionRuleId());
+        writeString(out, printCaseSelected.getBatchId());
+        break;
+      case FIELD_CASE_SELECTED:
+        FieldCaseSelected fieldCaseSelected = payload.getFieldCaseSelected();
+        writeVarLong(out, fieldCaseSelected.getCaseRef());
+        writeUuid(out, fieldCaseSelected.getActionRuleId());
+        break;
+      default:
+        CasesSelected casesSelected = payload.getCasesSelected();
+        writeUuid(out, casesSelected.getActionRuleId());
+        writeString(out, casesSelected.getBatchId());
+        writeString(out, casesSelected.getPackCode());
+        writeVarLong(out, casesSelected.getCaseCount());
+        writeVarLong(out, casesSelected.getCaseRefs().length);
+        for (long caseRef : casesSelected.getCaseRefs()) {
+          writeVarLong(out, caseRef);
+        }
+    }
+
+    out.flush();
+  }
+
+  @Override
+  public ResponseManagementEvent decode(byte[] body) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+
+    int schemaVersion = in.readUnsignedByte();
+    if (schemaVersion != SCHEMA_VERSION) {
+      throw new IOException("Unsupported compact event schema version " + schemaVersion);
+    }
+
+    int eventTypeCode = in.readUnsignedByte();
+    if (eventTypeCode >= EVENT_TYPES.size()) {
+      throw new IOException("Unknown compact event type " + eventTypeCode);
+    }
+
+    Event event = new Event();
+    event.setType(EVENT_TYPES.get(eventTypeCode));
+    event.setSource(readString(in));
+    event.setChannel(readString(in));
+    event.setDateTime(readDateTime(in));
+    event.setTransactionId(readString(in));
+
+    Payload payload = new Payload();
+    switch (event.getType()) {
+      case RM_UAC_CREATED:
+        UacQidCreated uacQidCreated = new UacQidCreated();
+        uacQidCreated.setUac(readString(in));
+        uacQidCreated.setQid(readString(in));
+        uacQidCreated.setCaseId(readUuid(in));
+        uacQidCreated.setBatchId(readUuid(in));
+        payload.setUacQidCreated(uacQidCreated);
+        break;
+      case PRINT_CASE_SELECTED:
+        PrintCaseSelected printCaseSelected = new PrintCaseSelected();
+        printCaseSelected.setCaseRef(readVarLong(in));
+        printCaseSelected.setPackCode(readString(in));
+        printCaseSelected.setActionRuleId(readUuid(in));
+        printCaseSelected.setBatchId(readString(in));
+        payload.setPrintCaseSelected(printCaseSelected);
+        break;
+      case FIELD_CASE_SELECTED:
+        FieldCaseSelected fieldCaseSelected = new FieldCaseSelected();
+        fieldCaseSelected.setCaseRef(readVarLong(in));
+        fieldCaseSelected.setActionRuleId(readUuid(in));
+        payload.setFieldCaseSelected(fieldCaseSelected);
+        break;
+      default:
+        CasesSelected casesSelected = new CasesSelected();
+        casesSelected.setActionRuleId(readUuid(in));
+        casesSelected.setBatchId(readString(in));
+        casesSelected.setPackCode(readString(in));
+        casesSelected.setCaseCount((int) readVarLong(in));
+        long[] caseRefs = new long[(int) readVarLong(in)];
+        for (int i = 0; i < caseRefs.length; i++) {
+          caseRefs[i] = readVarLong(in);
+        }
+        casesSelected.setCaseRefs(caseRefs);
+        payload.setCasesSelected(casesSelected);
+    }
+
+    ResponseManagementEvent responseManagementEvent = new ResponseManagementEvent();
+    responseManagementEvent.setEvent(event);
+    responseManagementEvent.setPayload(payload);
+    return responseManagementEvent;
+  }
+
+  // Seven bits at a time, least significant first, with the top bit set on all but the last byte
+  private static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed compact event varint");
+  }
+
+  // The length is written plus one, so that zero can mean null
+  private static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      writeVarLong(out, 0);
+      return;
+    }
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(out, bytes.length + 1L);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    long length = readVarLong(in);
+    if (length == 0) {
+      return null;
+    }
+
+    byte[] bytes = new byte[(int) (length - 1)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeUuid(DataOutput out, UUID value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value.getMostSignificantBits());
+      out.writeLong(value.getLeastSignificantBits());
+    }
+  }
+
+  private static UUID readUuid(DataInput in) throws IOException {
+    return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+  }
+
+  private static void writeDateTime(DataOutput out, OffsetDateTime value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value.toEpochSecond());
+      out.writeInt(value.getNano());
+      out.writeInt(value.getOffset().getTotalSeconds());
+    }
+  }
+
+  private static OffsetDateTime readDateTime(DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+
+    Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+    return OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(in.readInt()));
+  }
+}
@@ -0,0 +1,87 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.time.Duration;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.RabbitConnectionFactoryBean;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+
+/**
+ * Builds connection factories of our own, alongside the auto-configured one, from the same
+ * spring.rabbitmq properties. Everything RabbitAutoConfiguration applies is applied here too (the
+ * addresses, SSL, heartbeat, timeouts, confirms, returns and caching), so that a dedicated
+ * connection reaches the broker exactly the way the auto-configured one does. The caller overrides
+ * whatever it needs to be different, and is responsible for destroying the factory.
+ */
+public class DedicatedConnectionFactory {
+
+  public static CachingConnectionFactory build(
+      RabbitProperties rabbitProperties, String connectionName) {
+    PropertyMapper map = PropertyMapper.get();
+    CachingConnectionFactory connectionFactory =
+        new CachingConnectionFactory(buildRabbitConnectionFactory(rabbitProperties));
+    map.from(rabbitProperties::determineAddresses).to(connectionFactory::setAddresses);
+    map.from(rabbitProperties::isPublisherReturns).to(connectionFactory::setPublisherReturns);
+    map.from(rabbitProperties::getPublisherConfirmType)
+        .whenNonNull()
+        .to(connectionFactory::setPublisherConfirmType);
+
+    RabbitProperties.Cache.Channel channel = rabbitProperties.getCache().getChannel();
+    map.from(channel::getSize).whenNonNull().to(connectionFactory::setChannelCacheSize);
+    map.from(channel::getCheckoutTimeout)
+        .whenNonNull()
+        .as(Duration::toMillis)
+        .to(connectionFactory::setChannelCheckoutTimeout);
+
+    RabbitProperties.Cache.Connection connection = rabbitProperties.getCache().getConnection();
+    map.from(connection::getMode).whenNonNull().to(connectionFactory::setCacheMode);
+    map.from(connection::getSize).whenNonNull().to(connectionFactory::setConnectionCacheSize);
+
+    connectionFactory.setConnectionNameStrategy(factory -> connectionName);
+    return connectionFactory;
+  }
+
+  private static com.rabbitmq.client.ConnectionFactory buildRabbitConnectionFactory(
+      RabbitProperties rabbitProperties) {
+    PropertyMapper map = PropertyMapper.get();
+    RabbitConnectionFactoryBean factoryBean = new RabbitConnectionFactoryBean();
+    map.from(rabbitProperties::determineHost).whenNonNull().to(factoryBean::setHost);
+    map.from(rabbitProperties::determinePort).to(factoryBean::setPort);
+    map.from(rabbitProperties::determineUsername).whenNonNull().to(factoryBean::setUsername);
+    map.from(rabbitProperties::determinePassword).whenNonNull().to(factoryBean::setPassword);
+    map.from(rabbitProperties::determineVirtualHost)
+        .whenNonNull()
+        .to(factoryBean::setVirtualHost);
+    map.from(rabbitProperties::getRequestedHeartbeat)
+        .whenNonNull()
+        .asInt(Duration::getSeconds)
+        .to(factoryBean::setRequestedHeartbeat);
+
+    RabbitProperties.Ssl ssl = rabbitProperties.getSsl();
+    if (ssl.determineEnabled()) {
+      factoryBean.setUseSSL(true);
+      map.from(ssl::getAlgorithm).whenNonNull().to(factoryBean::setSslAlgorithm);
+      map.from(ssl::getKeyStoreType).to(factoryBean::setKeyStoreType);
+      map.from(ssl::getKeyStore).to(factoryBean::setKeyStore);
+      map.from(ssl::getKeyStorePassword).to(factoryBean::setKeyStorePassphrase);
+      map.from(ssl::getTrustStoreType).to(factoryBean::setTrustStoreType);
+      map.from(ssl::getTrustStore).to(factoryBean::setTrustStore);
+      map.from(ssl::getTrustStorePassword).to(factoryBean::setTrustStorePassphrase);
+      map.from(ssl::isValidateServerCertificate)
+          .to(validate -> factoryBean.setSkipServerCertificateValidation(!validate));
+      map.from(ssl::getVerifyHostname).to(factoryBean::setEnableHostnameVerification);
+    }
+
+    map.from(rabbitProperties::getConnectionTimeout)
+        .whenNonNull()
+        .asInt(Duration::toMillis)
+        .to(factoryBean::setConnectionTimeout);
+
+    try {
+      factoryBean.afterPropertiesSet();
+      return factoryBean.getObject();
+    } catch (Exception e) {
+      throw new IllegalStateException("Failed to build a dedicated Rabbit connection factory", e);
+    }
+  }
+}
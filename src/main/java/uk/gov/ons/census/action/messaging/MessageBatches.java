@@ -0,0 +1,125 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+import org.springframework.core.Ordered;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The messages sent in the current transaction which are waiting to be packed into batches, one
+ * per exchange and routing key. A batch is published once it's full, or once its oldest message is
+ * older than the timeout, and whatever's left is published just before the transaction commits.
+ * Nothing is published off the transaction's thread, so a rollback still takes everything with it.
+ */
+class MessageBatches implements TransactionSynchronization, Ordered {
+  private final Object resourceKey;
+  private final int batchSize;
+  private final int bufferLimit;
+  private final long timeoutMillis;
+  private final Consumer<CapturedMessage> publisher;
+  private final Map<String, PendingBatch> pendingBatches = new LinkedHashMap<>();
+
+  MessageBatches(
+      Object resourceKey,
+      int batchSize,
+      int bufferLimit,
+      long timeoutMillis,
+      Consumer<CapturedMessage> publisher) {
+    this.resourceKey = resourceKey;
+    this.batchSize = batchSize;
+    this.bufferLimit = bufferLimit;
+    this.timeoutMillis = timeoutMillis;
+    this.publisher = publisher;
+  }
+
+  // Returns the batches for the current transaction, or null if there isn't one
+  static MessageBatches forCurrentTransaction(
+      Object resourceKey,
+      int batchSize,
+      int bufferLimit,
+      long timeoutMillis,
+      Consumer<CapturedMessage> publisher) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return null;
+    }
+
+    MessageBatches messageBatches =
+        (MessageBatches) TransactionSynchronizationManager.getResource(resourceKey);
+    if (messageBatches == null) {
+      messageBatches =
+          new MessageBatches(resourceKey, batchSize, bufferLimit, timeoutMillis, publisher);
+      TransactionSynchronizationManager.bindResource(resourceKey, messageBatches);
+      TransactionSynchronizationManager.registerSynchronization(messageBatches);
+    }
+
+    return messageBatches;
+  }
+
+  void add(String exchange, String routingKey, Message message) {
+    PendingBatch pendingBatch =
+        pendingBatches.computeIfAbsent(exchange + "/" + routingKey, key -> new PendingBatch());
+
+    MessageBatch fullBatch =
+        pendingBatch.batchingStrategy.addToBatch(exchange, routingKey, message);
+    if (fullBatch != null) {
+      publish(fullBatch);
+      // The message that didn't fit has started a new batch, if there is one
+      pendingBatch.startTime = System.currentTimeMillis();
+    }
+
+    if (System.currentTimeMillis() - pendingBatch.startTime >= timeoutMillis) {
+      publish(pendingBatch.release());
+    }
+  }
+
+  void publishAll() {
+    pendingBatches.values().forEach(pendingBatch -> publish(pendingBatch.release()));
+  }
+
+  @Override
+  public int getOrder() {
+    // Flush before anything else waits on what's been published, like the publisher confirms
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+
+  @Override
+  public void beforeCommit(boolean readOnly) {
+    publishAll();
+  }
+
+  @Override
+  public void afterCompletion(int status) {
+    TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+  }
+
+  private void publish(Collection<MessageBatch> messageBatches) {
+    messageBatches.forEach(this::publish);
+  }
+
+  private void publish(MessageBatch messageBatch) {
+    publisher.accept(
+        new CapturedMessage(
+            messageBatch.getExchange(),
+            messageBatch.getRoutingKey(),
+            messageBatch.getMessage(),
+            null));
+  }
+
+  private class PendingBatch {
+    // Each strategy only batches a single exchange and routing key, so we need one per pair
+    private final SimpleBatchingStrategy batchingStrategy =
+        new SimpleBatchingStrategy(batchSize, bufferLimit, timeoutMillis);
+    private long startTime = System.currentTimeMillis();
+
+    private Collection<MessageBatch> release() {
+      startTime = System.currentTimeMillis();
+      return batchingStrategy.releaseBatches();
+    }
+  }
+}
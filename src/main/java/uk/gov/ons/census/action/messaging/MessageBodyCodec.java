@@ -0,0 +1,19 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes message bodies in a format other than JSON. The OutboundMessageConverter uses a codec
+ * when a message's content type is the codec's, and falls back to JSON for anything the codec
+ * can't encode.
+ */
+public interface MessageBodyCodec {
+  String getContentType();
+
+  boolean canEncode(Object object);
+
+  void encode(Object object, OutputStream outputStream) throws IOException;
+
+  Object decode(byte[] body) throws IOException;
+}
@@ -0,0 +1,104 @@
+package uk.gov.ons.census.action.messaging;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.postprocessor.AbstractCompressingPostProcessor;
+import org.springframework.amqp.support.postprocessor.DeflaterPostProcessor;
+import org.springframework.amqp.support.postprocessor.GZipPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compresses the outbound messages sent to the configured exchanges and routing keys, if they're
+ * big enough to be worth it. The content-encoding is set the way Spring AMQP's decompressing post
+ * processors expect, e.g. "gzip:UTF-8", so Spring consumers decompress them automatically. The
+ * compression ratio and the CPU time spent compressing are logged periodically.
+ */
+@Component
+public class MessageCompressor {
+  private static final Logger log = LoggerFactory.getLogger(MessageCompressor.class);
+
+  private final boolean compressionEnabled;
+  private final AbstractCompressingPostProcessor compressingPostProcessor;
+  private final int thresholdBytes;
+  private final Set<String> exchanges;
+  private final Set<String> routingKeys;
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  private final LongAdder messagesCompressed = new LongAdder();
+  private final LongAdder uncompressedBytes = new LongAdder();
+  private final LongAdder compressedBytes = new LongAdder();
+  private final LongAdder compressionCpuNanos = new LongAdder();
+
+  public MessageCompressor(
+      @Value("${queueconfig.compression.enabled}") boolean compressionEnabled,
+      @Value("${queueconfig.compression.algorithm}") String algorithm,
+      @Value("${queueconfig.compression.threshold}") int thresholdBytes,
+      @Value("${queueconfig.compression.exchanges}") String[] exchanges,
+      @Value("${queueconfig.compression.routing-keys}") String[] routingKeys) {
+    this.compressionEnabled = compressionEnabled;
+    this.compressingPostProcessor = buildCompressingPostProcessor(algorithm);
+    this.thresholdBytes = thresholdBytes;
+    this.exchanges = new HashSet<>(Arrays.asList(exchanges));
+    this.routingKeys = new HashSet<>(Arrays.asList(routingKeys));
+  }
+
+  public Message compress(String exchange, String routingKey, Message message) {
+    if (!compressionEnabled
+        || message.getBody().length < thresholdBytes
+        || !(exchanges.contains(exchange) || routingKeys.contains(routingKey))) {
+      return message;
+    }
+
+    int uncompressedLength = message.getBody().length;
+    long startCpuNanos = threadMXBean.getCurrentThreadCpuTime();
+    Message compressedMessage = compressingPostProcessor.postProcessMessage(message);
+    compressionCpuNanos.add(threadMXBean.getCurrentThreadCpuTime() - startCpuNanos);
+
+    int compressedLength = compressedMessage.getBody().length;
+    compressedMessage.getMessageProperties().setContentLength(compressedLength);
+
+    messagesCompressed.increment();
+    uncompressedBytes.add(uncompressedLength);
+    compressedBytes.add(compressedLength);
+
+    return compressedMessage;
+  }
+
+  @Scheduled(fixedDelayString = "${queueconfig.compression.report-interval}")
+  public void reportCompression() {
+    long messages = messagesCompressed.sumThenReset();
+    long bytesIn = uncompressedBytes.sumThenReset();
+    long bytesOut = compressedBytes.sumThenReset();
+    long cpuNanos = compressionCpuNanos.sumThenReset();
+    if (messages == 0) {
+      return;
+    }
+
+    log.with("messagesCompressed", messages)
+        .with("uncompressedBytes", bytesIn)
+        .with("compressedBytes", bytesOut)
+        .with("compressionRatio", String.format("%.2f", (double) bytesIn / bytesOut))
+        .with("cpuMicrosPerMessage", cpuNanos / messages / 1000)
+        .info("Outbound message compression");
+  }
+
+  private static AbstractCompressingPostProcessor buildCompressingPostProcessor(String algorithm) {
+    switch (algorithm) {
+      case "gzip":
+        return new GZipPostProcessor();
+      case "deflate":
+        return new DeflaterPostProcessor();
+      default:
+        throw new IllegalArgumentException("Unsupported compression algorithm: " + algorithm);
+    }
+  }
+}
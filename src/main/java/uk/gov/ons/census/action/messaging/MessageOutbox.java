@@ -0,0 +1,62 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.gov.ons.census.action.model.repository.MessageOutboxRepository;
+
+/**
+ * Instead of publishing, writes the messages sent in a transaction to the outbox table in that same
+ * transaction, so the chunk's transaction never waits on the broker. The OutboxRelay publishes
+ * them later. The messages are written in one batch just before the transaction commits.
+ */
+@Component
+public class MessageOutbox {
+  private final MessageOutboxRepository messageOutboxRepository;
+  private final boolean outboxEnabled;
+
+  public MessageOutbox(
+      MessageOutboxRepository messageOutboxRepository,
+      @Value("${queueconfig.outbox.enabled}") boolean outboxEnabled) {
+    this.messageOutboxRepository = messageOutboxRepository;
+    this.outboxEnabled = outboxEnabled;
+  }
+
+  public boolean isEnabled() {
+    return outboxEnabled;
+  }
+
+  public void add(CapturedMessage capturedMessage) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      messageOutboxRepository.insert(List.of(capturedMessage));
+      return;
+    }
+
+    PendingOutboxMessages pendingMessages =
+        (PendingOutboxMessages) TransactionSynchronizationManager.getResource(this);
+    if (pendingMessages == null) {
+      pendingMessages = new PendingOutboxMessages();
+      TransactionSynchronizationManager.bindResource(this, pendingMessages);
+      TransactionSynchronizationManager.registerSynchronization(pendingMessages);
+    }
+
+    pendingMessages.messages.add(capturedMessage);
+  }
+
+  private class PendingOutboxMessages implements TransactionSynchronization {
+    private final List<CapturedMessage> messages = new ArrayList<>();
+
+    @Override
+    public void beforeCommit(boolean readOnly) {
+      messageOutboxRepository.insert(messages);
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      TransactionSynchronizationManager.unbindResourceIfPossible(MessageOutbox.this);
+    }
+  }
+}
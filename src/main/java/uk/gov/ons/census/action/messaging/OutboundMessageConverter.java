@@ -0,0 +1,132 @@
+package uk.gov.ons.census.action.messaging;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+/**
+ * Produces exactly the same messages as the Jackson2JsonMessageConverter, but more cheaply. The
+ * ObjectWriter (with its serializer already resolved) and the JavaType for the type headers are
+ * looked up once per class rather than once per message, and the JSON is written into a buffer
+ * which is reused by the thread, so the only allocation for the body is the final copy of it.
+ *
+ * <p>A message whose content type is already set to a registered codec's is encoded with that
+ * codec instead, if the codec can encode it, and decoded with it again by fromMessage. Anything
+ * else is still JSON.
+ */
+public class OutboundMessageConverter extends Jackson2JsonMessageConverter {
+  // A buffer which has grown past this for an unusually big message isn't kept for the next one
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+  private final Map<String, MessageBodyCodec> codecs = new ConcurrentHashMap<>();
+  private final Map<Class<?>, ClassWriter> classWriters = new ConcurrentHashMap<>();
+  private final ThreadLocal<ReusableOutputStream> buffers =
+      ThreadLocal.withInitial(ReusableOutputStream::new);
+
+  public OutboundMessageConverter(ObjectMapper objectMapper) {
+    super(objectMapper);
+  }
+
+  public void registerCodec(MessageBodyCodec codec) {
+    codecs.put(codec.getContentType(), codec);
+  }
+
+  @Override
+  public Object fromMessage(Message message) {
+    MessageBodyCodec codec = codecs.get(message.getMessageProperties().getContentType());
+    if (codec == null) {
+      return super.fromMessage(message);
+    }
+
+    try {
+      return codec.decode(message.getBody());
+    } catch (IOException e) {
+      throw new MessageConversionException("Failed to convert Message content", e);
+    }
+  }
+
+  @Override
+  protected Message createMessage(
+      Object objectToConvert, MessageProperties messageProperties, Type genericType) {
+    MessageBodyCodec codec = codecs.get(messageProperties.getContentType());
+    if (codec != null && codec.canEncode(objectToConvert)) {
+      byte[] bytes = writeToBuffer(outputStream -> codec.encode(objectToConvert, outputStream));
+      messageProperties.setContentLength(bytes.length);
+      return new Message(bytes, messageProperties);
+    }
+
+    if (genericType != null || objectToConvert == null) {
+      return super.createMessage(objectToConvert, messageProperties, genericType);
+    }
+
+    ClassWriter classWriter =
+        classWriters.computeIfAbsent(objectToConvert.getClass(), this::buildClassWriter);
+    byte[] bytes =
+        writeToBuffer(
+            outputStream -> classWriter.objectWriter.writeValue(outputStream, objectToConvert));
+
+    messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+    messageProperties.setContentLength(bytes.length);
+    getJavaTypeMapper().fromJavaType(classWriter.javaType, messageProperties);
+
+    return new Message(bytes, messageProperties);
+  }
+
+  private byte[] writeToBuffer(BodyWriter bodyWriter) {
+    ReusableOutputStream buffer = buffers.get();
+    try {
+      bodyWriter.write(buffer);
+      return buffer.toByteArray();
+    } catch (IOException e) {
+      throw new MessageConversionException("Failed to convert Message content", e);
+    } finally {
+      if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+        buffers.remove();
+      } else {
+        buffer.reset();
+      }
+    }
+  }
+
+  private ClassWriter buildClassWriter(Class<?> clazz) {
+    return new ClassWriter(
+        objectMapper.writerFor(clazz), objectMapper.getTypeFactory().constructType(clazz));
+  }
+
+  private interface BodyWriter {
+    void write(OutputStream outputStream) throws IOException;
+  }
+
+  private static class ClassWriter {
+    private final ObjectWriter objectWriter;
+    private final JavaType javaType;
+
+    private ClassWriter(ObjectWriter objectWriter, JavaType javaType) {
+      this.objectWriter = objectWriter;
+      this.javaType = javaType;
+    }
+  }
+
+  // The bytes are copied straight out of the buffer by toByteArray, with no intermediate copy
+  private static class ReusableOutputStream extends ByteArrayOutputStream {
+    private ReusableOutputStream() {
+      super(4096);
+    }
+
+    private int capacity() {
+      return buf.length;
+    }
+  }
+}
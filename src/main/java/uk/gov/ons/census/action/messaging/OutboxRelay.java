@@ -0,0 +1,107 @@
+package uk.gov.ons.census.action.messaging;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PreDestroy;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.gov.ons.census.action.model.repository.MessageOutboxRepository;
+
+/**
+ * Streams the messages in the outbox table to the broker, in big batches. A batch is claimed and
+ * deleted from the outbox, published, and only committed once every message in it has been
+ * confirmed by the broker. If anything is nacked, or the confirms don't arrive in time, the batch
+ * is rolled back into the outbox and published again, so delivery is at least once.
+ *
+ * <p>The relay always uses publisher confirms on its own connection, whatever mode the workers
+ * would publish in, because a transacted channel only commits after the database has.
+ */
+@Component
+public class OutboxRelay {
+  private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+  private final MessageOutboxRepository messageOutboxRepository;
+  private final MessageCompressor messageCompressor;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean outboxEnabled;
+  private final int batchSize;
+  private final long confirmTimeoutMillis;
+  private final CachingConnectionFactory connectionFactory;
+  private final RabbitTemplate rabbitTemplate;
+
+  public OutboxRelay(
+      MessageOutboxRepository messageOutboxRepository,
+      MessageCompressor messageCompressor,
+      PlatformTransactionManager transactionManager,
+      RabbitProperties rabbitProperties,
+      @Value("${queueconfig.outbox.enabled}") boolean outboxEnabled,
+      @Value("${queueconfig.outbox.batch-size}") int batchSize,
+      @Value("${queueconfig.publisher-confirms.timeout}") long confirmTimeoutMillis) {
+    this.messageOutboxRepository = messageOutboxRepository;
+    this.messageCompressor = messageCompressor;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.outboxEnabled = outboxEnabled;
+    this.batchSize = batchSize;
+    this.confirmTimeoutMillis = confirmTimeoutMillis;
+
+    connectionFactory =
+        DedicatedConnectionFactory.build(rabbitProperties, "action-worker-outbox-relay");
+    connectionFactory.setPublisherConfirmType(ConfirmType.CORRELATED);
+    rabbitTemplate = new RabbitTemplate(connectionFactory);
+  }
+
+  @Scheduled(fixedDelayString = "${queueconfig.outbox.relay-frequency}")
+  public void relayMessages() {
+    if (!outboxEnabled) {
+      return;
+    }
+
+    try {
+      while (relayBatch() == batchSize) {
+        // Keep going while the batches come back full - there's more to relay
+      }
+    } catch (RuntimeException e) {
+      // The batch is back in the outbox, so it'll be retried next time round
+      log.error("Failed to relay outbox messages", e);
+    }
+  }
+
+  // Returns the number of messages relayed
+  int relayBatch() {
+    return transactionTemplate.execute(
+        status -> {
+          List<CapturedMessage> messages = messageOutboxRepository.claim(batchSize);
+
+          List<CorrelationData> correlationData = new ArrayList<>(messages.size());
+          for (CapturedMessage capturedMessage : messages) {
+            String exchange = capturedMessage.getExchange();
+            String routingKey = capturedMessage.getRoutingKey();
+            Message message =
+                messageCompressor.compress(exchange, routingKey, capturedMessage.getMessage());
+            CorrelationData messageCorrelationData = new CorrelationData();
+            rabbitTemplate.send(exchange, routingKey, message, messageCorrelationData);
+            correlationData.add(messageCorrelationData);
+          }
+
+          // Throws if anything's nacked or times out, rolling the batch back into the outbox
+          PendingConfirms.awaitConfirms(correlationData, confirmTimeoutMillis);
+          return messages.size();
+        });
+  }
+
+  @PreDestroy
+  public void close() {
+    connectionFactory.destroy();
+  }
+}
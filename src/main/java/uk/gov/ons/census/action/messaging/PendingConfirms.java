@@ -0,0 +1,92 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The publisher confirms we're waiting for before the current transaction can commit. If any of
+ * them is nacked or doesn't arrive in time, the transaction is rolled back instead.
+ */
+class PendingConfirms implements TransactionSynchronization {
+  private final Object resourceKey;
+  private final long confirmTimeoutMillis;
+  private final List<CorrelationData> correlationData = new ArrayList<>();
+
+  private PendingConfirms(Object resourceKey, long confirmTimeoutMillis) {
+    this.resourceKey = resourceKey;
+    this.confirmTimeoutMillis = confirmTimeoutMillis;
+  }
+
+  // Returns the pending confirms for the current transaction, or null if there isn't one
+  static PendingConfirms forCurrentTransaction(Object resourceKey, long confirmTimeoutMillis) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return null;
+    }
+
+    PendingConfirms pendingConfirms =
+        (PendingConfirms) TransactionSynchronizationManager.getResource(resourceKey);
+    if (pendingConfirms == null) {
+      pendingConfirms = new PendingConfirms(resourceKey, confirmTimeoutMillis);
+      TransactionSynchronizationManager.bindResource(resourceKey, pendingConfirms);
+      TransactionSynchronizationManager.registerSynchronization(pendingConfirms);
+    }
+
+    return pendingConfirms;
+  }
+
+  static void awaitConfirm(CorrelationData correlationData, long confirmTimeoutMillis) {
+    awaitConfirmUntil(correlationData, System.currentTimeMillis() + confirmTimeoutMillis);
+  }
+
+  static void awaitConfirms(List<CorrelationData> correlationData, long confirmTimeoutMillis) {
+    long deadline = System.currentTimeMillis() + confirmTimeoutMillis;
+    for (CorrelationData pendingCorrelationData : correlationData) {
+      awaitConfirmUntil(pendingCorrelationData, deadline);
+    }
+  }
+
+  void add(CorrelationData correlationData) {
+    this.correlationData.add(correlationData);
+  }
+
+  @Override
+  public void beforeCommit(boolean readOnly) {
+    awaitConfirms(correlationData, confirmTimeoutMillis);
+  }
+
+  @Override
+  public void afterCompletion(int status) {
+    TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+  }
+
+  private static void awaitConfirmUntil(CorrelationData correlationData, long deadline) {
+    Confirm confirm;
+    try {
+      confirm =
+          correlationData
+              .getFuture()
+              .get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new AmqpException("Timed out waiting for publisher confirm " + correlationData.getId());
+    } catch (ExecutionException e) {
+      throw new AmqpException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AmqpException(e);
+    }
+
+    if (!confirm.isAck()) {
+      throw new AmqpException(
+          String.format(
+              "Message %s was nacked: %s", correlationData.getId(), confirm.getReason()));
+    }
+  }
+}
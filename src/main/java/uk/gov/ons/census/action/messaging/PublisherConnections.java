@@ -0,0 +1,75 @@
+package uk.gov.ons.census.action.messaging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dedicated publisher connections for each of the exchanges we publish to, so that a blocked or
+ * slow exchange can't stall publishing to the others, and so that publishing doesn't compete with
+ * anything else for the auto-configured connection.
+ *
+ * <p>Each exchange gets its own set of connections. Each thread is pinned to one of them the first
+ * time it publishes, so the worker threads are spread evenly over the connections and a worker
+ * always publishes on the same connection, and within a transaction on the same channel.
+ */
+@Component
+public class PublisherConnections {
+  private final AtomicInteger nextThreadIndex = new AtomicInteger();
+  private final ThreadLocal<Integer> threadIndex =
+      ThreadLocal.withInitial(nextThreadIndex::getAndIncrement);
+  private final Map<String, RabbitTemplate[]> exchangeTemplates = new HashMap<>();
+  private final List<CachingConnectionFactory> connectionFactories = new ArrayList<>();
+
+  public PublisherConnections(
+      RabbitProperties rabbitProperties,
+      @Value("${queueconfig.publisher-connections.enabled}") boolean dedicatedConnections,
+      @Value("${queueconfig.publisher-connections.connections-per-exchange}")
+          int connectionsPerExchange,
+      @Value("${queueconfig.publisher-connections.channel-cache-size}") int channelCacheSize,
+      @Value("${queueconfig.outbound-exchange}") String outboundExchange,
+      @Value("${queueconfig.action-case-exchange}") String actionCaseExchange,
+      @Value("${queueconfig.uac-qid-created-exchange}") String uacQidCreatedExchange) {
+    if (!dedicatedConnections) {
+      return;
+    }
+
+    for (String exchange : List.of(outboundExchange, actionCaseExchange, uacQidCreatedExchange)) {
+      RabbitTemplate[] templates = new RabbitTemplate[connectionsPerExchange];
+      for (int i = 0; i < connectionsPerExchange; i++) {
+        CachingConnectionFactory connectionFactory =
+            DedicatedConnectionFactory.build(
+                rabbitProperties, "action-worker-" + exchange + "-" + i);
+        connectionFactory.setChannelCacheSize(channelCacheSize);
+        connectionFactories.add(connectionFactory);
+
+        templates[i] = new RabbitTemplate(connectionFactory);
+        templates[i].setChannelTransacted(!connectionFactory.isPublisherConfirms());
+      }
+      exchangeTemplates.put(exchange, templates);
+    }
+  }
+
+  // Returns the template for this thread to publish to the exchange with, or null for the default
+  public RabbitTemplate getTemplate(String exchange) {
+    RabbitTemplate[] templates = exchangeTemplates.get(exchange);
+    if (templates == null) {
+      return null;
+    }
+
+    return templates[Math.floorMod(threadIndex.get(), templates.length)];
+  }
+
+  @PreDestroy
+  public void close() {
+    connectionFactories.forEach(CachingConnectionFactory::destroy);
+  }
+}
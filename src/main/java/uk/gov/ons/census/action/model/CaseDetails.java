@@ -0,0 +1,61 @@
+package uk.gov.ons.census.action.model;
+
+import java.util.UUID;
+import uk.gov.ons.census.action.model.entity.CaseMetadata;
+
+/**
+ * The parts of a case which go into the messages we send out. Implemented by the {@link
+ * uk.gov.ons.census.action.model.entity.Case} entity, and by the read-only {@link CaseRecord}
+ * which is mapped straight from JDBC.
+ */
+public interface CaseDetails {
+  long getCaseRef();
+
+  UUID getCaseId();
+
+  String getCaseType();
+
+  String getUprn();
+
+  String getEstabUprn();
+
+  String getAddressType();
+
+  String getEstabType();
+
+  String getAddressLevel();
+
+  String getOrganisationName();
+
+  String getAddressLine1();
+
+  String getAddressLine2();
+
+  String getAddressLine3();
+
+  String getTownName();
+
+  String getPostcode();
+
+  String getLatitude();
+
+  String getLongitude();
+
+  String getOa();
+
+  String getRegion();
+
+  String getFieldCoordinatorId();
+
+  String getFieldOfficerId();
+
+  String getTreatmentCode();
+
+  Integer getCeExpectedCapacity();
+
+  int getCeActualResponses();
+
+  boolean isHandDelivery();
+
+  CaseMetadata getMetadata();
+}
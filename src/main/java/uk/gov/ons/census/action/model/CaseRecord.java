@@ -0,0 +1,58 @@
+package uk.gov.ons.census.action.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+import lombok.Builder;
+import lombok.Value;
+import uk.gov.ons.census.action.model.entity.CaseMetadata;
+
+/**
+ * An immutable copy of a case, which isn't tracked by Hibernate. The metadata is only deserialised
+ * if something asks for it.
+ */
+@Value
+@Builder
+public class CaseRecord implements CaseDetails {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private long caseRef;
+  private UUID caseId;
+  private String caseType;
+  private String uprn;
+  private String estabUprn;
+  private String addressType;
+  private String estabType;
+  private String addressLevel;
+  private String organisationName;
+  private String addressLine1;
+  private String addressLine2;
+  private String addressLine3;
+  private String townName;
+  private String postcode;
+  private String latitude;
+  private String longitude;
+  private String oa;
+  private String region;
+  private String fieldCoordinatorId;
+  private String fieldOfficerId;
+  private String treatmentCode;
+  private Integer ceExpectedCapacity;
+  private int ceActualResponses;
+  private boolean handDelivery;
+  private String metadataJson;
+
+  @Override
+  public CaseMetadata getMetadata() {
+    if (metadataJson == null) {
+      return null;
+    }
+
+    try {
+      return objectMapper.readValue(metadataJson, CaseMetadata.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not deserialise metadata for case " + caseId, e);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package uk.gov.ons.census.action.model;
+
+import java.util.UUID;
+import lombok.Value;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+
+/** An immutable copy of a case_to_process 'queue' row, which isn't tracked by Hibernate. */
+@Value
+public class CaseToProcessRecord {
+  private long id;
+  private CaseRecord caze;
+  private ActionRule actionRule;
+  private UUID batchId;
+  private int batchQuantity;
+  private Integer ceExpectedCapacity;
+}
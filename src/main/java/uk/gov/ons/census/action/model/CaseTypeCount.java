@@ -0,0 +1,16 @@
+package uk.gov.ons.census.action.model;
+
+import lombok.Value;
+
+/**
+ * How many of an action plan's cases there are of one case type, country and address level, and
+ * the total expected capacity of them.
+ */
+@Value
+public class CaseTypeCount {
+  private String caseType;
+  private String region;
+  private String addressLevel;
+  private int cases;
+  private int expectedCapacity;
+}
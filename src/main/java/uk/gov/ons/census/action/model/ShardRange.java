@@ -0,0 +1,42 @@
+package uk.gov.ons.census.action.model;
+
+import lombok.Value;
+
+/**
+ * The hash buckets of the 'queue' tables which a worker claims rows from. A row is in bucket
+ * abs(hashint8(id) % shards), and the worker claims buckets firstShard to lastShard inclusive.
+ */
+@Value
+public class ShardRange {
+  public static final ShardRange ALL = new ShardRange(1, 0, 0);
+
+  private int shards;
+  private int firstShard;
+  private int lastShard;
+
+  public boolean isEmpty() {
+    return lastShard < firstShard;
+  }
+
+  public boolean isAll() {
+    return firstShard <= 0 && lastShard >= shards - 1;
+  }
+
+  /**
+   * Appended to a WHERE clause. The numbers are written into the SQL, rather than bound, so that
+   * the filter matches the expression index on the bucket (see {@link #shardExpression}) and
+   * Postgres can go straight to the worker's rows instead of hashing its way through the table.
+   */
+  public String filterSql(String idColumn) {
+    if (isAll()) {
+      return "TRUE";
+    }
+
+    return shardExpression(idColumn, shards) + " BETWEEN " + firstShard + " AND " + lastShard;
+  }
+
+  // The bucket of a row, exactly as it must appear in both the claim queries and the index
+  public static String shardExpression(String idColumn, int shards) {
+    return "abs(hashint8(CAST(" + idColumn + " AS bigint)) % " + shards + ")";
+  }
+}
@@ -0,0 +1,13 @@
+package uk.gov.ons.census.action.model.dto;
+
+import java.util.UUID;
+import lombok.Data;
+
+@Data
+public class CasesSelected {
+  private UUID actionRuleId;
+  private String batchId;
+  private String packCode;
+  private int caseCount;
+  private long[] caseRefs;
+}
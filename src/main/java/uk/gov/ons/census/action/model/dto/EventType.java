@@ -5,8 +5,10 @@ public enum EventType {
   CASE_UPDATED,
   UAC_UPDATED,
   PRINT_CASE_SELECTED,
+  PRINT_CASES_SELECTED,
   FULFILMENT_REQUESTED,
   FIELD_CASE_SELECTED,
+  FIELD_CASES_SELECTED,
   UNDELIVERED_MAIL_REPORTED,
   RM_UAC_CREATED
 }
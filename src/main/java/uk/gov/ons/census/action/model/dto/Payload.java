@@ -6,5 +6,6 @@ import lombok.Data;
 public class Payload {
   private PrintCaseSelected printCaseSelected;
   private FieldCaseSelected fieldCaseSelected;
+  private CasesSelected casesSelected;
   private UacQidCreated uacQidCreated;
 }
@@ -8,6 +8,7 @@ import lombok.Data;
 import org.hibernate.annotations.Type;
 import org.hibernate.annotations.TypeDef;
 import org.hibernate.annotations.TypeDefs;
+import uk.gov.ons.census.action.model.CaseDetails;
 
 @Data
 @Entity
@@ -20,7 +21,7 @@ import org.hibernate.annotations.TypeDefs;
       @Index(name = "treatment_code_idx", columnList = "treatment_code"),
       @Index(name = "lsoa_idx", columnList = "lsoa")
     })
-public class Case {
+public class Case implements CaseDetails {
 
   @Id private long caseRef;
 
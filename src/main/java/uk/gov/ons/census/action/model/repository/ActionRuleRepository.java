@@ -1,7 +1,11 @@
 package uk.gov.ons.census.action.model.repository;
 
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
 import uk.gov.ons.census.action.model.entity.ActionRule;
 
-public interface ActionRuleRepository extends JpaRepository<ActionRule, UUID> {}
+public interface ActionRuleRepository extends JpaRepository<ActionRule, UUID> {
+  List<ActionRule> findByHasTriggeredFalseAndTriggerDateTimeBefore(OffsetDateTime triggerDateTime);
+}
@@ -0,0 +1,49 @@
+package uk.gov.ons.census.action.model.repository;
+
+import java.util.Arrays;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class BulkDeleteRepository {
+  private static final String DELETE_CASES_TO_PROCESS =
+      "DELETE FROM actionv2.case_to_process WHERE id = ANY(?)";
+  private static final String DELETE_FULFILMENTS_TO_PROCESS =
+      "DELETE FROM actionv2.fulfilment_to_process WHERE id = ANY(?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Value("${scheduler.delete-batch-size}")
+  private int deleteBatchSize;
+
+  public BulkDeleteRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public void deleteCasesToProcess(long[] ids) {
+    deleteInBatches(DELETE_CASES_TO_PROCESS, ids);
+  }
+
+  public void deleteFulfilmentsToProcess(long[] ids) {
+    deleteInBatches(DELETE_FULFILMENTS_TO_PROCESS, ids);
+  }
+
+  private void deleteInBatches(String sql, long[] ids) {
+    for (int from = 0; from < ids.length; from += deleteBatchSize) {
+      long[] batch = Arrays.copyOfRange(ids, from, Math.min(from + deleteBatchSize, ids.length));
+
+      // The JDBC driver can bind a primitive long[] directly, so there's no boxing of the IDs
+      jdbcTemplate.update(
+          sql,
+          preparedStatement ->
+              preparedStatement.setArray(
+                  1,
+                  preparedStatement
+                      .getConnection()
+                      .unwrap(PGConnection.class)
+                      .createArrayOf("int8", batch)));
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package uk.gov.ons.census.action.model.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import uk.gov.ons.census.action.model.CaseRecord;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+
+/**
+ * Claims chunks of rows from the case_to_process 'queue' with plain JDBC, mapping them into
+ * read-only records so that Hibernate doesn't have to track every case in the chunk.
+ */
+@Repository
+public class CaseToProcessRecordRepository {
+  private static final String COLUMNS =
+      "ctp.id, ctp.action_rule_id, ctp.batch_id, ctp.batch_quantity,"
+          + " ctp.ce_expected_capacity AS ctp_ce_expected_capacity,"
+          + " c.case_ref, c.case_id, c.case_type, c.uprn, c.estab_uprn, c.address_type,"
+          + " c.estab_type, c.address_level, c.organisation_name, c.address_line1,"
+          + " c.address_line2, c.address_line3, c.town_name, c.postcode, c.latitude,"
+          + " c.longitude, c.oa, c.region, c.field_coordinator_id, c.field_officer_id,"
+          + " c.treatment_code, c.ce_expected_capacity, c.ce_actual_responses,"
+          + " c.hand_delivery, c.metadata";
+
+  // Only lock the 'queue' rows, not the cases they've been joined to. %s is the shard filter
+  private static final String CASE_CHUNK_QUERY =
+      "SELECT "
+          + COLUMNS
+          + " FROM actionv2.case_to_process ctp"
+          + " JOIN actionv2.cases c ON c.case_ref = ctp.caze_case_ref"
+          + " WHERE %s"
+          + " LIMIT ? FOR UPDATE OF ctp SKIP LOCKED";
+
+  private static final String CASE_CHUNK_DELETE_QUERY =
+      "WITH ctp AS (DELETE FROM actionv2.case_to_process WHERE id IN"
+          + " (SELECT id FROM actionv2.case_to_process WHERE %s"
+          + " LIMIT ? FOR UPDATE SKIP LOCKED)"
+          + " RETURNING *)"
+          + " SELECT "
+          + COLUMNS
+          + " FROM ctp JOIN actionv2.cases c ON c.case_ref = ctp.caze_case_ref";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ActionRuleRepository actionRuleRepository;
+
+  public CaseToProcessRecordRepository(
+      JdbcTemplate jdbcTemplate, ActionRuleRepository actionRuleRepository) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.actionRuleRepository = actionRuleRepository;
+  }
+
+  public List<CaseToProcessRecord> findChunkToProcess(int limit, ShardRange shardRange) {
+    return findChunk(String.format(CASE_CHUNK_QUERY, shardRange.filterSql("ctp.id")), limit);
+  }
+
+  // The rows are deleted as they're claimed, but the delete rolls back with the transaction
+  public List<CaseToProcessRecord> findAndDeleteChunkToProcess(
+      int limit, ShardRange shardRange) {
+    return findChunk(String.format(CASE_CHUNK_DELETE_QUERY, shardRange.filterSql("id")), limit);
+  }
+
+  private List<CaseToProcessRecord> findChunk(String query, int limit) {
+    // There are only a handful of action rules per chunk, so only look each one up once
+    Map<UUID, ActionRule> actionRules = new HashMap<>();
+
+    return jdbcTemplate.query(
+        query,
+        preparedStatement -> preparedStatement.setInt(1, limit),
+        (resultSet, rowNum) -> mapRow(resultSet, actionRules));
+  }
+
+  private CaseToProcessRecord mapRow(ResultSet resultSet, Map<UUID, ActionRule> actionRules)
+      throws SQLException {
+    UUID actionRuleId = resultSet.getObject("action_rule_id", UUID.class);
+    ActionRule actionRule = actionRules.computeIfAbsent(actionRuleId, this::findActionRule);
+
+    return new CaseToProcessRecord(
+        resultSet.getLong("id"),
+        mapCase(resultSet),
+        actionRule,
+        resultSet.getObject("batch_id", UUID.class),
+        resultSet.getInt("batch_quantity"),
+        resultSet.getObject("ctp_ce_expected_capacity", Integer.class));
+  }
+
+  private CaseRecord mapCase(ResultSet resultSet) throws SQLException {
+    return CaseRecord.builder()
+        .caseRef(resultSet.getLong("case_ref"))
+        .caseId(resultSet.getObject("case_id", UUID.class))
+        .caseType(resultSet.getString("case_type"))
+        .uprn(resultSet.getString("uprn"))
+        .estabUprn(resultSet.getString("estab_uprn"))
+        .addressType(resultSet.getString("address_type"))
+        .estabType(resultSet.getString("estab_type"))
+        .addressLevel(resultSet.getString("address_level"))
+        .organisationName(resultSet.getString("organisation_name"))
+        .addressLine1(resultSet.getString("address_line1"))
+        .addressLine2(resultSet.getString("address_line2"))
+        .addressLine3(resultSet.getString("address_line3"))
+        .townName(resultSet.getString("town_name"))
+        .postcode(resultSet.getString("postcode"))
+        .latitude(resultSet.getString("latitude"))
+        .longitude(resultSet.getString("longitude"))
+        .oa(resultSet.getString("oa"))
+        .region(resultSet.getString("region"))
+        .fieldCoordinatorId(resultSet.getString("field_coordinator_id"))
+        .fieldOfficerId(resultSet.getString("field_officer_id"))
+        .treatmentCode(resultSet.getString("treatment_code"))
+        .ceExpectedCapacity(resultSet.getObject("ce_expected_capacity", Integer.class))
+        .ceActualResponses(resultSet.getInt("ce_actual_responses"))
+        .handDelivery(resultSet.getBoolean("hand_delivery"))
+        .metadataJson(resultSet.getString("metadata"))
+        .build();
+  }
+
+  private ActionRule findActionRule(UUID actionRuleId) {
+    return actionRuleRepository
+        .findById(actionRuleId)
+        .orElseThrow(
+            () -> new RuntimeException(String.format("Action rule '%s' not found", actionRuleId)));
+  }
+}
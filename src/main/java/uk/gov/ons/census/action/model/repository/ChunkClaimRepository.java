@@ -0,0 +1,111 @@
+package uk.gov.ons.census.action.model.repository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.stereotype.Repository;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
+
+/**
+ * Claims chunks of rows from the 'queue' tables, fetching each row's case in the same query rather
+ * than with a secondary select per row.
+ *
+ * <p>The action rules (and their action plans) aren't joined, because there are only a handful of
+ * them per chunk and they carry the classifiers clause. Once the first row of the chunk has loaded
+ * a rule it's in the persistence context, so each rule is only selected once per chunk.
+ */
+@Repository
+public class ChunkClaimRepository {
+  // Only lock the 'queue' rows, not the cases they've been joined to. %s is the shard filter
+  private static final String CASE_CHUNK_QUERY =
+      "SELECT {ctp.*}, {c.*} FROM actionv2.case_to_process ctp"
+          + " JOIN actionv2.cases c ON c.case_ref = ctp.caze_case_ref"
+          + " WHERE %s"
+          + " LIMIT :limit FOR UPDATE OF ctp SKIP LOCKED";
+
+  private static final String CASE_CHUNK_DELETE_QUERY =
+      "WITH claimed AS (DELETE FROM actionv2.case_to_process WHERE id IN"
+          + " (SELECT id FROM actionv2.case_to_process WHERE %s"
+          + " LIMIT :limit FOR UPDATE SKIP LOCKED)"
+          + " RETURNING *)"
+          + " SELECT {ctp.*}, {c.*} FROM claimed ctp"
+          + " JOIN actionv2.cases c ON c.case_ref = ctp.caze_case_ref";
+
+  private static final String FULFILMENT_CHUNK_QUERY =
+      "SELECT {ftp.*}, {c.*} FROM actionv2.fulfilment_to_process ftp"
+          + " LEFT JOIN actionv2.cases c ON c.case_ref = ftp.caze_case_ref"
+          + " WHERE ftp.batch_id IS NOT NULL AND ftp.quantity IS NOT NULL AND %s"
+          + " LIMIT :limit FOR UPDATE OF ftp SKIP LOCKED";
+
+  private static final String FULFILMENT_CHUNK_DELETE_QUERY =
+      "WITH claimed AS (DELETE FROM actionv2.fulfilment_to_process WHERE id IN"
+          + " (SELECT id FROM actionv2.fulfilment_to_process"
+          + " WHERE batch_id IS NOT NULL AND quantity IS NOT NULL AND %s"
+          + " LIMIT :limit FOR UPDATE SKIP LOCKED)"
+          + " RETURNING *)"
+          + " SELECT {ftp.*}, {c.*} FROM claimed ftp"
+          + " LEFT JOIN actionv2.cases c ON c.case_ref = ftp.caze_case_ref";
+
+  @PersistenceContext private EntityManager entityManager;
+
+  // Detaches the claimed chunk, so it can be read from threads outside the chunk's transaction
+  public void detachChunk() {
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  public List<CaseToProcess> findCaseChunkToProcess(int limit, ShardRange shardRange) {
+    return findCaseChunk(String.format(CASE_CHUNK_QUERY, shardRange.filterSql("ctp.id")), limit);
+  }
+
+  // The rows are deleted as they're claimed, but the delete rolls back with the transaction
+  public List<CaseToProcess> findAndDeleteCaseChunkToProcess(int limit, ShardRange shardRange) {
+    return findCaseChunk(
+        String.format(CASE_CHUNK_DELETE_QUERY, shardRange.filterSql("id")), limit);
+  }
+
+  public List<FulfilmentToProcess> findFulfilmentChunkToProcess(
+      int limit, ShardRange shardRange) {
+    return findFulfilmentChunk(
+        String.format(FULFILMENT_CHUNK_QUERY, shardRange.filterSql("ftp.id")), limit);
+  }
+
+  // The rows are deleted as they're claimed, but the delete rolls back with the transaction
+  public List<FulfilmentToProcess> findAndDeleteFulfilmentChunkToProcess(
+      int limit, ShardRange shardRange) {
+    return findFulfilmentChunk(
+        String.format(FULFILMENT_CHUNK_DELETE_QUERY, shardRange.filterSql("id")), limit);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<CaseToProcess> findCaseChunk(String query, int limit) {
+    List<Object[]> rows =
+        entityManager
+            .unwrap(Session.class)
+            .createNativeQuery(query)
+            .addEntity("ctp", CaseToProcess.class)
+            .addJoin("c", "ctp.caze")
+            .setParameter("limit", limit)
+            .getResultList();
+
+    return rows.stream().map(row -> (CaseToProcess) row[0]).collect(Collectors.toList());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<FulfilmentToProcess> findFulfilmentChunk(String query, int limit) {
+    List<Object[]> rows =
+        entityManager
+            .unwrap(Session.class)
+            .createNativeQuery(query)
+            .addEntity("ftp", FulfilmentToProcess.class)
+            .addJoin("c", "ftp.caze")
+            .setParameter("limit", limit)
+            .getResultList();
+
+    return rows.stream().map(row -> (FulfilmentToProcess) row[0]).collect(Collectors.toList());
+  }
+}
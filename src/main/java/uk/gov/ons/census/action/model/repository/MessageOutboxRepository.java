@@ -0,0 +1,100 @@
+package uk.gov.ons.census.action.model.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import uk.gov.ons.census.action.messaging.CapturedMessage;
+
+/**
+ * The outbox of messages which have been converted, ready to publish, but are waiting for the relay
+ * to publish them. Only the content type, encoding and headers of the message properties are kept.
+ */
+@Repository
+public class MessageOutboxRepository {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final TypeReference<Map<String, Object>> HEADERS_TYPE =
+      new TypeReference<>() {};
+
+  private static final String INSERT =
+      "INSERT INTO actionv2.message_outbox"
+          + " (exchange, routing_key, content_type, content_encoding, headers, body)"
+          + " VALUES (?, ?, ?, ?, ?, ?)";
+
+  // Oldest first, so nothing waits in the outbox for long. There's no ordering guarantee though:
+  // ids are allocated before commit, relays run concurrently and failed batches are published
+  // again later, so consumers mustn't rely on the order messages arrive in
+  private static final String CLAIM =
+      "WITH claimed AS (DELETE FROM actionv2.message_outbox WHERE id IN"
+          + " (SELECT id FROM actionv2.message_outbox ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED)"
+          + " RETURNING *)"
+          + " SELECT * FROM claimed ORDER BY id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public MessageOutboxRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public void insert(List<CapturedMessage> messages) {
+    jdbcTemplate.batchUpdate(
+        INSERT,
+        messages.stream()
+            .map(
+                capturedMessage -> {
+                  MessageProperties messageProperties =
+                      capturedMessage.getMessage().getMessageProperties();
+                  return new Object[] {
+                    capturedMessage.getExchange(),
+                    capturedMessage.getRoutingKey(),
+                    messageProperties.getContentType(),
+                    messageProperties.getContentEncoding(),
+                    writeHeaders(messageProperties.getHeaders()),
+                    capturedMessage.getMessage().getBody()
+                  };
+                })
+            .collect(Collectors.toList()));
+  }
+
+  // The rows are deleted as they're claimed, but the delete rolls back with the transaction
+  public List<CapturedMessage> claim(int limit) {
+    return jdbcTemplate.query(CLAIM, (resultSet, rowNum) -> mapRow(resultSet), limit);
+  }
+
+  private CapturedMessage mapRow(ResultSet resultSet) throws SQLException {
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentType(resultSet.getString("content_type"));
+    messageProperties.setContentEncoding(resultSet.getString("content_encoding"));
+    readHeaders(resultSet.getString("headers")).forEach(messageProperties::setHeader);
+
+    return new CapturedMessage(
+        resultSet.getString("exchange"),
+        resultSet.getString("routing_key"),
+        new Message(resultSet.getBytes("body"), messageProperties),
+        null);
+  }
+
+  private static String writeHeaders(Map<String, Object> headers) {
+    try {
+      return objectMapper.writeValueAsString(headers);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Failed to write message headers", e);
+    }
+  }
+
+  private static Map<String, Object> readHeaders(String headers) {
+    try {
+      return objectMapper.readValue(headers, HEADERS_TYPE);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Failed to read message headers", e);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package uk.gov.ons.census.action.model.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import uk.gov.ons.census.action.model.CaseTypeCount;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+
+/**
+ * Counts the cases an action rule is likely to select, and the fulfilments waiting to be
+ * processed, so that the UAC-QID pairs they'll need can be fetched before they're processed.
+ */
+@Repository
+public class UacQidForecastRepository {
+  // The rule's classifiers clause is appended, so this is at most the number of cases it'll select
+  private static final String COUNT_CASES_FOR_ACTION_PLAN =
+      "SELECT case_type, LEFT(region, 1) AS country, address_level, COUNT(*) AS cases,"
+          + " COALESCE(SUM(ce_expected_capacity), 0) AS expected_capacity"
+          + " FROM actionv2.cases WHERE action_plan_id = ? AND ";
+
+  private static final String COUNT_CASES_GROUP_BY =
+      " GROUP BY case_type, LEFT(region, 1), address_level";
+
+  private static final String COUNT_FULFILMENTS =
+      "SELECT fulfilment_code, COUNT(*) AS fulfilments FROM actionv2.fulfilment_to_process"
+          + " GROUP BY fulfilment_code";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public UacQidForecastRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public List<CaseTypeCount> countCasesForActionRule(ActionRule actionRule) {
+    return jdbcTemplate.query(
+        COUNT_CASES_FOR_ACTION_PLAN + actionRule.getClassifiersClause() + COUNT_CASES_GROUP_BY,
+        (resultSet, rowNum) ->
+            new CaseTypeCount(
+                resultSet.getString("case_type"),
+                resultSet.getString("country"),
+                resultSet.getString("address_level"),
+                resultSet.getInt("cases"),
+                resultSet.getInt("expected_capacity")),
+        actionRule.getActionPlan().getId());
+  }
+
+  public Map<String, Integer> countFulfilmentsByCode() {
+    Map<String, Integer> fulfilmentCounts = new HashMap<>();
+    jdbcTemplate.query(
+        COUNT_FULFILMENTS,
+        resultSet -> {
+          fulfilmentCounts.put(
+              resultSet.getString("fulfilment_code"), resultSet.getInt("fulfilments"));
+        });
+    return fulfilmentCounts;
+  }
+}
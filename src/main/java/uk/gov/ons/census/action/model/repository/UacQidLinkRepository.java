@@ -1,5 +1,6 @@
 package uk.gov.ons.census.action.model.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,4 +8,6 @@ import uk.gov.ons.census.action.model.entity.UacQidLink;
 
 public interface UacQidLinkRepository extends JpaRepository<UacQidLink, UUID> {
   List<UacQidLink> findByCaseId(UUID caseId);
+
+  List<UacQidLink> findByCaseIdIn(Collection<UUID> caseIds);
 }
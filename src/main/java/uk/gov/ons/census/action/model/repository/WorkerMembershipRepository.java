@@ -0,0 +1,129 @@
+package uk.gov.ons.census.action.model.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import uk.gov.ons.census.action.model.ShardRange;
+
+/** The workers which are currently sharing out the 'queue' tables. Uses the database clock. */
+@Repository
+public class WorkerMembershipRepository {
+  private static final String HEARTBEAT =
+      "INSERT INTO actionv2.action_worker_membership (worker_id, last_heartbeat)"
+          + " VALUES (?, now())"
+          + " ON CONFLICT (worker_id) DO UPDATE SET last_heartbeat = now()";
+  private static final String DELETE_EXPIRED =
+      "DELETE FROM actionv2.action_worker_membership"
+          + " WHERE last_heartbeat < now() - (? * interval '1 millisecond')";
+  private static final String FIND_WORKERS =
+      "SELECT worker_id FROM actionv2.action_worker_membership ORDER BY worker_id";
+  private static final String DELETE_WORKER =
+      "DELETE FROM actionv2.action_worker_membership WHERE worker_id = ?";
+
+  // Only one of the workers starting up at the same time creates the indexes. The others don't
+  // wait for the lock, because a waiting session would stop CREATE INDEX CONCURRENTLY finishing.
+  private static final String TRY_LOCK_SHARD_INDEXES =
+      "SELECT pg_try_advisory_lock(hashtext('action_worker_shard_indexes'))";
+  private static final String UNLOCK_SHARD_INDEXES =
+      "SELECT pg_advisory_unlock(hashtext('action_worker_shard_indexes'))";
+  private static final String IS_INDEX_VALID =
+      "SELECT i.indisvalid FROM pg_index i"
+          + " JOIN pg_class c ON c.oid = i.indexrelid"
+          + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+          + " WHERE n.nspname = 'actionv2' AND c.relname = '%s'";
+  private static final String DROP_INDEX = "DROP INDEX CONCURRENTLY IF EXISTS actionv2.%s";
+  private static final String CASE_SHARD_INDEX = "case_to_process_shard_%d";
+  private static final String CREATE_CASE_SHARD_INDEX =
+      "CREATE INDEX CONCURRENTLY %s ON actionv2.case_to_process ((%s))";
+  private static final String FULFILMENT_SHARD_INDEX = "fulfilment_to_process_shard_%d";
+  private static final String CREATE_FULFILMENT_SHARD_INDEX =
+      "CREATE INDEX CONCURRENTLY %s ON actionv2.fulfilment_to_process ((%s))"
+          + " WHERE batch_id IS NOT NULL AND quantity IS NOT NULL";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public WorkerMembershipRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public void heartbeat(UUID workerId) {
+    jdbcTemplate.update(HEARTBEAT, workerId);
+  }
+
+  public void deleteExpired(long timeoutMillis) {
+    jdbcTemplate.update(DELETE_EXPIRED, timeoutMillis);
+  }
+
+  public List<UUID> findWorkers() {
+    return jdbcTemplate.queryForList(FIND_WORKERS, UUID.class);
+  }
+
+  public void delete(UUID workerId) {
+    jdbcTemplate.update(DELETE_WORKER, workerId);
+  }
+
+  /**
+   * Indexes the 'queue' tables on the bucket of each row, so that the claim queries can read just
+   * the rows in the worker's own buckets. The index is specific to the number of shards, because
+   * it has to match the claim queries' shard filter exactly to be used. An index left invalid by a
+   * failed build is dropped and built again.
+   *
+   * @return false if another worker is already creating the indexes
+   */
+  public boolean createShardIndexes(int shards) {
+    String shardExpression = ShardRange.shardExpression("id", shards);
+
+    // The advisory lock is held by the session, so everything has to happen on one connection
+    return jdbcTemplate.execute(
+        (ConnectionCallback<Boolean>)
+            connection -> {
+              try (Statement statement = connection.createStatement()) {
+                if (!queryBoolean(statement, TRY_LOCK_SHARD_INDEXES)) {
+                  return false;
+                }
+
+                try {
+                  createIndex(
+                      statement,
+                      String.format(CASE_SHARD_INDEX, shards),
+                      CREATE_CASE_SHARD_INDEX,
+                      shardExpression);
+                  createIndex(
+                      statement,
+                      String.format(FULFILMENT_SHARD_INDEX, shards),
+                      CREATE_FULFILMENT_SHARD_INDEX,
+                      shardExpression);
+                } finally {
+                  statement.execute(UNLOCK_SHARD_INDEXES);
+                }
+              }
+              return true;
+            });
+  }
+
+  private void createIndex(
+      Statement statement, String indexName, String createIndex, String shardExpression)
+      throws SQLException {
+    Boolean valid = queryBoolean(statement, String.format(IS_INDEX_VALID, indexName));
+    if (Boolean.TRUE.equals(valid)) {
+      return;
+    }
+
+    if (valid != null) {
+      statement.execute(String.format(DROP_INDEX, indexName));
+    }
+    statement.execute(String.format(createIndex, indexName, shardExpression));
+  }
+
+  // Null if the query found no row
+  private Boolean queryBoolean(Statement statement, String sql) throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery(sql)) {
+      return resultSet.next() ? resultSet.getBoolean(1) : null;
+    }
+  }
+}
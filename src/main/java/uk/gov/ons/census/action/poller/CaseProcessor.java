@@ -9,6 +9,8 @@ import org.springframework.stereotype.Component;
 import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
 import uk.gov.ons.census.action.builders.FieldworkFollowupBuilder;
 import uk.gov.ons.census.action.builders.PrintFileDtoBuilder;
+import uk.gov.ons.census.action.model.CaseDetails;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
 import uk.gov.ons.census.action.model.dto.FieldworkFollowup;
 import uk.gov.ons.census.action.model.dto.PrintFileDto;
 import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
@@ -29,6 +31,10 @@ public class CaseProcessor {
   @Value("${queueconfig.action-case-exchange}")
   private String actionCaseExchange;
 
+  // The case selected events are sent once per chunk by the CaseSelectedAggregator instead
+  @Value("${queueconfig.aggregate-case-selected}")
+  private boolean aggregateCaseSelected;
+
   public CaseProcessor(
       FieldworkFollowupBuilder fieldworkFollowupBuilder,
       PrintFileDtoBuilder printFileDtoBuilder,
@@ -41,31 +47,53 @@ public class CaseProcessor {
   }
 
   public void process(CaseToProcess caseToProcess) {
-    ActionRule triggeredActionRule = caseToProcess.getActionRule();
+    process(
+        caseToProcess.getCaze(),
+        caseToProcess.getActionRule(),
+        caseToProcess.getBatchId(),
+        caseToProcess.getBatchQuantity(),
+        caseToProcess.getCeExpectedCapacity());
+  }
 
+  public void process(CaseToProcessRecord caseToProcess) {
+    process(
+        caseToProcess.getCaze(),
+        caseToProcess.getActionRule(),
+        caseToProcess.getBatchId(),
+        caseToProcess.getBatchQuantity(),
+        caseToProcess.getCeExpectedCapacity());
+  }
+
+  private void process(
+      CaseDetails caze,
+      ActionRule triggeredActionRule,
+      UUID batchId,
+      int batchQty,
+      Integer ceExpectedCapacity) {
     if (triggeredActionRule.getActionType().getHandler() == ActionHandler.PRINTER) {
-      executePrinterCase(caseToProcess);
+      executePrinterCase(caze, triggeredActionRule, batchId, batchQty, ceExpectedCapacity);
     } else if (triggeredActionRule.getActionType().getHandler() == ActionHandler.FIELD) {
-      executeFieldCase(caseToProcess);
+      executeFieldCase(caze, triggeredActionRule);
     }
   }
 
-  private void executePrinterCase(CaseToProcess caseToProcess) {
-    ActionRule triggeredActionRule = caseToProcess.getActionRule();
-    UUID batchId = caseToProcess.getBatchId();
-    int batchQty = caseToProcess.getBatchQuantity();
-
+  private void executePrinterCase(
+      CaseDetails caze,
+      ActionRule triggeredActionRule,
+      UUID batchId,
+      int batchQty,
+      Integer ceExpectedCapacity) {
     String routingKey = triggeredActionRule.getActionType().getHandler().getRoutingKey();
 
     int numOfMessagesToSend = 1;
 
     if (isExpectedCapacityActionType(triggeredActionRule.getActionType())) {
-      numOfMessagesToSend = caseToProcess.getCeExpectedCapacity();
+      numOfMessagesToSend = ceExpectedCapacity;
     }
     for (int i = 0; i < numOfMessagesToSend; i++) {
       PrintFileDto printFileDto =
           printFileDtoBuilder.buildPrintFileDto(
-              caseToProcess.getCaze(),
+              caze,
               triggeredActionRule.getActionType().getPackCode(),
               batchId,
               triggeredActionRule.getActionType(),
@@ -74,29 +102,35 @@ public class CaseProcessor {
       rabbitTemplate.convertAndSend(outboundExchange, routingKey, printFileDto);
     }
 
+    if (aggregateCaseSelected) {
+      return;
+    }
+
     ResponseManagementEvent printCaseSelected =
         caseSelectedBuilder.buildPrintMessage(
-            caseToProcess.getBatchId(),
-            caseToProcess.getCaze().getCaseRef(),
+            batchId,
+            caze.getCaseRef(),
             triggeredActionRule.getActionType().getPackCode(),
             triggeredActionRule.getId());
 
     rabbitTemplate.convertAndSend(actionCaseExchange, "", printCaseSelected);
   }
 
-  private void executeFieldCase(CaseToProcess caseToProcess) {
-    ActionRule triggeredActionRule = caseToProcess.getActionRule();
-
+  private void executeFieldCase(CaseDetails caze, ActionRule triggeredActionRule) {
     String routingKey = triggeredActionRule.getActionType().getHandler().getRoutingKey();
 
     FieldworkFollowup fieldworkFollowup =
         fieldworkFollowupBuilder.buildFieldworkFollowup(
-            caseToProcess.getCaze(),
+            caze,
             triggeredActionRule.getActionPlan().getId().toString(),
             triggeredActionRule.getActionType().name());
 
     rabbitTemplate.convertAndSend(outboundExchange, routingKey, fieldworkFollowup);
 
+    if (aggregateCaseSelected) {
+      return;
+    }
+
     ResponseManagementEvent fieldCaseSelected =
         caseSelectedBuilder.buildFieldMessage(
             fieldworkFollowup.getCaseRef(), triggeredActionRule.getId());
@@ -0,0 +1,133 @@
+package uk.gov.ons.census.action.poller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+import uk.gov.ons.census.action.model.entity.ActionHandler;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
+
+/**
+ * Sends one case selected event per action rule and batch in a chunk, listing every case selected,
+ * instead of an event per case. The caseCount is the exact number of caseRefs in the event, so the
+ * consumer can reconcile the events against the batch quantity.
+ */
+@Component
+public class CaseSelectedAggregator {
+  private final CaseSelectedBuilder caseSelectedBuilder;
+  private final RabbitTemplate rabbitTemplate;
+  private final String actionCaseExchange;
+  private final boolean aggregateCaseSelected;
+
+  public CaseSelectedAggregator(
+      CaseSelectedBuilder caseSelectedBuilder,
+      RabbitTemplate rabbitTemplate,
+      @Value("${queueconfig.action-case-exchange}") String actionCaseExchange,
+      @Value("${queueconfig.aggregate-case-selected}") boolean aggregateCaseSelected) {
+    this.caseSelectedBuilder = caseSelectedBuilder;
+    this.rabbitTemplate = rabbitTemplate;
+    this.actionCaseExchange = actionCaseExchange;
+    this.aggregateCaseSelected = aggregateCaseSelected;
+  }
+
+  public void sendCasesSelected(List<CaseToProcess> cases) {
+    if (!aggregateCaseSelected) {
+      return;
+    }
+
+    Map<Selection, List<Long>> selections = new LinkedHashMap<>();
+    for (CaseToProcess caseToProcess : cases) {
+      addCase(
+          selections,
+          caseToProcess.getActionRule(),
+          caseToProcess.getBatchId(),
+          caseToProcess.getCaze().getCaseRef());
+    }
+
+    selections.forEach(this::sendCasesSelected);
+  }
+
+  public void sendCaseRecordsSelected(List<CaseToProcessRecord> cases) {
+    if (!aggregateCaseSelected) {
+      return;
+    }
+
+    Map<Selection, List<Long>> selections = new LinkedHashMap<>();
+    for (CaseToProcessRecord caseToProcess : cases) {
+      addCase(
+          selections,
+          caseToProcess.getActionRule(),
+          caseToProcess.getBatchId(),
+          caseToProcess.getCaze().getCaseRef());
+    }
+
+    selections.forEach(this::sendCasesSelected);
+  }
+
+  public void sendFulfilmentsSelected(List<FulfilmentToProcess> fulfilments) {
+    if (!aggregateCaseSelected) {
+      return;
+    }
+
+    Map<Selection, List<Long>> selections = new LinkedHashMap<>();
+    for (FulfilmentToProcess fulfilmentToProcess : fulfilments) {
+      Selection selection =
+          new Selection(
+              ActionHandler.PRINTER,
+              null,
+              fulfilmentToProcess.getBatchId(),
+              fulfilmentToProcess.getFulfilmentCode());
+      selections
+          .computeIfAbsent(selection, key -> new ArrayList<>())
+          .add(fulfilmentToProcess.getCaze().getCaseRef());
+    }
+
+    selections.forEach(this::sendCasesSelected);
+  }
+
+  private void addCase(
+      Map<Selection, List<Long>> selections, ActionRule actionRule, UUID batchId, long caseRef) {
+    ActionHandler handler = actionRule.getActionType().getHandler();
+
+    // Field follow ups aren't batched, so they're only grouped by action rule
+    Selection selection =
+        handler == ActionHandler.PRINTER
+            ? new Selection(
+                handler, actionRule.getId(), batchId, actionRule.getActionType().getPackCode())
+            : new Selection(handler, actionRule.getId(), null, null);
+    selections.computeIfAbsent(selection, key -> new ArrayList<>()).add(caseRef);
+  }
+
+  private void sendCasesSelected(Selection selection, List<Long> caseRefs) {
+    long[] caseRefArray = caseRefs.stream().mapToLong(Long::longValue).toArray();
+
+    ResponseManagementEvent casesSelected =
+        selection.getHandler() == ActionHandler.PRINTER
+            ? caseSelectedBuilder.buildPrintCasesSelectedMessage(
+                selection.getBatchId(),
+                selection.getPackCode(),
+                selection.getActionRuleId(),
+                caseRefArray)
+            : caseSelectedBuilder.buildFieldCasesSelectedMessage(
+                selection.getActionRuleId(), caseRefArray);
+
+    rabbitTemplate.convertAndSend(actionCaseExchange, "", casesSelected);
+  }
+
+  @lombok.Value
+  private static class Selection {
+    private ActionHandler handler;
+    private UUID actionRuleId;
+    private UUID batchId;
+    private String packCode;
+  }
+}
@@ -0,0 +1,98 @@
+package uk.gov.ons.census.action.poller;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.messaging.CapturedMessage;
+import uk.gov.ons.census.action.messaging.CapturingRabbitTemplate;
+
+/**
+ * Builds the messages for a chunk's rows on a pool of build threads, while the chunk's own thread
+ * publishes the messages which have already been built, in row order. The chunk's thread still
+ * owns the DB transaction and the transacted channel, so nothing is committed until the whole
+ * chunk has been published.
+ *
+ * <p>Rows are handed to the build threads through a bounded queue, and only so many rows can be
+ * built but not yet published, so a slow broker holds back the builders rather than filling the
+ * heap.
+ */
+@Component
+public class ChunkPipeline {
+  private final CapturingRabbitTemplate rabbitTemplate;
+  private final ThreadPoolExecutor buildExecutor;
+  private final int maxInFlight;
+
+  public ChunkPipeline(
+      CapturingRabbitTemplate rabbitTemplate,
+      @Value("${scheduler.pipeline.build-threads}") int buildThreads,
+      @Value("${scheduler.pipeline.max-in-flight}") int maxInFlight) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.maxInFlight = maxInFlight;
+
+    // If the builders fall behind, the chunk's own thread builds the row itself
+    buildExecutor =
+        new ThreadPoolExecutor(
+            buildThreads,
+            buildThreads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxInFlight),
+            new CustomizableThreadFactory("chunk-builder-"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  public <T> void buildAndPublish(List<T> rows, Consumer<T> processor) {
+    Deque<Future<List<CapturedMessage>>> inFlight = new ArrayDeque<>();
+
+    try {
+      for (T row : rows) {
+        if (inFlight.size() >= maxInFlight) {
+          publish(inFlight.removeFirst());
+        }
+
+        inFlight.addLast(
+            buildExecutor.submit(() -> rabbitTemplate.capture(() -> processor.accept(row))));
+      }
+
+      while (!inFlight.isEmpty()) {
+        publish(inFlight.removeFirst());
+      }
+    } finally {
+      // If anything failed the chunk is rolled back, so don't bother building the rest of it
+      inFlight.forEach(build -> build.cancel(true));
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    buildExecutor.shutdownNow();
+  }
+
+  private void publish(Future<List<CapturedMessage>> build) {
+    List<CapturedMessage> messages;
+    try {
+      messages = build.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted waiting for chunk messages to be built", e);
+    }
+
+    messages.forEach(rabbitTemplate::send);
+  }
+}
@@ -1,27 +1,107 @@
 package uk.gov.ons.census.action.poller;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import java.util.function.IntUnaryOperator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.model.entity.ActionHandler;
 
 @Component
 public class ChunkPoller {
+  // A chunk of cases can hold any action rule, so it's held back by whichever handler is slowest
+  private static final ActionHandler[] CASE_HANDLERS = ActionHandler.values();
+  private static final ActionHandler[] FULFILMENT_HANDLERS = {ActionHandler.PRINTER};
+
   private final ChunkProcessor chunkProcessor;
+  private final ChunkSizeController caseChunkSizeController;
+  private final ChunkSizeController fulfilmentChunkSizeController;
+  private final QueueWakeUp caseQueueWakeUp;
+  private final QueueWakeUp fulfilmentQueueWakeUp;
+  private final DownstreamQueueThrottle downstreamQueueThrottle;
 
-  public ChunkPoller(ChunkProcessor chunkProcessor) {
+  public ChunkPoller(
+      ChunkProcessor chunkProcessor,
+      @Qualifier("caseChunkSizeController") ChunkSizeController caseChunkSizeController,
+      @Qualifier("fulfilmentChunkSizeController")
+          ChunkSizeController fulfilmentChunkSizeController,
+      @Qualifier("caseQueueWakeUp") QueueWakeUp caseQueueWakeUp,
+      @Qualifier("fulfilmentQueueWakeUp") QueueWakeUp fulfilmentQueueWakeUp,
+      DownstreamQueueThrottle downstreamQueueThrottle) {
     this.chunkProcessor = chunkProcessor;
+    this.caseChunkSizeController = caseChunkSizeController;
+    this.fulfilmentChunkSizeController = fulfilmentChunkSizeController;
+    this.caseQueueWakeUp = caseQueueWakeUp;
+    this.fulfilmentQueueWakeUp = fulfilmentQueueWakeUp;
+    this.downstreamQueueThrottle = downstreamQueueThrottle;
   }
 
-  @Scheduled(fixedDelayString = "${scheduler.frequency}")
+  // Scheduled once per worker, see WorkerConfig
   public void processQueuedCases() {
-    do {
-      chunkProcessor.processChunk();
-    } while (chunkProcessor.isThereWorkToDo()); // Don't go to sleep while there's work to do!
+    drainQueue(
+        caseQueueWakeUp,
+        caseChunkSizeController,
+        chunkProcessor::processChunk,
+        CASE_HANDLERS);
   }
 
-  @Scheduled(fixedDelayString = "${scheduler.frequency}")
+  // Scheduled once per worker, see WorkerConfig
   public void processFulfilments() {
+    drainQueue(
+        fulfilmentQueueWakeUp,
+        fulfilmentChunkSizeController,
+        chunkProcessor::processFulfilmentChunk,
+        FULFILMENT_HANDLERS);
+  }
+
+  // Processes a single chunk of cases, returning whether it came back full
+  public boolean processCaseChunk() {
+    return processChunk(caseChunkSizeController, chunkProcessor::processChunk, CASE_HANDLERS);
+  }
+
+  // Processes a single chunk of fulfilments, returning whether it came back full
+  public boolean processFulfilmentChunk() {
+    return processChunk(
+        fulfilmentChunkSizeController,
+        chunkProcessor::processFulfilmentChunk,
+        FULFILMENT_HANDLERS);
+  }
+
+  private void drainQueue(
+      QueueWakeUp queueWakeUp,
+      ChunkSizeController chunkSizeController,
+      IntUnaryOperator chunkProcessorMethod,
+      ActionHandler[] handlers) {
+    long wakeUpCount;
     do {
-      chunkProcessor.processFulfilmentChunk();
-    } while (chunkProcessor.isThereFulfilmentWorkToDo()); // Don't sleep while there's work to do!
+      // Take the count before draining, so a wake up that arrives while we're busy isn't missed
+      wakeUpCount = queueWakeUp.getWakeUpCount();
+      while (processChunk(chunkSizeController, chunkProcessorMethod, handlers)) {
+        // Don't go to sleep while the chunks keep coming back full - there's more work to do!
+      }
+    } while (queueWakeUp.awaitWakeUp(wakeUpCount));
+  }
+
+  private boolean processChunk(
+      ChunkSizeController chunkSizeController,
+      IntUnaryOperator chunkProcessorMethod,
+      ActionHandler[] handlers) {
+    int chunkSize =
+        downstreamQueueThrottle.limitChunkSize(chunkSizeController.getChunkSize(), handlers);
+    if (chunkSize == 0) {
+      // The consumers are too far behind, so leave the work where it is until they catch up
+      return false;
+    }
+
+    long startTime = System.nanoTime();
+    int rowsProcessed;
+
+    try {
+      rowsProcessed = chunkProcessorMethod.applyAsInt(chunkSize);
+    } catch (RuntimeException e) {
+      chunkSizeController.recordFailure();
+      throw e;
+    }
+
+    chunkSizeController.recordSuccess(rowsProcessed, System.nanoTime() - startTime);
+    return rowsProcessed == chunkSize;
   }
 }
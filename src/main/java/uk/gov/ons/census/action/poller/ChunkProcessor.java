@@ -1,67 +1,214 @@
 package uk.gov.ons.census.action.poller;
 
-import java.util.stream.Stream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import uk.gov.ons.census.action.builders.UacQidLinkBuilder;
+import uk.gov.ons.census.action.cache.UacQidCache;
+import uk.gov.ons.census.action.cache.UacQidReservation;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.entity.UacQidLink;
 import uk.gov.ons.census.action.model.entity.CaseToProcess;
 import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
-import uk.gov.ons.census.action.model.repository.CaseToProcessRepository;
-import uk.gov.ons.census.action.model.repository.FulfilmentToProcessRepository;
+import uk.gov.ons.census.action.model.repository.BulkDeleteRepository;
+import uk.gov.ons.census.action.model.repository.CaseToProcessRecordRepository;
+import uk.gov.ons.census.action.model.repository.ChunkClaimRepository;
 
 @Component
 public class ChunkProcessor {
-  private final CaseToProcessRepository caseToProcessRepository;
+  private final ChunkClaimRepository chunkClaimRepository;
   private final CaseProcessor caseProcessor;
-  private final FulfilmentToProcessRepository fulfilmentToProcessRepository;
   private final FulfilmentProcessor fulfilmentProcessor;
+  private final BulkDeleteRepository bulkDeleteRepository;
+  private final CaseToProcessRecordRepository caseToProcessRecordRepository;
+  private final ShardMembership shardMembership;
+  private final ChunkPipeline chunkPipeline;
+  private final CaseSelectedAggregator caseSelectedAggregator;
+  private final UacQidCache uacQidCache;
+  private final UacQidChunkPlanner uacQidChunkPlanner;
+  private final UacQidLinkBuilder uacQidLinkBuilder;
 
-  @Value("${scheduler.chunksize}")
-  private int chunkSize;
+  // Claim the chunk with a single DELETE ... RETURNING instead of deleting row by row
+  @Value("${scheduler.claim-by-delete}")
+  private boolean claimByDelete;
+
+  // Map the claimed cases straight from JDBC into read-only records, rather than into entities
+  @Value("${scheduler.jdbc-row-mapper}")
+  private boolean jdbcRowMapper;
+
+  // Build the chunk's messages on other threads, while this one publishes them
+  @Value("${scheduler.pipeline.enabled}")
+  private boolean pipelineEnabled;
+
+  // Reserve all the UAC-QID pairs a chunk needs in one go, rather than taking them case by case
+  @Value("${scheduler.reserve-uac-qids}")
+  private boolean reserveUacQids;
 
   public ChunkProcessor(
-      CaseToProcessRepository caseToProcessRepository,
+      ChunkClaimRepository chunkClaimRepository,
       CaseProcessor caseProcessor,
-      FulfilmentToProcessRepository fulfilmentToProcessRepository,
-      FulfilmentProcessor fulfilmentProcessor) {
-    this.caseToProcessRepository = caseToProcessRepository;
+      FulfilmentProcessor fulfilmentProcessor,
+      BulkDeleteRepository bulkDeleteRepository,
+      CaseToProcessRecordRepository caseToProcessRecordRepository,
+      ShardMembership shardMembership,
+      ChunkPipeline chunkPipeline,
+      CaseSelectedAggregator caseSelectedAggregator,
+      UacQidCache uacQidCache,
+      UacQidChunkPlanner uacQidChunkPlanner,
+      UacQidLinkBuilder uacQidLinkBuilder) {
+    this.chunkClaimRepository = chunkClaimRepository;
     this.caseProcessor = caseProcessor;
-    this.fulfilmentToProcessRepository = fulfilmentToProcessRepository;
     this.fulfilmentProcessor = fulfilmentProcessor;
+    this.bulkDeleteRepository = bulkDeleteRepository;
+    this.caseToProcessRecordRepository = caseToProcessRecordRepository;
+    this.shardMembership = shardMembership;
+    this.chunkPipeline = chunkPipeline;
+    this.caseSelectedAggregator = caseSelectedAggregator;
+    this.uacQidCache = uacQidCache;
+    this.uacQidChunkPlanner = uacQidChunkPlanner;
+    this.uacQidLinkBuilder = uacQidLinkBuilder;
   }
 
+  // Returns the number of rows claimed, so the caller can tell whether the chunk came back full
   @Transactional(propagation = Propagation.REQUIRES_NEW) // Start a new transaction for every chunk
-  public void processChunk() {
-    try (Stream<CaseToProcess> cases = caseToProcessRepository.findChunkToProcess(chunkSize)) {
-      cases.forEach(
-          caseToProcess -> {
-            caseProcessor.process(caseToProcess);
-            caseToProcessRepository.delete(caseToProcess); // Delete the case from the 'queue'
-          });
+  public int processChunk(int chunkSize) {
+    ShardRange shardRange = shardMembership.getShardRange();
+    if (jdbcRowMapper) {
+      return processRecordChunk(chunkSize, shardRange);
+    }
+
+    if (claimByDelete) {
+      // The rows are already gone from the 'queue', but the delete rolls back with the transaction
+      List<CaseToProcess> cases =
+          chunkClaimRepository.findAndDeleteCaseChunkToProcess(chunkSize, shardRange);
+      processAll(
+          cases,
+          caseProcessor::process,
+          uacQidChunkPlanner::planCases,
+          uacQidChunkPlanner::planExistingUacQidCases);
+      caseSelectedAggregator.sendCasesSelected(cases);
+      return cases.size();
+    }
+
+    List<CaseToProcess> cases = chunkClaimRepository.findCaseChunkToProcess(chunkSize, shardRange);
+    processAll(
+        cases,
+        caseProcessor::process,
+        uacQidChunkPlanner::planCases,
+        uacQidChunkPlanner::planExistingUacQidCases);
+    caseSelectedAggregator.sendCasesSelected(cases);
+
+    if (!cases.isEmpty()) {
+      // Delete the whole chunk from the 'queue' in one go, rather than flushing a delete per case
+      bulkDeleteRepository.deleteCasesToProcess(
+          cases.stream().mapToLong(CaseToProcess::getId).toArray());
     }
+
+    return cases.size();
   }
 
-  @Transactional(propagation = Propagation.REQUIRES_NEW) // Start a new transaction for every chunk
-  public void processFulfilmentChunk() {
-    try (Stream<FulfilmentToProcess> fulfilments =
-        fulfilmentToProcessRepository.findChunkToProcess(chunkSize)) {
-      fulfilments.forEach(
-          fulfilmentsToSend -> {
-            fulfilmentProcessor.process(fulfilmentsToSend);
-            fulfilmentToProcessRepository.delete(
-                fulfilmentsToSend); // Delete the fulfilment from the 'queue'
-          });
+  private int processRecordChunk(int chunkSize, ShardRange shardRange) {
+    if (claimByDelete) {
+      List<CaseToProcessRecord> cases =
+          caseToProcessRecordRepository.findAndDeleteChunkToProcess(chunkSize, shardRange);
+      processAll(
+          cases,
+          caseProcessor::process,
+          uacQidChunkPlanner::planCaseRecords,
+          uacQidChunkPlanner::planExistingUacQidCaseRecords);
+      caseSelectedAggregator.sendCaseRecordsSelected(cases);
+      return cases.size();
     }
+
+    List<CaseToProcessRecord> cases =
+        caseToProcessRecordRepository.findChunkToProcess(chunkSize, shardRange);
+    processAll(
+        cases,
+        caseProcessor::process,
+        uacQidChunkPlanner::planCaseRecords,
+        uacQidChunkPlanner::planExistingUacQidCaseRecords);
+    caseSelectedAggregator.sendCaseRecordsSelected(cases);
+
+    if (!cases.isEmpty()) {
+      bulkDeleteRepository.deleteCasesToProcess(
+          cases.stream().mapToLong(CaseToProcessRecord::getId).toArray());
+    }
+
+    return cases.size();
   }
 
-  @Transactional
-  public boolean isThereWorkToDo() {
-    return caseToProcessRepository.count() > 0;
+  // Returns the number of rows claimed, so the caller can tell whether the chunk came back full
+  @Transactional(propagation = Propagation.REQUIRES_NEW) // Start a new transaction for every chunk
+  public int processFulfilmentChunk(int chunkSize) {
+    ShardRange shardRange = shardMembership.getShardRange();
+    if (claimByDelete) {
+      // The rows are already gone from the 'queue', but the delete rolls back with the transaction
+      List<FulfilmentToProcess> fulfilments =
+          chunkClaimRepository.findAndDeleteFulfilmentChunkToProcess(chunkSize, shardRange);
+      processAll(
+          fulfilments,
+          fulfilmentProcessor::process,
+          uacQidChunkPlanner::planFulfilments,
+          rows -> Set.of());
+      caseSelectedAggregator.sendFulfilmentsSelected(fulfilments);
+      return fulfilments.size();
+    }
+
+    List<FulfilmentToProcess> fulfilments =
+        chunkClaimRepository.findFulfilmentChunkToProcess(chunkSize, shardRange);
+    processAll(
+        fulfilments,
+        fulfilmentProcessor::process,
+        uacQidChunkPlanner::planFulfilments,
+        rows -> Set.of());
+    caseSelectedAggregator.sendFulfilmentsSelected(fulfilments);
+
+    if (!fulfilments.isEmpty()) {
+      // Delete the whole chunk from the 'queue' in one go, rather than flushing a delete per row
+      bulkDeleteRepository.deleteFulfilmentsToProcess(
+          fulfilments.stream().mapToLong(FulfilmentToProcess::getId).toArray());
+    }
+
+    return fulfilments.size();
   }
 
-  @Transactional
-  public boolean isThereFulfilmentWorkToDo() {
-    return fulfilmentToProcessRepository.countByBatchIdNotNull() > 0;
+  private <T> void processAll(
+      List<T> rows,
+      Consumer<T> processor,
+      Function<List<T>, Map<Integer, Integer>> uacQidPlan,
+      Function<List<T>, Set<UUID>> existingUacQidPlan) {
+    Consumer<T> rowProcessor = processor;
+    Map<Integer, Integer> pairsPerType =
+        reserveUacQids && !rows.isEmpty() ? uacQidPlan.apply(rows) : Map.of();
+    if (!pairsPerType.isEmpty()) {
+      // Any waiting for pairs is done here, once, rather than part way through building the chunk.
+      // A chunk of letters without UACs needs none, so doesn't depend on the UAC service at all
+      UacQidReservation uacQidReservation = uacQidCache.reserve(pairsPerType);
+      rowProcessor =
+          row -> uacQidCache.runWithReservation(uacQidReservation, () -> processor.accept(row));
+    }
+
+    if (pipelineEnabled && !rows.isEmpty()) {
+      // The build threads aren't part of this chunk's transaction, so mustn't use its persistence
+      // context or take connections of their own. Read everything they need from the DB here, in
+      // one query, and hand them detached rows
+      Map<UUID, List<UacQidLink>> uacQidLinks =
+          uacQidLinkBuilder.findUacQidLinks(existingUacQidPlan.apply(rows));
+      chunkClaimRepository.detachChunk();
+      Consumer<T> building = rowProcessor;
+      chunkPipeline.buildAndPublish(
+          rows,
+          row -> uacQidLinkBuilder.runWithUacQidLinks(uacQidLinks, () -> building.accept(row)));
+    } else {
+      rows.forEach(rowProcessor);
+    }
   }
 }
@@ -0,0 +1,98 @@
+package uk.gov.ons.census.action.poller;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grows or shrinks the chunk size to keep each chunk's transaction close to a target duration.
+ * Small chunks waste round trips, but big chunks hold FOR UPDATE locks for longer and put more work
+ * at risk of being rolled back, so we aim for the biggest chunk that fits inside the target.
+ *
+ * <p>If the min and max chunk sizes are the same, the chunk size is fixed.
+ */
+public class ChunkSizeController {
+  private static final Logger log = LoggerFactory.getLogger(ChunkSizeController.class);
+
+  // How much weight the latest chunk's throughput gets, versus the history of previous chunks
+  private static final double THROUGHPUT_SMOOTHING_FACTOR = 0.3;
+  private static final int MAX_GROWTH_FACTOR = 2;
+  private static final int MAX_SHRINK_FACTOR = 2;
+
+  private final String name;
+  private final int minChunkSize;
+  private final int maxChunkSize;
+  private final long targetTransactionNanos;
+
+  private int chunkSize;
+  private double smoothedRowsPerSecond = 0;
+
+  public ChunkSizeController(
+      String name,
+      int initialChunkSize,
+      int minChunkSize,
+      int maxChunkSize,
+      long targetTransactionMillis) {
+    this.name = name;
+    this.minChunkSize = minChunkSize;
+    this.maxChunkSize = maxChunkSize;
+    this.targetTransactionNanos = TimeUnit.MILLISECONDS.toNanos(targetTransactionMillis);
+    this.chunkSize = clamp(initialChunkSize);
+  }
+
+  public static ChunkSizeController fixed(String name, int chunkSize) {
+    return new ChunkSizeController(name, chunkSize, chunkSize, chunkSize, Long.MAX_VALUE);
+  }
+
+  public synchronized int getChunkSize() {
+    return chunkSize;
+  }
+
+  public synchronized void recordSuccess(int rowsProcessed, long transactionNanos) {
+    if (rowsProcessed == 0 || transactionNanos <= 0) {
+      return;
+    }
+
+    double rowsPerSecond = rowsProcessed * (double) TimeUnit.SECONDS.toNanos(1) / transactionNanos;
+    smoothedRowsPerSecond =
+        smoothedRowsPerSecond == 0
+            ? rowsPerSecond
+            : THROUGHPUT_SMOOTHING_FACTOR * rowsPerSecond
+                + (1 - THROUGHPUT_SMOOTHING_FACTOR) * smoothedRowsPerSecond;
+
+    if (transactionNanos > targetTransactionNanos) {
+      // Too slow: shrink in proportion to how far over the target we were
+      long shrunkChunkSize = chunkSize * targetTransactionNanos / transactionNanos;
+      setChunkSize((int) Math.max(shrunkChunkSize, chunkSize / MAX_SHRINK_FACTOR));
+    } else if (rowsProcessed >= chunkSize) {
+      // A partial chunk tells us nothing about whether a bigger chunk would fit, so only grow when
+      // the chunk came back full. Grow towards what the recent throughput says would fit the target
+      long idealChunkSize =
+          (long) (smoothedRowsPerSecond * targetTransactionNanos / TimeUnit.SECONDS.toNanos(1));
+      long grownChunkSize = Math.min(idealChunkSize, (long) chunkSize * MAX_GROWTH_FACTOR);
+      setChunkSize((int) Math.max(chunkSize, grownChunkSize));
+    }
+  }
+
+  public synchronized void recordFailure() {
+    // Back off hard, so that less work is at risk of rollback while whatever's wrong is wrong
+    setChunkSize(chunkSize / MAX_SHRINK_FACTOR);
+  }
+
+  private void setChunkSize(int newChunkSize) {
+    newChunkSize = clamp(newChunkSize);
+
+    if (newChunkSize != chunkSize) {
+      log.with("name", name)
+          .with("oldChunkSize", chunkSize)
+          .with("newChunkSize", newChunkSize)
+          .with("rowsPerSecond", (long) smoothedRowsPerSecond)
+          .debug("Chunk size changed");
+      chunkSize = newChunkSize;
+    }
+  }
+
+  private int clamp(int value) {
+    return Math.max(minChunkSize, Math.min(maxChunkSize, value));
+  }
+}
@@ -0,0 +1,142 @@
+package uk.gov.ons.census.action.poller;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.model.entity.ActionHandler;
+
+/**
+ * Holds back claiming while the printer or field consumers are behind, so that we don't fill their
+ * queues until the broker raises its memory alarm and blocks every publisher, including the
+ * uac-qid-created flow.
+ *
+ * <p>The depth of each handler's queue is checked periodically with a passive declare. Below the
+ * low watermark chunks are claimed at full size, then they're shrunk in proportion as the queue
+ * fills towards the high watermark. Once it's over the high watermark claiming is paused until the
+ * queue has drained back below the low watermark.
+ */
+@Component
+public class DownstreamQueueThrottle {
+  private static final Logger log = LoggerFactory.getLogger(DownstreamQueueThrottle.class);
+
+  private final AmqpAdmin amqpAdmin;
+  private final boolean throttleEnabled;
+  private final Map<ActionHandler, QueueWatermarks> watermarks = new EnumMap<>(ActionHandler.class);
+
+  public DownstreamQueueThrottle(
+      AmqpAdmin amqpAdmin,
+      @Value("${queueconfig.throttle.enabled}") boolean throttleEnabled,
+      @Value("${queueconfig.throttle.printer.queue}") String printerQueue,
+      @Value("${queueconfig.throttle.printer.low-watermark}") long printerLowWatermark,
+      @Value("${queueconfig.throttle.printer.high-watermark}") long printerHighWatermark,
+      @Value("${queueconfig.throttle.field.queue}") String fieldQueue,
+      @Value("${queueconfig.throttle.field.low-watermark}") long fieldLowWatermark,
+      @Value("${queueconfig.throttle.field.high-watermark}") long fieldHighWatermark) {
+    this.amqpAdmin = amqpAdmin;
+    this.throttleEnabled = throttleEnabled;
+    watermarks.put(
+        ActionHandler.PRINTER,
+        new QueueWatermarks(printerQueue, printerLowWatermark, printerHighWatermark));
+    watermarks.put(
+        ActionHandler.FIELD,
+        new QueueWatermarks(fieldQueue, fieldLowWatermark, fieldHighWatermark));
+  }
+
+  @Scheduled(fixedDelayString = "${queueconfig.throttle.check-interval}")
+  public void checkQueueDepths() {
+    if (!throttleEnabled) {
+      return;
+    }
+
+    watermarks.forEach(this::checkQueueDepth);
+  }
+
+  // Scales the chunk size down by the most backed up of the handlers the chunk might publish to
+  public int limitChunkSize(int chunkSize, ActionHandler... handlers) {
+    double throttleFactor = 1;
+    for (ActionHandler handler : handlers) {
+      throttleFactor = Math.min(throttleFactor, watermarks.get(handler).getThrottleFactor());
+    }
+
+    return (int) Math.ceil(chunkSize * throttleFactor);
+  }
+
+  private void checkQueueDepth(ActionHandler handler, QueueWatermarks queueWatermarks) {
+    QueueInformation queueInformation;
+    try {
+      queueInformation = amqpAdmin.getQueueInfo(queueWatermarks.getQueueName());
+    } catch (RuntimeException e) {
+      // Carry on as we were until we can see the queue again
+      log.with("queueName", queueWatermarks.getQueueName())
+          .error("Failed to check downstream queue depth", e);
+      return;
+    }
+
+    if (queueInformation == null) {
+      log.with("queueName", queueWatermarks.getQueueName())
+          .warn("Downstream queue does not exist, not throttling it");
+      queueWatermarks.update(0);
+      return;
+    }
+
+    boolean wasPaused = queueWatermarks.isPaused();
+    queueWatermarks.update(queueInformation.getMessageCount());
+
+    if (queueWatermarks.isPaused() != wasPaused) {
+      log.with("handler", handler)
+          .with("queueName", queueWatermarks.getQueueName())
+          .with("messageCount", queueInformation.getMessageCount())
+          .info(queueWatermarks.isPaused() ? "Pausing claiming" : "Resuming claiming");
+    }
+  }
+
+  static class QueueWatermarks {
+    private final String queueName;
+    private final long lowWatermark;
+    private final long highWatermark;
+
+    private volatile boolean paused = false;
+    private volatile double throttleFactor = 1;
+
+    QueueWatermarks(String queueName, long lowWatermark, long highWatermark) {
+      this.queueName = queueName;
+      this.lowWatermark = lowWatermark;
+      this.highWatermark = highWatermark;
+    }
+
+    String getQueueName() {
+      return queueName;
+    }
+
+    boolean isPaused() {
+      return paused;
+    }
+
+    double getThrottleFactor() {
+      return throttleFactor;
+    }
+
+    void update(long messageCount) {
+      if (messageCount >= highWatermark) {
+        paused = true;
+      } else if (messageCount <= lowWatermark) {
+        paused = false;
+      }
+
+      if (paused) {
+        throttleFactor = 0;
+      } else if (messageCount <= lowWatermark) {
+        throttleFactor = 1;
+      } else {
+        throttleFactor =
+            (double) (highWatermark - messageCount) / (highWatermark - lowWatermark);
+      }
+    }
+  }
+}
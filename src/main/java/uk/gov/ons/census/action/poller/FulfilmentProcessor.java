@@ -46,18 +46,21 @@ public class FulfilmentProcessor {
   private final CaseSelectedBuilder caseSelectedBuilder;
   private final String outboundExchange;
   private final String actionCaseExchange;
+  private final boolean aggregateCaseSelected;
 
   public FulfilmentProcessor(
       RabbitTemplate rabbitTemplate,
       UacQidLinkBuilder uacQidLinkBuilder,
       CaseSelectedBuilder caseSelectedBuilder,
       @Value("${queueconfig.outbound-exchange}") String outboundExchange,
-      @Value("${queueconfig.action-case-exchange}") String actionCaseExchange) {
+      @Value("${queueconfig.action-case-exchange}") String actionCaseExchange,
+      @Value("${queueconfig.aggregate-case-selected}") boolean aggregateCaseSelected) {
     this.rabbitTemplate = rabbitTemplate;
     this.uacQidLinkBuilder = uacQidLinkBuilder;
     this.caseSelectedBuilder = caseSelectedBuilder;
     this.outboundExchange = outboundExchange;
     this.actionCaseExchange = actionCaseExchange;
+    this.aggregateCaseSelected = aggregateCaseSelected;
   }
 
   public void process(FulfilmentToProcess fulfilmentToProcess) {
@@ -67,6 +70,11 @@ public class FulfilmentProcessor {
     rabbitTemplate.convertAndSend(
         outboundExchange, ActionHandler.PRINTER.getRoutingKey(), fulfilmentPrintFile);
 
+    if (aggregateCaseSelected) {
+      // The case selected events are sent once per chunk by the CaseSelectedAggregator instead
+      return;
+    }
+
     ResponseManagementEvent printCaseSelected =
         caseSelectedBuilder.buildPrintMessage(
             fulfilmentToProcess.getBatchId(),
@@ -117,7 +125,7 @@ public class FulfilmentProcessor {
     return fulfilmentPrintFile;
   }
 
-  private Optional<Integer> determineQuestionnaireType(String packCode) {
+  public static Optional<Integer> determineQuestionnaireType(String packCode) {
     return Optional.ofNullable(fulfilmentCodeToQuestionnaireType.get(packCode));
   }
 }
@@ -0,0 +1,144 @@
+package uk.gov.ons.census.action.poller;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shares one pool of workers between the fulfilments and the cases, a chunk at a time, so that
+ * fulfilments aren't stuck behind a big backlog of cases. Each time a worker finishes a chunk it
+ * picks the next lane by smooth weighted round robin across the whole pool, so while both lanes
+ * have work each gets its weighted share of the chunks, and neither can starve the other.
+ *
+ * <p>A lane which comes back with a part-full chunk is left alone by that worker until the idle
+ * recheck time has passed, so new fulfilments wait at most that long, plus the time for a worker
+ * to finish the chunk it's on.
+ *
+ * <p>Once every lane has gone idle, the worker sleeps until it's told there's new work on either
+ * queue, then tries all the lanes again. If nothing is listening for new work it goes back to its
+ * fixed delay polling schedule instead.
+ */
+@Component
+public class PriorityLaneScheduler {
+  private static final Logger log = LoggerFactory.getLogger(PriorityLaneScheduler.class);
+
+  private final List<Lane> lanes;
+  private final long idleRecheckMillis;
+  private final LongSupplier clock;
+  private final QueueWakeUp queueWakeUp;
+
+  @Autowired
+  public PriorityLaneScheduler(
+      ChunkPoller chunkPoller,
+      @Value("${scheduler.lanes.fulfilment-weight}") int fulfilmentWeight,
+      @Value("${scheduler.lanes.case-weight}") int caseWeight,
+      @Value("${scheduler.frequency}") long idleRecheckMillis,
+      @Qualifier("anyQueueWakeUp") QueueWakeUp queueWakeUp) {
+    this(
+        List.of(
+            new Lane("fulfilments", fulfilmentWeight, chunkPoller::processFulfilmentChunk),
+            new Lane("cases", caseWeight, chunkPoller::processCaseChunk)),
+        idleRecheckMillis,
+        System::currentTimeMillis,
+        queueWakeUp);
+  }
+
+  PriorityLaneScheduler(
+      List<Lane> lanes, long idleRecheckMillis, LongSupplier clock, QueueWakeUp queueWakeUp) {
+    this.lanes = lanes;
+    this.idleRecheckMillis = idleRecheckMillis;
+    this.clock = clock;
+    this.queueWakeUp = queueWakeUp;
+  }
+
+  // Scheduled once per worker, see WorkerConfig. Returns when all the lanes have gone idle and
+  // nothing is listening for new work
+  public void processLanes() {
+    long wakeUpCount;
+    do {
+      // Take the count before draining, so a wake up that arrives while we're busy isn't missed
+      wakeUpCount = queueWakeUp.getWakeUpCount();
+      drainLanes();
+    } while (queueWakeUp.awaitWakeUp(wakeUpCount));
+  }
+
+  private void drainLanes() {
+    long[] idleUntil = new long[lanes.size()];
+
+    Lane lane;
+    while ((lane = pickLane(idleUntil)) != null) {
+      boolean chunkWasFull;
+      try {
+        chunkWasFull = lane.chunkProcessor.getAsBoolean();
+      } catch (RuntimeException e) {
+        // Don't let one broken lane hold up the others, just back off from it for a while
+        log.with("lane", lane.name).error("Failed to process chunk", e);
+        chunkWasFull = false;
+      }
+
+      // A lane which has work again is no longer idle, or the others going idle would stop it
+      if (!chunkWasFull) {
+        idleUntil[lanes.indexOf(lane)] = clock.getAsLong() + idleRecheckMillis;
+      } else {
+        idleUntil[lanes.indexOf(lane)] = 0;
+      }
+    }
+  }
+
+  private synchronized Lane pickLane(long[] idleUntil) {
+    // Once every lane has come back part-full there's not much to do, so let the worker sleep
+    if (allIdle(idleUntil)) {
+      return null;
+    }
+
+    long now = clock.getAsLong();
+    int totalWeight = 0;
+    Lane pickedLane = null;
+
+    for (int i = 0; i < lanes.size(); i++) {
+      Lane lane = lanes.get(i);
+      if (idleUntil[i] > now) {
+        continue;
+      }
+
+      lane.currentWeight += lane.weight;
+      totalWeight += lane.weight;
+      if (pickedLane == null || lane.currentWeight > pickedLane.currentWeight) {
+        pickedLane = lane;
+      }
+    }
+
+    // There's always a lane to pick, because any lane which hasn't been idle yet is eligible
+    pickedLane.currentWeight -= totalWeight;
+    return pickedLane;
+  }
+
+  private boolean allIdle(long[] idleUntil) {
+    for (long laneIdleUntil : idleUntil) {
+      if (laneIdleUntil == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  static class Lane {
+    private final String name;
+    private final int weight;
+    private final BooleanSupplier chunkProcessor;
+    private int currentWeight = 0;
+
+    Lane(String name, int weight, BooleanSupplier chunkProcessor) {
+      this.name = name;
+      this.weight = weight;
+      this.chunkProcessor = chunkProcessor;
+    }
+  }
+}
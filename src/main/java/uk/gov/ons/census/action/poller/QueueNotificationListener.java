@@ -0,0 +1,164 @@
+package uk.gov.ons.census.action.poller;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listens for Postgres NOTIFYs that are sent when rows are added to the case_to_process or
+ * fulfilment_to_process tables, and wakes up the idle workers for that table. The priority lane
+ * workers take work from both tables, so they're woken for either.
+ *
+ * <p>LISTEN needs a connection which is held open indefinitely, so we use a dedicated connection
+ * rather than tying one up from the pool.
+ */
+@Component
+@ConditionalOnProperty(name = "scheduler.notify.enabled", havingValue = "true")
+public class QueueNotificationListener {
+  private static final Logger log = LoggerFactory.getLogger(QueueNotificationListener.class);
+
+  static final String CASE_CHANNEL = "action_case_to_process";
+  static final String FULFILMENT_CHANNEL = "action_fulfilment_to_process";
+
+  private static final int NOTIFICATION_TIMEOUT_MILLIS = 1000;
+  private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+  // Serialise installation across all the workers which might be starting up at the same time
+  private static final String INSTALL_TRIGGERS_SQL =
+      "SELECT pg_advisory_xact_lock(hashtext('action_worker_notify_triggers'));"
+          + "CREATE OR REPLACE FUNCTION actionv2.notify_action_worker() RETURNS trigger AS $$"
+          + " BEGIN PERFORM pg_notify(TG_ARGV[0], ''); RETURN NULL; END; $$ LANGUAGE plpgsql;"
+          + "DO $$ BEGIN"
+          + " IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = 'case_to_process_notify'"
+          + "  AND tgrelid = 'actionv2.case_to_process'::regclass) THEN"
+          + "  CREATE TRIGGER case_to_process_notify AFTER INSERT ON actionv2.case_to_process"
+          + "  FOR EACH STATEMENT EXECUTE PROCEDURE actionv2.notify_action_worker('"
+          + CASE_CHANNEL
+          + "');"
+          + " END IF;"
+          + " IF NOT EXISTS"
+          + "  (SELECT 1 FROM pg_trigger WHERE tgname = 'fulfilment_to_process_notify'"
+          + "  AND tgrelid = 'actionv2.fulfilment_to_process'::regclass) THEN"
+          + "  CREATE TRIGGER fulfilment_to_process_notify"
+          + "  AFTER INSERT OR UPDATE ON actionv2.fulfilment_to_process"
+          + "  FOR EACH STATEMENT EXECUTE PROCEDURE actionv2.notify_action_worker('"
+          + FULFILMENT_CHANNEL
+          + "');"
+          + " END IF;"
+          + " END $$;";
+
+  private final DataSourceProperties dataSourceProperties;
+  private final QueueWakeUp caseQueueWakeUp;
+  private final QueueWakeUp fulfilmentQueueWakeUp;
+  private final QueueWakeUp anyQueueWakeUp;
+  private final boolean installTriggers;
+  private final Thread listenerThread = new Thread(this::listen, "queue-notification-listener");
+
+  private volatile boolean running = true;
+
+  public QueueNotificationListener(
+      DataSourceProperties dataSourceProperties,
+      @Qualifier("caseQueueWakeUp") QueueWakeUp caseQueueWakeUp,
+      @Qualifier("fulfilmentQueueWakeUp") QueueWakeUp fulfilmentQueueWakeUp,
+      @Qualifier("anyQueueWakeUp") QueueWakeUp anyQueueWakeUp,
+      @Value("${scheduler.notify.install-triggers}") boolean installTriggers) {
+    this.dataSourceProperties = dataSourceProperties;
+    this.caseQueueWakeUp = caseQueueWakeUp;
+    this.fulfilmentQueueWakeUp = fulfilmentQueueWakeUp;
+    this.anyQueueWakeUp = anyQueueWakeUp;
+    this.installTriggers = installTriggers;
+  }
+
+  @PostConstruct
+  public void start() {
+    listenerThread.setDaemon(true);
+    listenerThread.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    listenerThread.interrupt();
+  }
+
+  private void listen() {
+    while (running) {
+      try (Connection connection =
+          DriverManager.getConnection(
+              dataSourceProperties.determineUrl(),
+              dataSourceProperties.determineUsername(),
+              dataSourceProperties.determinePassword())) {
+        try (Statement statement = connection.createStatement()) {
+          if (installTriggers) {
+            connection.setAutoCommit(false);
+            statement.execute(INSTALL_TRIGGERS_SQL);
+            connection.commit();
+            connection.setAutoCommit(true);
+          }
+
+          statement.execute("LISTEN " + CASE_CHANNEL);
+          statement.execute("LISTEN " + FULFILMENT_CHANNEL);
+        }
+
+        // We might have missed notifications while we weren't listening
+        setListening(true);
+        caseQueueWakeUp.wakeUp();
+        fulfilmentQueueWakeUp.wakeUp();
+        anyQueueWakeUp.wakeUp();
+
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications =
+              pgConnection.getNotifications(NOTIFICATION_TIMEOUT_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              handleNotification(notification.getName());
+            }
+          }
+        }
+      } catch (SQLException e) {
+        setListening(false);
+        log.error("Lost connection listening for queue notifications, falling back to polling", e);
+        sleepBeforeReconnecting();
+      }
+    }
+
+    setListening(false);
+  }
+
+  private void setListening(boolean listening) {
+    caseQueueWakeUp.setListening(listening);
+    fulfilmentQueueWakeUp.setListening(listening);
+    anyQueueWakeUp.setListening(listening);
+  }
+
+  void handleNotification(String channel) {
+    if (CASE_CHANNEL.equals(channel)) {
+      caseQueueWakeUp.wakeUp();
+      anyQueueWakeUp.wakeUp();
+    } else if (FULFILMENT_CHANNEL.equals(channel)) {
+      fulfilmentQueueWakeUp.wakeUp();
+      anyQueueWakeUp.wakeUp();
+    }
+  }
+
+  private void sleepBeforeReconnecting() {
+    try {
+      Thread.sleep(RECONNECT_DELAY_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package uk.gov.ons.census.action.poller;
+
+/**
+ * Lets idle workers sleep until they're told there's new work on their queue, instead of polling.
+ * If nothing is listening for new work, workers don't wait here at all and go back to their fixed
+ * delay polling schedule.
+ *
+ * <p>Nothing is listening until the listener says so, and it says so again whenever it loses its
+ * connection, so workers only rely on wake ups while they can actually be sent.
+ */
+public class QueueWakeUp {
+  private final long idlePollMillis;
+
+  private volatile boolean listening = false;
+  private long wakeUpCount = 0;
+
+  public QueueWakeUp(long idlePollMillis) {
+    this.idlePollMillis = idlePollMillis;
+  }
+
+  // Anybody waiting is woken when listening stops, so they go back to polling straight away
+  public synchronized void setListening(boolean listening) {
+    this.listening = listening;
+    notifyAll();
+  }
+
+  public synchronized long getWakeUpCount() {
+    return wakeUpCount;
+  }
+
+  public synchronized void wakeUp() {
+    wakeUpCount++;
+    notifyAll();
+  }
+
+  /**
+   * Waits until there's been a wake up since the caller last looked at the wake up count, or until
+   * the idle poll time has passed, as a safety net in case a notification was lost. Returns false
+   * if the caller should go back to its normal polling schedule instead.
+   */
+  public synchronized boolean awaitWakeUp(long lastSeenWakeUpCount) {
+    if (!listening) {
+      return false;
+    }
+
+    long deadline = System.currentTimeMillis() + idlePollMillis;
+    try {
+      while (listening && wakeUpCount == lastSeenWakeUpCount) {
+        long remainingMillis = deadline - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+          break;
+        }
+
+        wait(remainingMillis);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt(); // We're shutting down
+      return false;
+    }
+
+    return listening;
+  }
+}
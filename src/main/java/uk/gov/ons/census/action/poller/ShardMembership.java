@@ -0,0 +1,127 @@
+package uk.gov.ons.census.action.poller;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.repository.WorkerMembershipRepository;
+
+/**
+ * Shares the hash buckets of the 'queue' tables out between the live workers, so that they aren't
+ * all fighting over the same rows at the head of the table. Each worker heartbeats into the
+ * membership table, and takes an even, contiguous slice of the buckets according to where it
+ * comes in the list of live workers. Workers which stop heartbeating are dropped from the list, and
+ * everybody's slice is recalculated on their next heartbeat.
+ *
+ * <p>The claim queries can only go straight to a worker's rows if the 'queue' tables are indexed
+ * on the bucket, for the configured number of shards. The indexes are created at startup if
+ * scheduler.sharding.install-indexes is set, otherwise they're left to whoever owns the schema.
+ *
+ * <p>While the slices are being rebalanced two workers might briefly claim from the same buckets,
+ * which is fine because claiming still uses SKIP LOCKED.
+ */
+@Component
+public class ShardMembership {
+  private static final Logger log = LoggerFactory.getLogger(ShardMembership.class);
+
+  private final WorkerMembershipRepository workerMembershipRepository;
+  private final UUID workerId = UUID.randomUUID();
+
+  @Value("${scheduler.sharding.enabled}")
+  private boolean shardingEnabled;
+
+  @Value("${scheduler.sharding.shards}")
+  private int shards;
+
+  @Value("${scheduler.sharding.timeout}")
+  private long timeoutMillis;
+
+  @Value("${scheduler.sharding.install-indexes}")
+  private boolean installIndexes;
+
+  // Until we've heard who else is out there, claim from everywhere
+  private volatile ShardRange shardRange = ShardRange.ALL;
+
+  public ShardMembership(WorkerMembershipRepository workerMembershipRepository) {
+    this.workerMembershipRepository = workerMembershipRepository;
+  }
+
+  public ShardRange getShardRange() {
+    return shardRange;
+  }
+
+  @PostConstruct
+  public void installIndexes() {
+    if (!shardingEnabled || !installIndexes) {
+      return;
+    }
+
+    try {
+      if (!workerMembershipRepository.createShardIndexes(shards)) {
+        log.with("shards", shards).info("Another worker is creating the shard indexes");
+      }
+    } catch (RuntimeException e) {
+      // Claiming still works without the indexes, it just has to scan for the worker's rows. An
+      // index left invalid is built again by the next worker to start.
+      log.with("shards", shards).error("Failed to create the shard indexes", e);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${scheduler.sharding.heartbeat}")
+  public void heartbeat() {
+    if (!shardingEnabled) {
+      return;
+    }
+
+    try {
+      workerMembershipRepository.heartbeat(workerId);
+      workerMembershipRepository.deleteExpired(timeoutMillis);
+      List<UUID> workers = workerMembershipRepository.findWorkers();
+      updateShardRange(workers.indexOf(workerId), workers.size());
+    } catch (RuntimeException e) {
+      // Carry on with the range we've got, the others will take over our buckets if this persists
+      log.error("Failed to heartbeat worker membership", e);
+    }
+  }
+
+  @PreDestroy
+  public void leave() {
+    if (shardingEnabled) {
+      // Let the others take over our buckets straight away, rather than waiting for us to expire
+      workerMembershipRepository.delete(workerId);
+    }
+  }
+
+  private void updateShardRange(int workerIndex, int numberOfWorkers) {
+    if (workerIndex < 0) {
+      // We've been expired by someone else since we heartbeated, we'll be back next time
+      return;
+    }
+
+    ShardRange newShardRange =
+        new ShardRange(
+            shards,
+            workerIndex * shards / numberOfWorkers,
+            (workerIndex + 1) * shards / numberOfWorkers - 1);
+
+    if (!newShardRange.equals(shardRange)) {
+      if (newShardRange.isEmpty()) {
+        log.with("numberOfWorkers", numberOfWorkers)
+            .with("shards", shards)
+            .warn("More workers than shards, this worker won't claim anything");
+      }
+
+      log.with("firstShard", newShardRange.getFirstShard())
+          .with("lastShard", newShardRange.getLastShard())
+          .with("numberOfWorkers", numberOfWorkers)
+          .info("Rebalanced shards");
+      shardRange = newShardRange;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package uk.gov.ons.census.action.poller;
+
+import static uk.gov.ons.census.action.utility.ActionTypeHelper.isExpectedCapacityActionType;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.springframework.stereotype.Component;
+import uk.gov.ons.census.action.builders.UacQidLinkBuilder;
+import uk.gov.ons.census.action.model.CaseDetails;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
+
+/**
+ * Works out how many new UAC-QID pairs of each questionnaire type a claimed chunk will need, so
+ * that they can all be reserved from the cache before any of its cases are built, and which of its
+ * cases reuse the pairs they already have.
+ */
+@Component
+public class UacQidChunkPlanner {
+
+  public Map<Integer, Integer> planCases(List<CaseToProcess> cases) {
+    Map<Integer, Integer> pairsPerType = new HashMap<>();
+    for (CaseToProcess caseToProcess : cases) {
+      addCasePairs(
+          pairsPerType,
+          caseToProcess.getCaze(),
+          caseToProcess.getActionRule(),
+          caseToProcess.getCeExpectedCapacity());
+    }
+    return pairsPerType;
+  }
+
+  public Map<Integer, Integer> planCaseRecords(List<CaseToProcessRecord> cases) {
+    Map<Integer, Integer> pairsPerType = new HashMap<>();
+    for (CaseToProcessRecord caseToProcess : cases) {
+      addCasePairs(
+          pairsPerType,
+          caseToProcess.getCaze(),
+          caseToProcess.getActionRule(),
+          caseToProcess.getCeExpectedCapacity());
+    }
+    return pairsPerType;
+  }
+
+  public Map<Integer, Integer> planFulfilments(List<FulfilmentToProcess> fulfilments) {
+    Map<Integer, Integer> pairsPerType = new HashMap<>();
+    for (FulfilmentToProcess fulfilmentToProcess : fulfilments) {
+      FulfilmentProcessor.determineQuestionnaireType(fulfilmentToProcess.getFulfilmentCode())
+          .ifPresent(questionnaireType -> pairsPerType.merge(questionnaireType, 1, Integer::sum));
+    }
+    return pairsPerType;
+  }
+
+  // The cases which will reuse their existing pairs, whose links have to be read from the DB
+  public Set<UUID> planExistingUacQidCases(List<CaseToProcess> cases) {
+    Set<UUID> caseIds = new HashSet<>();
+    for (CaseToProcess caseToProcess : cases) {
+      if (UacQidLinkBuilder.isInitialContactNotExpectedCapacityActionType(
+          caseToProcess.getActionRule().getActionType())) {
+        caseIds.add(caseToProcess.getCaze().getCaseId());
+      }
+    }
+    return caseIds;
+  }
+
+  public Set<UUID> planExistingUacQidCaseRecords(List<CaseToProcessRecord> cases) {
+    Set<UUID> caseIds = new HashSet<>();
+    for (CaseToProcessRecord caseToProcess : cases) {
+      if (UacQidLinkBuilder.isInitialContactNotExpectedCapacityActionType(
+          caseToProcess.getActionRule().getActionType())) {
+        caseIds.add(caseToProcess.getCaze().getCaseId());
+      }
+    }
+    return caseIds;
+  }
+
+  private void addCasePairs(
+      Map<Integer, Integer> pairsPerType,
+      CaseDetails caze,
+      ActionRule actionRule,
+      Integer ceExpectedCapacity) {
+    List<String> questionnaireTypes;
+    try {
+      questionnaireTypes =
+          UacQidLinkBuilder.calculateNewQuestionnaireTypes(
+              actionRule.getActionType(),
+              caze.getCaseType(),
+              caze.getRegion(),
+              caze.getAddressLevel());
+    } catch (RuntimeException e) {
+      // The case will fail when it's built, rolling back the chunk, so there's nothing to reserve
+      return;
+    }
+
+    // An expected capacity action sends a pack, with new pairs, per expected resident of the case
+    int packs = 1;
+    if (isExpectedCapacityActionType(actionRule.getActionType())) {
+      packs = ceExpectedCapacity != null ? ceExpectedCapacity : 0;
+    }
+
+    for (String questionnaireType : questionnaireTypes) {
+      pairsPerType.merge(Integer.parseInt(questionnaireType), packs, Integer::sum);
+    }
+  }
+}
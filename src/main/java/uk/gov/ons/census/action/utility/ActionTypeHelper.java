@@ -14,7 +14,28 @@ public class ActionTypeHelper {
           ActionType.CE_IC09,
           ActionType.CE_IC10);
 
+  private static final Set<ActionType> doesNotRequireUacQidActionTypes =
+      Set.of(
+          ActionType.P_RL_1RL1A,
+          ActionType.P_RL_1RL2BA,
+          ActionType.P_RL_2RL1A,
+          ActionType.P_RL_2RL2BA,
+          ActionType.P_RL_1IRL2B,
+          ActionType.P_RL_1IRL1,
+          ActionType.P_RL_1RL4A,
+          ActionType.P_NC_NCLTA1,
+          ActionType.P_NC_NCLTA2B
+          // Adding to this list will result in no UAC being sent on the printed
+          // letter/questionnaire. Please be certain of what you're doing before adding to it.
+          );
+
   public static boolean isExpectedCapacityActionType(ActionType actionType) {
     return expectedCapacityActionTypes.contains(actionType);
   }
+
+  // "EQ launched but not submitted/completed" reminders don't have a UAC-QID pair for security
+  // because the respondent has already partially filled in their EQ.
+  public static boolean doesNotRequireUacQid(ActionType actionType) {
+    return doesNotRequireUacQidActionTypes.contains(actionType);
+  }
 }
@@ -1 +1,16 @@
-CREATE SCHEMA IF NOT EXISTS actionv2;
\ No newline at end of file
+CREATE SCHEMA IF NOT EXISTS actionv2;
+
+CREATE TABLE IF NOT EXISTS actionv2.action_worker_membership (
+  worker_id uuid PRIMARY KEY,
+  last_heartbeat timestamp with time zone NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS actionv2.message_outbox (
+  id bigserial PRIMARY KEY,
+  exchange varchar(255) NOT NULL,
+  routing_key varchar(255) NOT NULL,
+  content_type varchar(255),
+  content_encoding varchar(255),
+  headers text,
+  body bytea NOT NULL
+);
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -242,6 +243,35 @@ public class UacQidLinkBuilderTest {
     assertThat(uacQidTuple.getUacQidLinkWales()).isNotPresent();
   }
 
+  @Test
+  public void testPrefetchedUacQidLinksUsedWithoutQueryingPerCase() {
+    // Given
+    Case testCase = easyRandom.nextObject(Case.class);
+    testCase.setTreatmentCode("NotWelshTreatmentCode");
+    UUID caseWithoutLinks = UUID.randomUUID();
+    UacQidLink uacQidLink = new UacQidLink();
+    uacQidLink.setCaseId(testCase.getCaseId());
+    uacQidLink.setUac("test uac");
+    uacQidLink.setQid("0220000010732199");
+    when(uacQidLinkRepository.findByCaseIdIn(Set.of(testCase.getCaseId(), caseWithoutLinks)))
+        .thenReturn(List.of(uacQidLink));
+
+    // when
+    Map<UUID, List<UacQidLink>> uacQidLinks =
+        uacQidLinkBuilder.findUacQidLinks(Set.of(testCase.getCaseId(), caseWithoutLinks));
+    List<UacQidTuple> uacQidTuples = new ArrayList<>();
+    uacQidLinkBuilder.runWithUacQidLinks(
+        uacQidLinks,
+        () ->
+            uacQidTuples.add(
+                uacQidLinkBuilder.getUacQidLinks(testCase, ActionType.ICL1E, UUID.randomUUID())));
+
+    // then
+    assertThat(uacQidLinks.get(caseWithoutLinks)).isEmpty();
+    assertThat(uacQidTuples.get(0).getUacQidLink().getQid()).isEqualTo("0220000010732199");
+    verify(uacQidLinkRepository, never()).findByCaseId(any());
+  }
+
   @Test(expected = RuntimeException.class)
   public void testWalesQuestionnaireWithTwoQidUacsWrongEnglish() {
     // Given
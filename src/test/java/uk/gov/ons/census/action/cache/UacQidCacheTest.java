@@ -2,17 +2,25 @@ package uk.gov.ons.census.action.cache;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.jeasy.random.EasyRandom;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import uk.gov.ons.census.action.client.UacQidServiceClient;
 import uk.gov.ons.census.action.model.dto.UacQidDTO;
 
@@ -20,10 +28,26 @@ import uk.gov.ons.census.action.model.dto.UacQidDTO;
 public class UacQidCacheTest {
   private static final int CACHE_FETCH = 2;
   private static final int CACHE_MIN = 1;
+  private static final int MIN_FETCH = 20;
+  private static final int POOL_CAPACITY = 8192;
+  private static final int FETCH_THREADS = 4;
+  private static final int MIN_REQUEST_SIZE = 500;
 
   @Mock UacQidServiceClient uacQidServiceClient;
 
-  @InjectMocks UacQidCache underTest;
+  private UacQidCache underTest;
+
+  @Before
+  public void setUp() {
+    underTest = new UacQidCache(uacQidServiceClient, FETCH_THREADS);
+    ReflectionTestUtils.setField(underTest, "maxConcurrentFetches", 1);
+    ReflectionTestUtils.setField(underTest, "minRequestSize", MIN_REQUEST_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+    underTest.shutdown();
+  }
 
   @Test
   public void testToppingUpRecoversFromFailure() {
@@ -31,6 +55,7 @@ public class UacQidCacheTest {
     ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
     ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
     ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
 
     List<UacQidDTO> uacQids1 = populateUacQidList(1, CACHE_FETCH);
 
@@ -52,6 +77,280 @@ public class UacQidCacheTest {
     fail("Expected Exception");
   }
 
+  @Test
+  public void testAdaptiveFetchCountFollowsConsumptionRate() {
+    // given
+    setAdaptive(50000);
+
+    long now = System.nanoTime();
+    UacQidDemand uacQidDemand = new UacQidDemand(now);
+    uacQidDemand.recordTaken(500);
+    uacQidDemand.sample(now + TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(1));
+    uacQidDemand.recordFetch(TimeUnit.SECONDS.toNanos(1));
+    getUacQidDemandMap().put(1, uacQidDemand);
+
+    // 250 pairs a second (smoothed from 500 over the first second) for 10 seconds
+    List<UacQidDTO> uacQids = populateUacQidList(1, 2500);
+    when(uacQidServiceClient.getUacQids(1, 2500)).thenReturn(uacQids);
+
+    // when
+    UacQidDTO actualUacQidDTO = underTest.getUacQidPair(1);
+
+    // then
+    assertThat(actualUacQidDTO).isEqualTo(uacQids.get(0));
+  }
+
+  @Test
+  public void testAdaptiveFetchCountForUnusedTypeIsMinimum() {
+    // given
+    setAdaptive(50000);
+
+    List<UacQidDTO> uacQids = populateUacQidList(2, MIN_FETCH);
+    when(uacQidServiceClient.getUacQids(2, MIN_FETCH)).thenReturn(uacQids);
+
+    // when
+    UacQidDTO actualUacQidDTO = underTest.getUacQidPair(2);
+
+    // then
+    assertThat(actualUacQidDTO).isEqualTo(uacQids.get(0));
+  }
+
+  @Test
+  public void testAdaptiveFetchCountLimitedByMaxCached() {
+    // given
+    setAdaptive(100);
+
+    Map<Integer, UacQidPool> uacQidPoolMap =
+        (Map<Integer, UacQidPool>) ReflectionTestUtils.getField(underTest, "uacQidPoolMap");
+    UacQidPool otherUacQidPool = new UacQidPool(POOL_CAPACITY);
+    otherUacQidPool.addAll(populateUacQidList(3, 95));
+    uacQidPoolMap.put(3, otherUacQidPool);
+    List<UacQidDTO> queuedUacQids = populateUacQidList(1, 1);
+    UacQidPool uacQidPool = new UacQidPool(POOL_CAPACITY);
+    uacQidPool.addAll(queuedUacQids);
+    uacQidPoolMap.put(1, uacQidPool);
+    when(uacQidServiceClient.getUacQids(1, 4)).thenReturn(populateUacQidList(1, 4));
+
+    // when
+    UacQidDTO actualUacQidDTO = underTest.getUacQidPair(1);
+
+    // then
+    assertThat(actualUacQidDTO).isEqualTo(queuedUacQids.get(0));
+    verify(uacQidServiceClient, timeout(1000)).getUacQids(1, 4);
+  }
+
+  @Test
+  public void testPreWarmFetchesOnlyThePairsNotAlreadyQueued() {
+    // given
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+
+    Map<Integer, UacQidPool> uacQidPoolMap =
+        (Map<Integer, UacQidPool>) ReflectionTestUtils.getField(underTest, "uacQidPoolMap");
+    UacQidPool uacQidPool = new UacQidPool(POOL_CAPACITY);
+    uacQidPool.addAll(populateUacQidList(1, 30));
+    uacQidPoolMap.put(1, uacQidPool);
+    when(uacQidServiceClient.getUacQids(1, 70)).thenReturn(populateUacQidList(1, 70));
+
+    // when
+    int actualFetchCount = underTest.preWarm(1, 100);
+
+    // then
+    assertThat(actualFetchCount).isEqualTo(70);
+    verify(uacQidServiceClient, timeout(1000)).getUacQids(1, 70);
+    assertThat(underTest.preWarm(1, 30)).isZero();
+  }
+
+  @Test
+  public void testReserveTakesAllThePairsInOneFetch() {
+    // given
+    ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
+    ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+
+    List<UacQidDTO> uacQids = populateUacQidList(1, 50);
+    when(uacQidServiceClient.getUacQids(1, 50)).thenReturn(uacQids);
+
+    // when
+    List<UacQidDTO> actualUacQids = underTest.reserve(1, 50);
+
+    // then
+    assertThat(actualUacQids).isEqualTo(uacQids);
+    verify(uacQidServiceClient).getUacQids(1, 50);
+  }
+
+  @Test
+  public void testLargeShortfallSplitBetweenConcurrentFetches() {
+    // given
+    ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
+    ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+    ReflectionTestUtils.setField(underTest, "maxConcurrentFetches", 4);
+
+    when(uacQidServiceClient.getUacQids(21, MIN_REQUEST_SIZE))
+        .thenAnswer(invocation -> populateUacQidList(21, MIN_REQUEST_SIZE));
+
+    // when
+    List<UacQidDTO> actualUacQids = underTest.reserve(21, 2000);
+
+    // then
+    assertThat(actualUacQids).hasSize(2000).doesNotHaveDuplicates();
+    verify(uacQidServiceClient, times(4)).getUacQids(21, MIN_REQUEST_SIZE);
+  }
+
+  @Test
+  public void testChunkReservationHandsOutItsPairsAndReturnsUnusedOnCommit() {
+    // given
+    ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
+    ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+
+    List<UacQidDTO> uacQids1 = populateUacQidList(1, 3);
+    List<UacQidDTO> uacQids2 = populateUacQidList(2, 2);
+    when(uacQidServiceClient.getUacQids(1, 3)).thenReturn(uacQids1);
+    when(uacQidServiceClient.getUacQids(2, 2)).thenReturn(uacQids2);
+
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      // when
+      UacQidReservation uacQidReservation = underTest.reserve(Map.of(1, 3, 2, 2));
+      List<UacQidDTO> actualUacQids = new ArrayList<>();
+      underTest.runWithReservation(
+          uacQidReservation,
+          () -> {
+            actualUacQids.add(underTest.getUacQidPair(1));
+            actualUacQids.add(underTest.getUacQidPair(2));
+          });
+
+      // then
+      assertThat(actualUacQids).containsExactly(uacQids1.get(0), uacQids2.get(0));
+      assertThat(TransactionSynchronizationManager.getSynchronizations()).hasSize(1);
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .get(0)
+          .afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+      assertThat(getUacQidPool(1).size()).isEqualTo(2);
+      assertThat(getUacQidPool(2).size()).isEqualTo(1);
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void testChunkReservationReturnsAllItsPairsOnRollback() {
+    // given
+    ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
+    ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+
+    when(uacQidServiceClient.getUacQids(1, 3)).thenReturn(populateUacQidList(1, 3));
+
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      // when
+      UacQidReservation uacQidReservation = underTest.reserve(Map.of(1, 3));
+      underTest.runWithReservation(uacQidReservation, () -> underTest.getUacQidPair(1));
+      TransactionSynchronizationManager.getSynchronizations()
+          .get(0)
+          .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+      // then
+      assertThat(getUacQidPool(1).size()).isEqualTo(3);
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void testPairIsNotReusedAfterRollbackWhenPublishedBeforeCommit() {
+    // given
+    ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
+    ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+    ReflectionTestUtils.setField(underTest, "publisherConfirmType", "correlated");
+
+    when(uacQidServiceClient.getUacQids(1, CACHE_FETCH))
+        .thenReturn(populateUacQidList(1, CACHE_FETCH), populateUacQidList(1, CACHE_FETCH));
+
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    UacQidDTO publishedUacQidDTO;
+    try {
+      // when
+      publishedUacQidDTO = underTest.getUacQidPair(1);
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    // then
+    assertThat(underTest.getUacQidPair(1)).isNotEqualTo(publishedUacQidDTO);
+    assertThat(underTest.getUacQidPair(1)).isNotEqualTo(publishedUacQidDTO);
+  }
+
+  @Test
+  public void testChunkReservationReturnsOnlyUnusedPairsOnRollbackWhenPublishedBeforeCommit() {
+    // given
+    ReflectionTestUtils.setField(underTest, "cacheFetch", CACHE_FETCH);
+    ReflectionTestUtils.setField(underTest, "cacheMin", CACHE_MIN);
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+    ReflectionTestUtils.setField(underTest, "publisherConfirmType", "correlated");
+
+    List<UacQidDTO> uacQids = populateUacQidList(1, 3);
+    when(uacQidServiceClient.getUacQids(1, 3)).thenReturn(uacQids);
+
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      // when
+      UacQidReservation uacQidReservation = underTest.reserve(Map.of(1, 3));
+      underTest.runWithReservation(uacQidReservation, () -> underTest.getUacQidPair(1));
+      TransactionSynchronizationManager.getSynchronizations()
+          .get(0)
+          .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+      // then
+      UacQidPool uacQidPool = getUacQidPool(1);
+      assertThat(uacQidPool.size()).isEqualTo(2);
+      assertThat(List.of(uacQidPool.poll(), uacQidPool.poll()))
+          .containsExactlyInAnyOrder(uacQids.get(1), uacQids.get(2));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  private UacQidPool getUacQidPool(int questionnaireType) {
+    return ((Map<Integer, UacQidPool>) ReflectionTestUtils.getField(underTest, "uacQidPoolMap"))
+        .get(questionnaireType);
+  }
+
+  private void setAdaptive(int maxCached) {
+    ReflectionTestUtils.setField(underTest, "uacQidGetTimout", 2);
+    ReflectionTestUtils.setField(underTest, "poolCapacity", POOL_CAPACITY);
+    ReflectionTestUtils.setField(underTest, "adaptive", true);
+    ReflectionTestUtils.setField(underTest, "minWatermark", 10);
+    ReflectionTestUtils.setField(underTest, "minFetch", MIN_FETCH);
+    ReflectionTestUtils.setField(underTest, "maxFetch", 10000);
+    ReflectionTestUtils.setField(underTest, "targetSupplySeconds", 10.0);
+    ReflectionTestUtils.setField(underTest, "maxCached", maxCached);
+  }
+
+  private Map<Integer, UacQidDemand> getUacQidDemandMap() {
+    return (Map<Integer, UacQidDemand>) ReflectionTestUtils.getField(underTest, "uacQidDemandMap");
+  }
+
   private List<UacQidDTO> populateUacQidList(int questionnaireType, int cacheSize) {
     EasyRandom easyRandom = new EasyRandom();
     List<UacQidDTO> uacQidDTOS = new ArrayList<>();
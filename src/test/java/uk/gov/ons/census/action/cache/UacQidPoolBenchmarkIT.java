@@ -0,0 +1,128 @@
+package uk.gov.ons.census.action.cache;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import uk.gov.ons.census.action.model.dto.UacQidDTO;
+
+/**
+ * Compares the throughput of the LinkedBlockingDeque the cache used to hold its pairs in with the
+ * UacQidPool, as more worker threads take pairs from one questionnaire type at once. Each worker
+ * takes a pair and puts one back, like a worker whose transaction rolls back, so the pool never
+ * runs dry and only the contention is measured.
+ *
+ * <p>Each figure is the median of several rounds. The comparison only means something on a
+ * machine with at least as many cores as the largest worker count: with fewer, the extra workers
+ * just take turns on the same cores, and the figures measure the scheduler rather than contention.
+ *
+ * <p>This only produces figures in the log, so it's skipped unless run with -Dbenchmark=true.
+ */
+public class UacQidPoolBenchmarkIT {
+  private static final Logger log = LoggerFactory.getLogger(UacQidPoolBenchmarkIT.class);
+  private static final int[] WORKER_COUNTS = {1, 2, 4, 8, 16};
+  private static final int POOL_SIZE = 10000;
+  private static final int WARM_UP_TAKES = 200000;
+  private static final int MEASURED_TAKES = 10000000;
+  private static final int ROUNDS = 5;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+  }
+
+  @Test
+  public void benchmarkUacQidPools() throws Exception {
+    for (int workers : WORKER_COUNTS) {
+      BlockingQueue<UacQidDTO> deque = new LinkedBlockingDeque<>(buildUacQids());
+      UacQidPool uacQidPool = new UacQidPool(POOL_SIZE * 2);
+      uacQidPool.addAll(buildUacQids());
+
+      Pool dequePool =
+          () -> {
+            UacQidDTO uacQid = deque.poll(1, TimeUnit.SECONDS);
+            deque.add(uacQid);
+          };
+      Pool ringPool =
+          () -> {
+            UacQidDTO uacQid = uacQidPool.take(TimeUnit.SECONDS.toNanos(1));
+            uacQidPool.add(uacQid);
+          };
+
+      run(dequePool, workers, WARM_UP_TAKES);
+      run(ringPool, workers, WARM_UP_TAKES);
+
+      long[] dequeTakesPerSecond = new long[ROUNDS];
+      long[] poolTakesPerSecond = new long[ROUNDS];
+      for (int round = 0; round < ROUNDS; round++) {
+        dequeTakesPerSecond[round] = run(dequePool, workers, MEASURED_TAKES);
+        poolTakesPerSecond[round] = run(ringPool, workers, MEASURED_TAKES);
+      }
+
+      log.with("workers", workers)
+          .with("availableProcessors", Runtime.getRuntime().availableProcessors())
+          .with("dequeTakesPerSecond", median(dequeTakesPerSecond))
+          .with("poolTakesPerSecond", median(poolTakesPerSecond))
+          .info("UAC QID pool benchmark");
+    }
+  }
+
+  private long run(Pool pool, int workers, int takes) throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(workers);
+    CyclicBarrier barrier = new CyclicBarrier(workers + 1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      futures.add(
+          executorService.submit(
+              () -> {
+                barrier.await();
+                for (int j = 0; j < takes / workers; j++) {
+                  pool.takeAndReturn();
+                }
+                return null;
+              }));
+    }
+
+    barrier.await();
+    long startTime = System.nanoTime();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    long elapsedNanos = System.nanoTime() - startTime;
+    executorService.shutdown();
+
+    return takes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  private long median(long[] values) {
+    long[] sortedValues = values.clone();
+    Arrays.sort(sortedValues);
+    return sortedValues[sortedValues.length / 2];
+  }
+
+  private List<UacQidDTO> buildUacQids() {
+    List<UacQidDTO> uacQids = new ArrayList<>();
+    for (int i = 0; i < POOL_SIZE; i++) {
+      UacQidDTO uacQidDTO = new UacQidDTO();
+      uacQidDTO.setUac("uac" + i);
+      uacQidDTO.setQid(Integer.toString(i));
+      uacQids.add(uacQidDTO);
+    }
+    return uacQids;
+  }
+
+  private interface Pool {
+    void takeAndReturn() throws InterruptedException;
+  }
+}
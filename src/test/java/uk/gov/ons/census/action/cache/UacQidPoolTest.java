@@ -0,0 +1,160 @@
+package uk.gov.ons.census.action.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import uk.gov.ons.census.action.model.dto.UacQidDTO;
+
+public class UacQidPoolTest {
+  private final AtomicInteger nextQid = new AtomicInteger();
+
+  @Test
+  public void testCapacityRoundedUpToPowerOfTwo() {
+    assertThat(new UacQidPool(1000).capacity()).isEqualTo(1024);
+    assertThat(new UacQidPool(1024).capacity()).isEqualTo(1024);
+  }
+
+  @Test
+  public void testPairsTakenInOrderAcrossLapsOfTheRing() {
+    // Given
+    UacQidPool underTest = new UacQidPool(4);
+    List<UacQidDTO> uacQids = buildUacQids(10);
+
+    // When
+    List<UacQidDTO> actualUacQids = new ArrayList<>();
+    for (UacQidDTO uacQid : uacQids) {
+      underTest.add(uacQid);
+      actualUacQids.add(underTest.poll());
+    }
+
+    // Then
+    assertThat(actualUacQids).isEqualTo(uacQids);
+    assertThat(underTest.poll()).isNull();
+    assertThat(underTest.size()).isZero();
+  }
+
+  @Test
+  public void testPairsBeyondCapacityAreNotLost() {
+    // Given
+    UacQidPool underTest = new UacQidPool(4);
+    List<UacQidDTO> uacQids = buildUacQids(6);
+
+    // When
+    underTest.addAll(uacQids);
+
+    // Then
+    assertThat(underTest.size()).isEqualTo(6);
+    List<UacQidDTO> actualUacQids = new ArrayList<>();
+    UacQidDTO uacQid;
+    while ((uacQid = underTest.poll()) != null) {
+      actualUacQids.add(uacQid);
+    }
+    assertThat(actualUacQids).containsExactlyInAnyOrderElementsOf(uacQids);
+  }
+
+  @Test
+  public void testConcurrentFetchesLimited() {
+    // Given
+    UacQidPool underTest = new UacQidPool(4);
+
+    // When
+    boolean firstStarted = underTest.tryStartFetch(100, 2);
+    boolean secondStarted = underTest.tryStartFetch(50, 2);
+    boolean thirdStarted = underTest.tryStartFetch(25, 2);
+
+    // Then
+    assertThat(firstStarted).isTrue();
+    assertThat(secondStarted).isTrue();
+    assertThat(thirdStarted).isFalse();
+    assertThat(underTest.pairsBeingFetched()).isEqualTo(150);
+    assertThat(underTest.freeFetches(2)).isZero();
+
+    underTest.finishFetch(100);
+    assertThat(underTest.pairsBeingFetched()).isEqualTo(50);
+    assertThat(underTest.freeFetches(2)).isEqualTo(1);
+  }
+
+  @Test
+  public void testTakeTimesOutWhenEmpty() throws InterruptedException {
+    assertThat(new UacQidPool(4).take(TimeUnit.MILLISECONDS.toNanos(10))).isNull();
+  }
+
+  @Test
+  public void testWaitingTakeWokenByTopUp() throws Exception {
+    // Given
+    UacQidPool underTest = new UacQidPool(4);
+    UacQidDTO uacQid = buildUacQids(1).get(0);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    CountDownLatch started = new CountDownLatch(1);
+
+    // When
+    Future<UacQidDTO> taken =
+        executorService.submit(
+            () -> {
+              started.countDown();
+              return underTest.take(TimeUnit.SECONDS.toNanos(10));
+            });
+    started.await();
+    underTest.addAll(List.of(uacQid));
+
+    // Then
+    assertThat(taken.get(5, TimeUnit.SECONDS)).isEqualTo(uacQid);
+    executorService.shutdown();
+  }
+
+  @Test
+  public void testConcurrentAddAndTakeNeverDuplicatesOrLosesPairs() throws Exception {
+    // Given
+    UacQidPool underTest = new UacQidPool(64);
+    int threads = 8;
+    int pairsPerThread = 20000;
+    Set<UacQidDTO> takenUacQids = ConcurrentHashMap.newKeySet();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads * 2);
+    List<Future<?>> futures = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < threads; i++) {
+      List<UacQidDTO> uacQids = buildUacQids(pairsPerThread);
+      futures.add(executorService.submit(() -> uacQids.forEach(underTest::add)));
+      futures.add(
+          executorService.submit(
+              () -> {
+                for (int j = 0; j < pairsPerThread; j++) {
+                  UacQidDTO uacQid = underTest.take(TimeUnit.SECONDS.toNanos(10));
+                  assertThat(takenUacQids.add(uacQid)).isTrue();
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+
+    // Then
+    assertThat(takenUacQids).hasSize(threads * pairsPerThread);
+    assertThat(underTest.size()).isZero();
+    executorService.shutdown();
+  }
+
+  private List<UacQidDTO> buildUacQids(int count) {
+    List<UacQidDTO> uacQids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int qid = nextQid.incrementAndGet();
+      UacQidDTO uacQidDTO = new UacQidDTO();
+      uacQidDTO.setUac("uac" + qid);
+      uacQidDTO.setQid(Integer.toString(qid));
+      uacQids.add(uacQidDTO);
+    }
+    return uacQids;
+  }
+}
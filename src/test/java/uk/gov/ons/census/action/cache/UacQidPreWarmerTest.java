@@ -0,0 +1,141 @@
+package uk.gov.ons.census.action.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Test;
+import uk.gov.ons.census.action.model.CaseTypeCount;
+import uk.gov.ons.census.action.model.entity.ActionPlan;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.ActionType;
+import uk.gov.ons.census.action.model.repository.ActionRuleRepository;
+import uk.gov.ons.census.action.model.repository.UacQidForecastRepository;
+
+public class UacQidPreWarmerTest {
+  private static final long LOOK_AHEAD = 3600000;
+  private static final int MAX_PAIRS = 1000;
+
+  private final ActionRuleRepository actionRuleRepository = mock(ActionRuleRepository.class);
+  private final UacQidForecastRepository uacQidForecastRepository =
+      mock(UacQidForecastRepository.class);
+  private final UacQidCache uacQidCache = mock(UacQidCache.class);
+
+  @Test
+  public void testPreWarmsForUpcomingActionRulesAndPendingFulfilments() {
+    // Given
+    UacQidPreWarmer underTest = buildPreWarmer(true);
+    ActionRule welshQuestionnaires = buildActionRule(ActionType.P_QU_H2);
+    ActionRule expectedCapacity = buildActionRule(ActionType.CE_IC03);
+    when(actionRuleRepository.findByHasTriggeredFalseAndTriggerDateTimeBefore(any()))
+        .thenReturn(List.of(welshQuestionnaires, expectedCapacity));
+    when(uacQidForecastRepository.countCasesForActionRule(welshQuestionnaires))
+        .thenReturn(List.of(new CaseTypeCount("HH", "W", "U", 100, 0)));
+    when(uacQidForecastRepository.countCasesForActionRule(expectedCapacity))
+        .thenReturn(List.of(new CaseTypeCount("CE", "E", "E", 10, 200)));
+    when(uacQidForecastRepository.countFulfilmentsByCode())
+        .thenReturn(Map.of("P_OR_H1", 5, "P_OR_H2", 20, "NOT_A_UAC_PACK", 50));
+
+    // When
+    underTest.preWarm();
+
+    // Then
+    verify(uacQidCache).preWarm(1, 5);
+    verify(uacQidCache).preWarm(2, 120);
+    verify(uacQidCache).preWarm(3, 100);
+    verify(uacQidCache).preWarm(21, 200);
+    verifyNoMoreInteractions(uacQidCache);
+  }
+
+  @Test
+  public void testInitialContactNeedsNoNewPairs() {
+    // Given
+    UacQidPreWarmer underTest = buildPreWarmer(true);
+    ActionRule initialContact = buildActionRule(ActionType.ICL1E);
+    when(actionRuleRepository.findByHasTriggeredFalseAndTriggerDateTimeBefore(any()))
+        .thenReturn(List.of(initialContact));
+    when(uacQidForecastRepository.countCasesForActionRule(initialContact))
+        .thenReturn(List.of(new CaseTypeCount("HH", "E", "U", 100, 0)));
+
+    // When
+    underTest.preWarm();
+
+    // Then
+    verifyZeroInteractions(uacQidCache);
+  }
+
+  @Test
+  public void testRemindersWithoutUacsNeedNoNewPairs() {
+    // Given
+    UacQidPreWarmer underTest = buildPreWarmer(true);
+    ActionRule reminder = buildActionRule(ActionType.P_RL_1RL1A);
+    when(actionRuleRepository.findByHasTriggeredFalseAndTriggerDateTimeBefore(any()))
+        .thenReturn(List.of(reminder));
+    when(uacQidForecastRepository.countCasesForActionRule(reminder))
+        .thenReturn(List.of(new CaseTypeCount("HH", "E", "U", 100, 0)));
+
+    // When
+    underTest.preWarm();
+
+    // Then
+    verifyZeroInteractions(uacQidCache);
+  }
+
+  @Test
+  public void testActionRuleCountedOnceAndPairsLimited() {
+    // Given
+    UacQidPreWarmer underTest = buildPreWarmer(true);
+    ActionRule reminder = buildActionRule(ActionType.P_RL_1RL1_1);
+    when(actionRuleRepository.findByHasTriggeredFalseAndTriggerDateTimeBefore(any()))
+        .thenReturn(List.of(reminder));
+    when(uacQidForecastRepository.countCasesForActionRule(reminder))
+        .thenReturn(List.of(new CaseTypeCount("HH", "E", "U", 5000, 0)));
+
+    // When
+    underTest.preWarm();
+    underTest.preWarm();
+
+    // Then
+    verify(uacQidForecastRepository).countCasesForActionRule(reminder);
+    verify(uacQidCache, times(2)).preWarm(1, MAX_PAIRS);
+  }
+
+  @Test
+  public void testNothingPreWarmedWhenDisabled() {
+    // Given
+    UacQidPreWarmer underTest = buildPreWarmer(false);
+
+    // When
+    underTest.preWarm();
+
+    // Then
+    verifyZeroInteractions(actionRuleRepository, uacQidForecastRepository, uacQidCache);
+  }
+
+  private UacQidPreWarmer buildPreWarmer(boolean enabled) {
+    return new UacQidPreWarmer(
+        actionRuleRepository,
+        uacQidForecastRepository,
+        uacQidCache,
+        enabled,
+        LOOK_AHEAD,
+        MAX_PAIRS);
+  }
+
+  private ActionRule buildActionRule(ActionType actionType) {
+    ActionPlan actionPlan = new ActionPlan();
+    actionPlan.setId(UUID.randomUUID());
+    ActionRule actionRule = new ActionRule();
+    actionRule.setId(UUID.randomUUID());
+    actionRule.setActionType(actionType);
+    actionRule.setActionPlan(actionPlan);
+    return actionRule;
+  }
+}
@@ -0,0 +1,84 @@
+package uk.gov.ons.census.action.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import uk.gov.ons.census.action.messaging.CapturingRabbitTemplate;
+import uk.gov.ons.census.action.messaging.MessageCompressor;
+import uk.gov.ons.census.action.messaging.MessageOutbox;
+import uk.gov.ons.census.action.messaging.PublisherConnections;
+
+public class AppConfigTest {
+  private final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+
+  @Test
+  public void testTransactedChannelsWithoutPublisherConfirms() {
+    // Given
+    RabbitProperties rabbitProperties = new RabbitProperties();
+    rabbitProperties.setPublisherConfirmType(ConfirmType.NONE);
+
+    // When
+    CapturingRabbitTemplate actualTemplate = buildRabbitTemplate(rabbitProperties);
+
+    // Then
+    assertThat(actualTemplate.isChannelTransacted()).isTrue();
+  }
+
+  @Test
+  public void testPublisherConfirmsInsteadOfTransactedChannels() {
+    // Given
+    RabbitProperties rabbitProperties = new RabbitProperties();
+    rabbitProperties.setPublisherConfirmType(ConfirmType.CORRELATED);
+    when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+
+    // When
+    CapturingRabbitTemplate actualTemplate = buildRabbitTemplate(rabbitProperties);
+
+    // Then
+    assertThat(actualTemplate.isChannelTransacted()).isFalse();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFailsWhenPublisherConfirmsCannotBeEnabled() {
+    // Given
+    RabbitProperties rabbitProperties = new RabbitProperties();
+    rabbitProperties.setPublisherConfirmType(ConfirmType.CORRELATED);
+    when(connectionFactory.isPublisherConfirms()).thenReturn(false);
+
+    // When
+    buildRabbitTemplate(rabbitProperties);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFailsForSimplePublisherConfirms() {
+    // Given
+    RabbitProperties rabbitProperties = new RabbitProperties();
+    rabbitProperties.setPublisherConfirmType(ConfirmType.SIMPLE);
+
+    // When
+    buildRabbitTemplate(rabbitProperties);
+  }
+
+  private CapturingRabbitTemplate buildRabbitTemplate(RabbitProperties rabbitProperties) {
+    AppConfig underTest = new AppConfig();
+    return underTest.rabbitTemplate(
+        connectionFactory,
+        rabbitProperties,
+        underTest.messageConverter(),
+        mock(MessageCompressor.class),
+        mock(PublisherConnections.class),
+        mock(MessageOutbox.class),
+        30000,
+        false,
+        100,
+        65536,
+        1000,
+        false,
+        new String[0]);
+  }
+}
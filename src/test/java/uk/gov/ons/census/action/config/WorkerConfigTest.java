@@ -0,0 +1,116 @@
+package uk.gov.ons.census.action.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.ons.census.action.poller.ChunkPoller;
+import uk.gov.ons.census.action.poller.PriorityLaneScheduler;
+
+public class WorkerConfigTest {
+
+  @Test
+  public void testOneScheduledTaskPerWorker() {
+    // Given
+    WorkerConfig underTest =
+        new WorkerConfig(mock(ChunkPoller.class), mock(PriorityLaneScheduler.class));
+    ReflectionTestUtils.setField(underTest, "frequency", 1000L);
+    ReflectionTestUtils.setField(underTest, "caseWorkers", 3);
+    ReflectionTestUtils.setField(underTest, "fulfilmentWorkers", 2);
+    ReflectionTestUtils.setField(underTest, "schedulingPoolSize", 1);
+    ScheduledTaskRegistrar taskRegistrar = new ScheduledTaskRegistrar();
+
+    // When
+    underTest.configureTasks(taskRegistrar);
+
+    // Then
+    assertThat(taskRegistrar.getFixedDelayTaskList()).hasSize(5);
+    assertThat(underTest.taskScheduler().getPoolSize()).isEqualTo(6);
+  }
+
+  @Test
+  public void testOneScheduledTaskPerLaneWorker() {
+    // Given
+    WorkerConfig underTest =
+        new WorkerConfig(mock(ChunkPoller.class), mock(PriorityLaneScheduler.class));
+    ReflectionTestUtils.setField(underTest, "frequency", 1000L);
+    ReflectionTestUtils.setField(underTest, "caseWorkers", 3);
+    ReflectionTestUtils.setField(underTest, "fulfilmentWorkers", 2);
+    ReflectionTestUtils.setField(underTest, "lanesEnabled", true);
+    ReflectionTestUtils.setField(underTest, "laneWorkers", 4);
+    ReflectionTestUtils.setField(underTest, "schedulingPoolSize", 1);
+    ScheduledTaskRegistrar taskRegistrar = new ScheduledTaskRegistrar();
+
+    // When
+    underTest.configureTasks(taskRegistrar);
+
+    // Then
+    assertThat(taskRegistrar.getFixedDelayTaskList()).hasSize(4);
+    assertThat(underTest.taskScheduler().getPoolSize()).isEqualTo(5);
+  }
+
+  @Test
+  public void testConnectionPoolsAreGrownToFitLaneWorkers() {
+    // Given
+    BeanPostProcessor underTest = WorkerConfig.workerResourceSizer(1, 1, true, 12, false, 8);
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setMaximumPoolSize(10);
+
+    // When
+    underTest.postProcessAfterInitialization(dataSource, "dataSource");
+
+    // Then
+    assertThat(dataSource.getMaximumPoolSize()).isEqualTo(14);
+  }
+
+  @Test
+  public void testConnectionPoolsAreGrownToFitWorkers() {
+    // Given
+    BeanPostProcessor underTest = WorkerConfig.workerResourceSizer(10, 4, false, 0, false, 8);
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setMaximumPoolSize(10);
+    CachingConnectionFactory connectionFactory = new CachingConnectionFactory();
+    connectionFactory.setChannelCacheSize(5);
+
+    // When
+    underTest.postProcessAfterInitialization(dataSource, "dataSource");
+    underTest.postProcessAfterInitialization(connectionFactory, "connectionFactory");
+
+    // Then
+    assertThat(dataSource.getMaximumPoolSize()).isEqualTo(16);
+    assertThat(connectionFactory.getChannelCacheSize()).isEqualTo(16);
+  }
+
+  @Test
+  public void testConnectionPoolsAreGrownToFitPipelineBuildThreads() {
+    // Given
+    BeanPostProcessor underTest = WorkerConfig.workerResourceSizer(4, 2, false, 0, true, 8);
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setMaximumPoolSize(10);
+
+    // When
+    underTest.postProcessAfterInitialization(dataSource, "dataSource");
+
+    // Then
+    assertThat(dataSource.getMaximumPoolSize()).isEqualTo(16);
+  }
+
+  @Test
+  public void testBigEnoughConnectionPoolsAreLeftAlone() {
+    // Given
+    BeanPostProcessor underTest = WorkerConfig.workerResourceSizer(1, 1, false, 0, false, 8);
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setMaximumPoolSize(10);
+
+    // When
+    underTest.postProcessAfterInitialization(dataSource, "dataSource");
+
+    // Then
+    assertThat(dataSource.getMaximumPoolSize()).isEqualTo(10);
+  }
+}
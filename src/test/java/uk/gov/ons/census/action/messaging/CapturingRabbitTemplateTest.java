@@ -0,0 +1,88 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+
+public class CapturingRabbitTemplateTest {
+
+  @Test
+  public void testCapturedMessagesAreNotSent() {
+    // Given
+    ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+    CapturingRabbitTemplate underTest = new CapturingRabbitTemplate(connectionFactory);
+
+    // When
+    List<CapturedMessage> actualMessages =
+        underTest.capture(() -> underTest.convertAndSend("exchange", "key", "payload"));
+
+    // Then
+    assertThat(actualMessages).hasSize(1);
+    assertThat(actualMessages.get(0).getExchange()).isEqualTo("exchange");
+    assertThat(actualMessages.get(0).getRoutingKey()).isEqualTo("key");
+    assertThat(new String(actualMessages.get(0).getMessage().getBody())).isEqualTo("payload");
+    verify(connectionFactory, never()).createConnection();
+  }
+
+  @Test
+  public void testPublishesOnDedicatedConnection() {
+    // Given
+    ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+    CapturingRabbitTemplate underTest = new CapturingRabbitTemplate(connectionFactory);
+    PublisherConnections publisherConnections = mock(PublisherConnections.class);
+    RabbitTemplate publisherTemplate = mock(RabbitTemplate.class);
+    when(publisherConnections.getTemplate("exchange")).thenReturn(publisherTemplate);
+    underTest.setPublisherConnections(publisherConnections);
+
+    // When
+    underTest.convertAndSend("exchange", "key", "payload");
+
+    // Then
+    verify(publisherTemplate).send(eq("exchange"), eq("key"), any(Message.class), isNull());
+    verify(connectionFactory, never()).createConnection();
+  }
+
+  @Test
+  public void testConvertsToExchangeContentType() {
+    // Given
+    ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+    CapturingRabbitTemplate underTest = new CapturingRabbitTemplate(connectionFactory);
+    OutboundMessageConverter messageConverter = new OutboundMessageConverter(new ObjectMapper());
+    messageConverter.registerCodec(new CompactEventCodec());
+    underTest.setMessageConverter(messageConverter);
+    underTest.setExchangeContentType("compact-exchange", CompactEventCodec.CONTENT_TYPE);
+    ResponseManagementEvent event =
+        new CaseSelectedBuilder().buildFieldCasesSelectedMessage(UUID.randomUUID(), new long[0]);
+    event.getEvent().setDateTime(null);
+
+    // When
+    List<CapturedMessage> actualMessages =
+        underTest.capture(
+            () -> {
+              underTest.convertAndSend("compact-exchange", "key", event);
+              underTest.convertAndSend("exchange", "key", event);
+            });
+
+    // Then
+    assertThat(actualMessages.get(0).getMessage().getMessageProperties().getContentType())
+        .isEqualTo(CompactEventCodec.CONTENT_TYPE);
+    assertThat(actualMessages.get(1).getMessage().getMessageProperties().getContentType())
+        .isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+  }
+}
@@ -0,0 +1,144 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import org.junit.Test;
+import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
+import uk.gov.ons.census.action.model.dto.Event;
+import uk.gov.ons.census.action.model.dto.EventType;
+import uk.gov.ons.census.action.model.dto.Payload;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+import uk.gov.ons.census.action.model.dto.UacQidCreated;
+
+public class CompactEventCodecTest {
+  private final CompactEventCodec underTest = new CompactEventCodec();
+  private final CaseSelectedBuilder caseSelectedBuilder = new CaseSelectedBuilder();
+
+  @Test
+  public void testUacQidCreatedRoundTrip() throws IOException {
+    assertRoundTrip(buildUacQidCreatedEvent());
+  }
+
+  @Test
+  public void testPrintCaseSelectedRoundTrip() throws IOException {
+    assertRoundTrip(
+        caseSelectedBuilder.buildPrintMessage(
+            UUID.randomUUID(), 1234567890L, "P_IC_ICL1", UUID.randomUUID()));
+  }
+
+  @Test
+  public void testFieldCaseSelectedRoundTrip() throws IOException {
+    assertRoundTrip(caseSelectedBuilder.buildFieldMessage("1234567890", UUID.randomUUID()));
+  }
+
+  @Test
+  public void testCasesSelectedRoundTrip() throws IOException {
+    assertRoundTrip(
+        caseSelectedBuilder.buildPrintCasesSelectedMessage(
+            UUID.randomUUID(), "P_IC_ICL1", UUID.randomUUID(), new long[] {1, 300, 1234567890L}));
+    assertRoundTrip(
+        caseSelectedBuilder.buildFieldCasesSelectedMessage(UUID.randomUUID(), new long[0]));
+  }
+
+  @Test
+  public void testNullsRoundTrip() throws IOException {
+    // Given
+    ResponseManagementEvent event = buildUacQidCreatedEvent();
+    event.getEvent().setDateTime(null);
+    event.getEvent().setSource(null);
+    event.getPayload().getUacQidCreated().setBatchId(null);
+
+    // Then
+    assertRoundTrip(event);
+  }
+
+  @Test
+  public void testOnlyEncodesSupportedEvents() {
+    ResponseManagementEvent caseCreated = buildUacQidCreatedEvent();
+    caseCreated.getEvent().setType(EventType.CASE_CREATED);
+
+    ResponseManagementEvent missingPayload = buildUacQidCreatedEvent();
+    missingPayload.getPayload().setUacQidCreated(null);
+
+    assertThat(underTest.canEncode(buildUacQidCreatedEvent())).isTrue();
+    assertThat(underTest.canEncode(caseCreated)).isFalse();
+    assertThat(underTest.canEncode(missingPayload)).isFalse();
+    assertThat(underTest.canEncode("not an event")).isFalse();
+  }
+
+  @Test
+  public void testSmallerThanJson() throws IOException {
+    // Given
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new JavaTimeModule());
+    objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    ResponseManagementEvent event = buildUacQidCreatedEvent();
+
+    // When
+    byte[] compact = encode(event);
+
+    // Then
+    assertThat(compact.length).isLessThan(objectMapper.writeValueAsBytes(event).length / 2);
+  }
+
+  @Test
+  public void testUnknownSchemaVersionRejected() throws IOException {
+    // Given
+    byte[] body = encode(buildUacQidCreatedEvent());
+    body[0] = 2;
+
+    // Then
+    assertThatThrownBy(() -> underTest.decode(body))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("schema version 2");
+  }
+
+  private void assertRoundTrip(ResponseManagementEvent event) throws IOException {
+    // Given
+    assertThat(underTest.canEncode(event)).isTrue();
+
+    // When
+    ResponseManagementEvent actualEvent = underTest.decode(encode(event));
+
+    // Then
+    assertThat(actualEvent).isEqualTo(event);
+  }
+
+  private byte[] encode(ResponseManagementEvent event) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    underTest.encode(event, outputStream);
+    return outputStream.toByteArray();
+  }
+
+  private ResponseManagementEvent buildUacQidCreatedEvent() {
+    Event event = new Event();
+    event.setType(EventType.RM_UAC_CREATED);
+    event.setSource("ACTION_WORKER");
+    event.setChannel("RM");
+    event.setDateTime(OffsetDateTime.now(ZoneOffset.ofHours(1)));
+    event.setTransactionId(UUID.randomUUID().toString());
+
+    UacQidCreated uacQidCreated = new UacQidCreated();
+    uacQidCreated.setUac("abcd1234efgh5678");
+    uacQidCreated.setQid("0120000000000123");
+    uacQidCreated.setCaseId(UUID.randomUUID());
+    uacQidCreated.setBatchId(UUID.randomUUID());
+
+    Payload payload = new Payload();
+    payload.setUacQidCreated(uacQidCreated);
+
+    ResponseManagementEvent responseManagementEvent = new ResponseManagementEvent();
+    responseManagementEvent.setEvent(event);
+    responseManagementEvent.setPayload(payload);
+    return responseManagementEvent;
+  }
+}
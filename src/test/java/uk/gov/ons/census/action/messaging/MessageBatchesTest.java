@@ -0,0 +1,109 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+
+public class MessageBatchesTest {
+  private final List<CapturedMessage> publishedMessages = new ArrayList<>();
+
+  @Test
+  public void testFullBatchesArePublishedPerRoutingKey() {
+    // Given
+    MessageBatches underTest = new MessageBatches(new Object(), 3, 65536, 60000, this::publish);
+
+    // When
+    for (int i = 0; i < 4; i++) {
+      underTest.add("exchange", "printer", buildMessage("printer " + i));
+      underTest.add("exchange", "field", buildMessage("field " + i));
+    }
+
+    // Then
+    assertThat(publishedMessages).hasSize(2);
+    assertThat(publishedMessages.get(0).getRoutingKey()).isEqualTo("printer");
+    assertThat(debatch(publishedMessages.get(0).getMessage()))
+        .containsExactly("printer 0", "printer 1", "printer 2");
+    assertThat(publishedMessages.get(1).getRoutingKey()).isEqualTo("field");
+    assertThat(debatch(publishedMessages.get(1).getMessage()))
+        .containsExactly("field 0", "field 1", "field 2");
+  }
+
+  @Test
+  public void testPartBatchesArePublishedBeforeCommit() {
+    // Given
+    MessageBatches underTest = new MessageBatches(new Object(), 3, 65536, 60000, this::publish);
+    underTest.add("exchange", "printer", buildMessage("printer 0"));
+    underTest.add("exchange", "printer", buildMessage("printer 1"));
+    underTest.add("exchange", "field", buildMessage("field 0"));
+
+    // When
+    underTest.beforeCommit(false);
+
+    // Then
+    assertThat(publishedMessages).hasSize(2);
+    assertThat(debatch(publishedMessages.get(0).getMessage()))
+        .containsExactly("printer 0", "printer 1");
+    assertThat(new String(publishedMessages.get(1).getMessage().getBody())).isEqualTo("field 0");
+  }
+
+  @Test
+  public void testBatchesArePublishedOnceTimedOut() {
+    // Given
+    MessageBatches underTest = new MessageBatches(new Object(), 100, 65536, 0, this::publish);
+
+    // When
+    underTest.add("exchange", "printer", buildMessage("printer 0"));
+    underTest.add("exchange", "printer", buildMessage("printer 1"));
+
+    // Then
+    assertThat(publishedMessages).hasSize(2);
+  }
+
+  @Test
+  public void testBatchesAreCappedByBufferLimit() {
+    // Given
+    MessageBatches underTest = new MessageBatches(new Object(), 100, 30, 60000, this::publish);
+
+    // When
+    underTest.add("exchange", "printer", buildMessage("0123456789"));
+    underTest.add("exchange", "printer", buildMessage("abcdefghij"));
+    underTest.add("exchange", "printer", buildMessage("ABCDEFGHIJ"));
+
+    // Then
+    assertThat(publishedMessages).hasSize(1);
+    assertThat(debatch(publishedMessages.get(0).getMessage()))
+        .containsExactly("0123456789", "abcdefghij");
+  }
+
+  private void publish(CapturedMessage capturedMessage) {
+    publishedMessages.add(capturedMessage);
+  }
+
+  private Message buildMessage(String body) {
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    return new Message(body.getBytes(), messageProperties);
+  }
+
+  // Unpacks a batch the way a consumer would, following the contract in the README
+  private List<String> debatch(Message batch) {
+    assertThat(new SimpleBatchingStrategy(0, 0, 0).canDebatch(batch.getMessageProperties()))
+        .isTrue();
+
+    List<String> bodies = new ArrayList<>();
+    ByteBuffer byteBuffer = ByteBuffer.wrap(batch.getBody());
+    while (byteBuffer.hasRemaining()) {
+      byte[] body = new byte[byteBuffer.getInt()];
+      byteBuffer.get(body);
+      bodies.add(new String(body));
+    }
+
+    return bodies;
+  }
+}
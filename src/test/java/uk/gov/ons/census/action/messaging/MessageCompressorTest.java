@@ -0,0 +1,104 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.postprocessor.DelegatingDecompressingPostProcessor;
+
+public class MessageCompressorTest {
+  private static final String BODY =
+      "{\"caseRef\":123456789,\"packCode\":\"D_FDCE_I4\"}".repeat(50);
+
+  private final MessageCompressor underTest =
+      new MessageCompressor(
+          true,
+          "gzip",
+          1024,
+          new String[] {"action-outbound-exchange"},
+          new String[] {"case.uac-qid-created"});
+
+  @Test
+  public void testCompressesMessagesToConfiguredExchange() {
+    // When
+    Message actualMessage =
+        underTest.compress("action-outbound-exchange", "Action.Printer.binding", buildMessage());
+
+    // Then
+    MessageProperties actualProperties = actualMessage.getMessageProperties();
+    assertThat(actualProperties.getContentEncoding()).isEqualTo("gzip:UTF-8");
+    assertThat(actualProperties.getContentLength()).isEqualTo(actualMessage.getBody().length);
+    assertThat(actualMessage.getBody().length).isLessThan(BODY.length());
+
+    Message decompressedMessage =
+        new DelegatingDecompressingPostProcessor().postProcessMessage(actualMessage);
+    assertThat(new String(decompressedMessage.getBody())).isEqualTo(BODY);
+    assertThat(decompressedMessage.getMessageProperties().getContentEncoding()).isEqualTo("UTF-8");
+  }
+
+  @Test
+  public void testCompressesMessagesWithConfiguredRoutingKey() {
+    // When
+    Message actualMessage =
+        underTest.compress("uac-qid-created-exchange", "case.uac-qid-created", buildMessage());
+
+    // Then
+    assertThat(actualMessage.getMessageProperties().getContentEncoding()).isEqualTo("gzip:UTF-8");
+  }
+
+  @Test
+  public void testDoesNotCompressOtherExchanges() {
+    // Given
+    Message message = buildMessage();
+
+    // When
+    Message actualMessage = underTest.compress("action-case-exchange", "", message);
+
+    // Then
+    assertThat(actualMessage).isSameAs(message);
+    assertThat(actualMessage.getMessageProperties().getContentEncoding()).isEqualTo("UTF-8");
+  }
+
+  @Test
+  public void testDoesNotCompressSmallMessages() {
+    // Given
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentEncoding("UTF-8");
+    Message message = new Message("{\"caseRef\":123456789}".getBytes(), messageProperties);
+
+    // When
+    Message actualMessage = underTest.compress("action-outbound-exchange", "", message);
+
+    // Then
+    assertThat(actualMessage).isSameAs(message);
+  }
+
+  @Test
+  public void testDoesNothingWhenDisabled() {
+    // Given
+    MessageCompressor disabledCompressor =
+        new MessageCompressor(
+            false, "gzip", 0, new String[] {"action-outbound-exchange"}, new String[0]);
+    Message message = buildMessage();
+
+    // When
+    Message actualMessage = disabledCompressor.compress("action-outbound-exchange", "", message);
+
+    // Then
+    assertThat(actualMessage).isSameAs(message);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedAlgorithm() {
+    new MessageCompressor(true, "lz4", 0, new String[0], new String[0]);
+  }
+
+  private Message buildMessage() {
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    messageProperties.setContentEncoding("UTF-8");
+    messageProperties.setContentLength(BODY.length());
+    return new Message(BODY.getBytes(), messageProperties);
+  }
+}
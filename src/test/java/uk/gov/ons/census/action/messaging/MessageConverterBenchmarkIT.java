@@ -0,0 +1,87 @@
+package uk.gov.ons.census.action.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import org.jeasy.random.EasyRandom;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import uk.gov.ons.census.action.model.dto.FieldworkFollowup;
+import uk.gov.ons.census.action.model.dto.PrintFileDto;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+
+/**
+ * Compares the bytes allocated and the time taken per message by the Jackson2JsonMessageConverter
+ * and the OutboundMessageConverter, for each of the outbound DTOs.
+ *
+ * <p>This only produces figures in the log, so it's skipped unless run with -Dbenchmark=true.
+ */
+public class MessageConverterBenchmarkIT {
+  private static final Logger log = LoggerFactory.getLogger(MessageConverterBenchmarkIT.class);
+  private static final int WARM_UP_MESSAGES = 50000;
+  private static final int MEASURED_MESSAGES = 200000;
+  private static final EasyRandom easyRandom = new EasyRandom();
+  private static final Class<?>[] DTO_CLASSES = {
+    PrintFileDto.class, FieldworkFollowup.class, ResponseManagementEvent.class
+  };
+
+  private final ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private MessageConverter jackson2JsonMessageConverter;
+  private MessageConverter outboundMessageConverter;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new JavaTimeModule());
+    objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    jackson2JsonMessageConverter = new Jackson2JsonMessageConverter(objectMapper);
+    outboundMessageConverter = new OutboundMessageConverter(objectMapper);
+  }
+
+  @Test
+  public void benchmarkMessageConverters() {
+    for (Class<?> dtoClass : DTO_CLASSES) {
+      Object dto = easyRandom.nextObject(dtoClass);
+
+      convert(jackson2JsonMessageConverter, dto, WARM_UP_MESSAGES);
+      convert(outboundMessageConverter, dto, WARM_UP_MESSAGES);
+
+      log.with("dto", dtoClass.getSimpleName())
+          .with("jackson2JsonBytesPerMessage", bytesPerMessage(jackson2JsonMessageConverter, dto))
+          .with("outboundBytesPerMessage", bytesPerMessage(outboundMessageConverter, dto))
+          .with("jackson2JsonNanosPerMessage", nanosPerMessage(jackson2JsonMessageConverter, dto))
+          .with("outboundNanosPerMessage", nanosPerMessage(outboundMessageConverter, dto))
+          .info("Message converter benchmark");
+    }
+  }
+
+  private long bytesPerMessage(MessageConverter messageConverter, Object dto) {
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+    convert(messageConverter, dto, MEASURED_MESSAGES);
+    return (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / MEASURED_MESSAGES;
+  }
+
+  private long nanosPerMessage(MessageConverter messageConverter, Object dto) {
+    long startTime = System.nanoTime();
+    convert(messageConverter, dto, MEASURED_MESSAGES);
+    return (System.nanoTime() - startTime) / MEASURED_MESSAGES;
+  }
+
+  private void convert(MessageConverter messageConverter, Object dto, int numberOfMessages) {
+    for (int i = 0; i < numberOfMessages; i++) {
+      messageConverter.toMessage(dto, new MessageProperties());
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.gov.ons.census.action.model.repository.MessageOutboxRepository;
+
+public class MessageOutboxTest {
+  private final MessageOutboxRepository messageOutboxRepository =
+      mock(MessageOutboxRepository.class);
+  private final MessageOutbox underTest = new MessageOutbox(messageOutboxRepository, true);
+
+  @After
+  public void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.unbindResourceIfPossible(underTest);
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void testMessagesAreWrittenInOneBatchBeforeCommit() {
+    // Given
+    TransactionSynchronizationManager.initSynchronization();
+    CapturedMessage firstMessage = buildMessage("first");
+    CapturedMessage secondMessage = buildMessage("second");
+    underTest.add(firstMessage);
+    underTest.add(secondMessage);
+    verify(messageOutboxRepository, never()).insert(any());
+
+    // When
+    for (TransactionSynchronization synchronization :
+        TransactionSynchronizationManager.getSynchronizations()) {
+      synchronization.beforeCommit(false);
+    }
+
+    // Then
+    verify(messageOutboxRepository).insert(List.of(firstMessage, secondMessage));
+  }
+
+  @Test
+  public void testMessagesAreWrittenStraightAwayWithoutTransaction() {
+    // Given
+    CapturedMessage message = buildMessage("message");
+
+    // When
+    underTest.add(message);
+
+    // Then
+    verify(messageOutboxRepository).insert(List.of(message));
+  }
+
+  private CapturedMessage buildMessage(String body) {
+    return new CapturedMessage(
+        "exchange", "key", new Message(body.getBytes(), new MessageProperties()), null);
+  }
+}
@@ -0,0 +1,116 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.util.UUID;
+import org.jeasy.random.EasyRandom;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
+import uk.gov.ons.census.action.model.dto.FieldworkFollowup;
+import uk.gov.ons.census.action.model.dto.PrintFileDto;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+
+public class OutboundMessageConverterTest {
+  private static final EasyRandom easyRandom = new EasyRandom();
+
+  private final ObjectMapper objectMapper = buildObjectMapper();
+  private final OutboundMessageConverter underTest = new OutboundMessageConverter(objectMapper);
+  private final Jackson2JsonMessageConverter jackson2JsonMessageConverter =
+      new Jackson2JsonMessageConverter(objectMapper);
+
+  @Test
+  public void testPrintFileDtoSameAsJackson2JsonMessageConverter() {
+    assertSameAsJackson2JsonMessageConverter(easyRandom.nextObject(PrintFileDto.class));
+  }
+
+  @Test
+  public void testFieldworkFollowupSameAsJackson2JsonMessageConverter() {
+    assertSameAsJackson2JsonMessageConverter(easyRandom.nextObject(FieldworkFollowup.class));
+  }
+
+  @Test
+  public void testResponseManagementEventSameAsJackson2JsonMessageConverter() {
+    assertSameAsJackson2JsonMessageConverter(
+        easyRandom.nextObject(ResponseManagementEvent.class));
+  }
+
+  @Test
+  public void testBufferIsNotSharedBetweenMessages() throws IOException {
+    // Given
+    PrintFileDto firstDto = easyRandom.nextObject(PrintFileDto.class);
+    PrintFileDto secondDto = easyRandom.nextObject(PrintFileDto.class);
+
+    // When
+    Message firstMessage = underTest.toMessage(firstDto, new MessageProperties());
+    Message secondMessage = underTest.toMessage(secondDto, new MessageProperties());
+
+    // Then
+    assertThat(objectMapper.readValue(firstMessage.getBody(), PrintFileDto.class))
+        .isEqualTo(firstDto);
+    assertThat(objectMapper.readValue(secondMessage.getBody(), PrintFileDto.class))
+        .isEqualTo(secondDto);
+  }
+
+  @Test
+  public void testCodecUsedForItsContentType() {
+    // Given
+    underTest.registerCodec(new CompactEventCodec());
+    ResponseManagementEvent event =
+        new CaseSelectedBuilder().buildFieldMessage("1234567890", UUID.randomUUID());
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentType(CompactEventCodec.CONTENT_TYPE);
+
+    // When
+    Message actualMessage = underTest.toMessage(event, messageProperties);
+
+    // Then
+    assertThat(actualMessage.getMessageProperties().getContentType())
+        .isEqualTo(CompactEventCodec.CONTENT_TYPE);
+    assertThat(actualMessage.getMessageProperties().getContentLength())
+        .isEqualTo(actualMessage.getBody().length);
+    assertThat(underTest.fromMessage(actualMessage)).isEqualTo(event);
+  }
+
+  @Test
+  public void testFallsBackToJsonWhenCodecCannotEncode() {
+    // Given
+    underTest.registerCodec(new CompactEventCodec());
+    PrintFileDto dto = easyRandom.nextObject(PrintFileDto.class);
+    MessageProperties messageProperties = new MessageProperties();
+    messageProperties.setContentType(CompactEventCodec.CONTENT_TYPE);
+
+    // When
+    Message actualMessage = underTest.toMessage(dto, messageProperties);
+
+    // Then
+    Message expectedMessage = jackson2JsonMessageConverter.toMessage(dto, new MessageProperties());
+    assertThat(actualMessage.getBody()).isEqualTo(expectedMessage.getBody());
+    assertThat(actualMessage.getMessageProperties().getContentType())
+        .isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+  }
+
+  private void assertSameAsJackson2JsonMessageConverter(Object dto) {
+    // When
+    Message actualMessage = underTest.toMessage(dto, new MessageProperties());
+
+    // Then
+    Message expectedMessage = jackson2JsonMessageConverter.toMessage(dto, new MessageProperties());
+    assertThat(actualMessage.getBody()).isEqualTo(expectedMessage.getBody());
+    assertThat(actualMessage.getMessageProperties())
+        .isEqualTo(expectedMessage.getMessageProperties());
+  }
+
+  private static ObjectMapper buildObjectMapper() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new JavaTimeModule());
+    objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    return objectMapper;
+  }
+}
@@ -0,0 +1,94 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import org.jeasy.random.EasyRandom;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.gov.ons.census.action.model.dto.PrintFileDto;
+import uk.gov.ons.census.action.model.entity.ActionHandler;
+
+/** The poller and the relay are slowed right down, so that the test drives them itself. */
+@ContextConfiguration
+@SpringBootTest(
+    properties = {
+      "scheduler.frequency=3600000",
+      "queueconfig.outbox.enabled=true",
+      "queueconfig.outbox.relay-frequency=3600000"
+    })
+@ActiveProfiles("test")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class OutboxRelayIT {
+  private static final String OUTBOUND_PRINTER_QUEUE = "Action.Printer";
+  private static final String COUNT_OUTBOX = "SELECT count(*) FROM actionv2.message_outbox";
+  private static final EasyRandom easyRandom = new EasyRandom();
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Value("${queueconfig.outbound-exchange}")
+  private String outboundExchange;
+
+  @Autowired private CapturingRabbitTemplate rabbitTemplate;
+  @Autowired private OutboxRelay outboxRelay;
+  @Autowired private RabbitQueueHelper rabbitQueueHelper;
+  @Autowired private JdbcTemplate jdbcTemplate;
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  @Before
+  public void setUp() {
+    rabbitQueueHelper.purgeQueue(OUTBOUND_PRINTER_QUEUE);
+    jdbcTemplate.update("DELETE FROM actionv2.message_outbox");
+  }
+
+  @Test
+  public void testMessagesAreRelayedFromOutbox() throws Exception {
+    try (QueueSpy printerQueue = rabbitQueueHelper.listen(OUTBOUND_PRINTER_QUEUE)) {
+      // Given
+      PrintFileDto printFileDto = easyRandom.nextObject(PrintFileDto.class);
+      new TransactionTemplate(transactionManager)
+          .executeWithoutResult(
+              status ->
+                  rabbitTemplate.convertAndSend(
+                      outboundExchange, ActionHandler.PRINTER.getRoutingKey(), printFileDto));
+      assertThat(jdbcTemplate.queryForObject(COUNT_OUTBOX, Integer.class)).isEqualTo(1);
+      assertThat(printerQueue.getQueue().poll(1, TimeUnit.SECONDS)).isNull();
+
+      // When
+      outboxRelay.relayMessages();
+
+      // Then
+      String actualMessage = printerQueue.getQueue().poll(20, TimeUnit.SECONDS);
+      assertThat(objectMapper.readValue(actualMessage, PrintFileDto.class)).isEqualTo(printFileDto);
+      assertThat(jdbcTemplate.queryForObject(COUNT_OUTBOX, Integer.class)).isZero();
+    }
+  }
+
+  @Test
+  public void testOutboxRollsBackWithTransaction() {
+    // Given
+    PrintFileDto printFileDto = easyRandom.nextObject(PrintFileDto.class);
+
+    // When
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              rabbitTemplate.convertAndSend(
+                  outboundExchange, ActionHandler.PRINTER.getRoutingKey(), printFileDto);
+              status.setRollbackOnly();
+            });
+
+    // Then
+    assertThat(jdbcTemplate.queryForObject(COUNT_OUTBOX, Integer.class)).isZero();
+  }
+}
@@ -0,0 +1,80 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class PendingConfirmsTest {
+  private final Object resourceKey = new Object();
+
+  @Before
+  public void setUp() {
+    TransactionSynchronizationManager.initSynchronization();
+  }
+
+  @After
+  public void tearDown() {
+    TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+    TransactionSynchronizationManager.clearSynchronization();
+  }
+
+  @Test
+  public void testCommitsWhenAllConfirmsAreAcked() {
+    // Given
+    PendingConfirms underTest = PendingConfirms.forCurrentTransaction(resourceKey, 1000);
+    CorrelationData correlationData = new CorrelationData();
+    underTest.add(correlationData);
+    correlationData.getFuture().set(new Confirm(true, null));
+
+    // When
+    underTest.beforeCommit(false);
+
+    // Then
+    assertThat(PendingConfirms.forCurrentTransaction(resourceKey, 1000)).isSameAs(underTest);
+    assertThat(TransactionSynchronizationManager.getSynchronizations()).containsOnly(underTest);
+  }
+
+  @Test(expected = AmqpException.class)
+  public void testNackRollsBack() {
+    // Given
+    PendingConfirms underTest = PendingConfirms.forCurrentTransaction(resourceKey, 1000);
+    CorrelationData ackedCorrelationData = new CorrelationData();
+    CorrelationData nackedCorrelationData = new CorrelationData();
+    underTest.add(ackedCorrelationData);
+    underTest.add(nackedCorrelationData);
+    ackedCorrelationData.getFuture().set(new Confirm(true, null));
+    nackedCorrelationData.getFuture().set(new Confirm(false, "queue full"));
+
+    // When
+    underTest.beforeCommit(false);
+  }
+
+  @Test(expected = AmqpException.class)
+  public void testMissingConfirmTimesOut() {
+    // Given
+    PendingConfirms underTest = PendingConfirms.forCurrentTransaction(resourceKey, 10);
+    underTest.add(new CorrelationData());
+
+    // When
+    underTest.beforeCommit(false);
+  }
+
+  @Test
+  public void testReleasedAfterCompletion() {
+    // Given
+    PendingConfirms underTest = PendingConfirms.forCurrentTransaction(resourceKey, 1000);
+
+    // When
+    underTest.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+    // Then
+    assertThat(TransactionSynchronizationManager.hasResource(resourceKey)).isFalse();
+  }
+}
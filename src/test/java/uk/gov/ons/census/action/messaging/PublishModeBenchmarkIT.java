@@ -0,0 +1,123 @@
+package uk.gov.ons.census.action.messaging;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares publishing a chunk of messages on a transacted channel against publishing it with
+ * publisher confirms, waiting for them all before the DB transaction commits.
+ *
+ * <p>This is slow and only produces timings in the log, so it's skipped unless run with
+ * -Dbenchmark=true. The poller is slowed right down so that it doesn't publish anything itself.
+ */
+@ContextConfiguration
+@SpringBootTest(properties = {"scheduler.frequency=3600000"})
+@ActiveProfiles("test")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class PublishModeBenchmarkIT {
+  private static final Logger log = LoggerFactory.getLogger(PublishModeBenchmarkIT.class);
+  private static final String OUTBOUND_PRINTER_QUEUE = "Action.Printer";
+  private static final int[] CHUNK_SIZES = {1000, 5000, 20000};
+
+  @Value("${queueconfig.outbound-exchange}")
+  private String outboundExchange;
+
+  @Autowired private RabbitProperties rabbitProperties;
+  @Autowired private Jackson2JsonMessageConverter messageConverter;
+  @Autowired private PlatformTransactionManager transactionManager;
+  @Autowired private RabbitQueueHelper rabbitQueueHelper;
+
+  private CachingConnectionFactory transactedConnectionFactory;
+  private CachingConnectionFactory confirmsConnectionFactory;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+    transactedConnectionFactory = createConnectionFactory();
+    confirmsConnectionFactory = createConnectionFactory();
+    confirmsConnectionFactory.setPublisherConfirmType(ConfirmType.CORRELATED);
+    rabbitQueueHelper.purgeQueue(OUTBOUND_PRINTER_QUEUE);
+  }
+
+  @After
+  public void tearDown() {
+    if (transactedConnectionFactory != null) {
+      transactedConnectionFactory.destroy();
+      confirmsConnectionFactory.destroy();
+      rabbitQueueHelper.purgeQueue(OUTBOUND_PRINTER_QUEUE);
+    }
+  }
+
+  @Test
+  public void benchmarkPublishModes() {
+    CapturingRabbitTemplate transactedTemplate =
+        createRabbitTemplate(transactedConnectionFactory);
+    transactedTemplate.setChannelTransacted(true);
+
+    CapturingRabbitTemplate confirmsTemplate = createRabbitTemplate(confirmsConnectionFactory);
+    confirmsTemplate.setConfirmTimeout(30000);
+
+    // Warm up both connections, so neither run pays for opening them
+    publishChunkInTransaction(transactedTemplate, 100);
+    publishChunkInTransaction(confirmsTemplate, 100);
+
+    for (int chunkSize : CHUNK_SIZES) {
+      long transactedMillis = publishChunkInTransaction(transactedTemplate, chunkSize);
+      long confirmsMillis = publishChunkInTransaction(confirmsTemplate, chunkSize);
+      rabbitQueueHelper.purgeQueue(OUTBOUND_PRINTER_QUEUE);
+
+      log.with("chunkSize", chunkSize)
+          .with("transactedMillis", transactedMillis)
+          .with("confirmsMillis", confirmsMillis)
+          .info("Publish mode benchmark");
+    }
+  }
+
+  private long publishChunkInTransaction(CapturingRabbitTemplate rabbitTemplate, int chunkSize) {
+    Map<String, String> payload = Map.of("caseRef", "123456789", "packCode", "P_IC_ICL1");
+
+    long startTime = System.nanoTime();
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              for (int i = 0; i < chunkSize; i++) {
+                rabbitTemplate.convertAndSend(outboundExchange, OUTBOUND_PRINTER_QUEUE, payload);
+              }
+            });
+    return (System.nanoTime() - startTime) / 1_000_000;
+  }
+
+  private CachingConnectionFactory createConnectionFactory() {
+    CachingConnectionFactory connectionFactory =
+        new CachingConnectionFactory(rabbitProperties.getHost(), rabbitProperties.getPort());
+    connectionFactory.setUsername(rabbitProperties.getUsername());
+    connectionFactory.setPassword(rabbitProperties.getPassword());
+    connectionFactory.setVirtualHost(rabbitProperties.getVirtualHost());
+    return connectionFactory;
+  }
+
+  private CapturingRabbitTemplate createRabbitTemplate(CachingConnectionFactory connectionFactory) {
+    CapturingRabbitTemplate rabbitTemplate = new CapturingRabbitTemplate(connectionFactory);
+    rabbitTemplate.setMessageConverter(messageConverter);
+    return rabbitTemplate;
+  }
+}
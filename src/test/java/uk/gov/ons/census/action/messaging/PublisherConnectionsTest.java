@@ -0,0 +1,76 @@
+package uk.gov.ons.census.action.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+
+public class PublisherConnectionsTest {
+  private PublisherConnections underTest;
+
+  @After
+  public void tearDown() {
+    underTest.close();
+  }
+
+  @Test
+  public void testNoDedicatedConnectionsWhenDisabled() {
+    // Given
+    underTest = buildPublisherConnections(false);
+
+    // When
+    RabbitTemplate actualTemplate = underTest.getTemplate("action-outbound-exchange");
+
+    // Then
+    assertThat(actualTemplate).isNull();
+  }
+
+  @Test
+  public void testExchangesAreIsolated() {
+    // Given
+    underTest = buildPublisherConnections(true);
+
+    // When
+    RabbitTemplate outboundTemplate = underTest.getTemplate("action-outbound-exchange");
+    RabbitTemplate actionCaseTemplate = underTest.getTemplate("action-case-exchange");
+    RabbitTemplate uacQidCreatedTemplate = underTest.getTemplate("uac-qid-created-exchange");
+
+    // Then
+    assertThat(outboundTemplate.getConnectionFactory())
+        .isNotSameAs(actionCaseTemplate.getConnectionFactory())
+        .isNotSameAs(uacQidCreatedTemplate.getConnectionFactory());
+    assertThat(actionCaseTemplate.getConnectionFactory())
+        .isNotSameAs(uacQidCreatedTemplate.getConnectionFactory());
+    assertThat(underTest.getTemplate("some-other-exchange")).isNull();
+  }
+
+  @Test
+  public void testThreadsArePinnedToConnections() throws Exception {
+    // Given
+    underTest = buildPublisherConnections(true);
+
+    // When
+    RabbitTemplate firstTemplate = underTest.getTemplate("action-outbound-exchange");
+    RabbitTemplate otherThreadTemplate =
+        CompletableFuture.supplyAsync(() -> underTest.getTemplate("action-outbound-exchange"))
+            .get();
+
+    // Then
+    assertThat(underTest.getTemplate("action-outbound-exchange")).isSameAs(firstTemplate);
+    assertThat(otherThreadTemplate).isNotSameAs(firstTemplate);
+  }
+
+  private PublisherConnections buildPublisherConnections(boolean enabled) {
+    return new PublisherConnections(
+        new RabbitProperties(),
+        enabled,
+        2,
+        25,
+        "action-outbound-exchange",
+        "action-case-exchange",
+        "uac-qid-created-exchange");
+  }
+}
@@ -0,0 +1,38 @@
+package uk.gov.ons.census.action.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import uk.gov.ons.census.action.model.entity.CaseMetadata;
+import uk.gov.ons.census.action.model.entity.NonComplianceType;
+
+public class CaseRecordTest {
+
+  @Test
+  public void testMetadataIsDeserialised() {
+    // Given
+    CaseRecord underTest =
+        CaseRecord.builder()
+            .metadataJson("{\"secureEstablishment\": true, \"nonCompliance\": \"NCL\"}")
+            .build();
+
+    // When
+    CaseMetadata actualMetadata = underTest.getMetadata();
+
+    // Then
+    assertThat(actualMetadata.getSecureEstablishment()).isTrue();
+    assertThat(actualMetadata.getNonCompliance()).isEqualTo(NonComplianceType.NCL);
+  }
+
+  @Test
+  public void testNoMetadata() {
+    // Given
+    CaseRecord underTest = CaseRecord.builder().build();
+
+    // When
+    CaseMetadata actualMetadata = underTest.getMetadata();
+
+    // Then
+    assertThat(actualMetadata).isNull();
+  }
+}
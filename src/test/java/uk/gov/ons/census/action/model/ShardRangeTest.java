@@ -0,0 +1,28 @@
+package uk.gov.ons.census.action.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ShardRangeTest {
+
+  @Test
+  public void testNoFilterWhenClaimingEverything() {
+    assertThat(ShardRange.ALL.filterSql("id")).isEqualTo("TRUE");
+    assertThat(new ShardRange(64, 0, 63).filterSql("id")).isEqualTo("TRUE");
+  }
+
+  @Test
+  public void testFilterMatchesShardIndexExpression() {
+    // Given
+    ShardRange underTest = new ShardRange(64, 16, 31);
+
+    // When
+    String actualFilterSql = underTest.filterSql("ctp.id");
+
+    // Then
+    assertThat(actualFilterSql)
+        .isEqualTo("abs(hashint8(CAST(ctp.id AS bigint)) % 64) BETWEEN 16 AND 31")
+        .startsWith(ShardRange.shardExpression("ctp.id", 64));
+  }
+}
@@ -0,0 +1,77 @@
+package uk.gov.ons.census.action.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class BulkDeleteRepositoryTest {
+
+  @Test
+  public void testDeleteCasesToProcessInBatches() throws Exception {
+    // Given
+    JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    BulkDeleteRepository underTest = new BulkDeleteRepository(jdbcTemplate);
+    ReflectionTestUtils.setField(underTest, "deleteBatchSize", 2);
+
+    // When
+    underTest.deleteCasesToProcess(new long[] {1L, 2L, 3L, 4L, 5L});
+
+    // Then
+    ArgumentCaptor<PreparedStatementSetter> setterCaptor =
+        ArgumentCaptor.forClass(PreparedStatementSetter.class);
+    verify(jdbcTemplate, times(3))
+        .update(
+            eq("DELETE FROM actionv2.case_to_process WHERE id = ANY(?)"),
+            setterCaptor.capture());
+
+    List<PreparedStatementSetter> setters = setterCaptor.getAllValues();
+    assertThat(getBoundIds(setters.get(0))).containsExactly(1L, 2L);
+    assertThat(getBoundIds(setters.get(1))).containsExactly(3L, 4L);
+    assertThat(getBoundIds(setters.get(2))).containsExactly(5L);
+  }
+
+  @Test
+  public void testDeleteFulfilmentsToProcess() {
+    // Given
+    JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    BulkDeleteRepository underTest = new BulkDeleteRepository(jdbcTemplate);
+    ReflectionTestUtils.setField(underTest, "deleteBatchSize", 1000);
+
+    // When
+    underTest.deleteFulfilmentsToProcess(new long[] {1L, 2L, 3L});
+
+    // Then
+    verify(jdbcTemplate)
+        .update(
+            eq("DELETE FROM actionv2.fulfilment_to_process WHERE id = ANY(?)"),
+            any(PreparedStatementSetter.class));
+  }
+
+  private long[] getBoundIds(PreparedStatementSetter setter) throws Exception {
+    PreparedStatement preparedStatement = mock(PreparedStatement.class);
+    Connection connection = mock(Connection.class);
+    PGConnection pgConnection = mock(PGConnection.class);
+    when(preparedStatement.getConnection()).thenReturn(connection);
+    when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+
+    setter.setValues(preparedStatement);
+
+    ArgumentCaptor<Object> idsCaptor = ArgumentCaptor.forClass(Object.class);
+    verify(pgConnection).createArrayOf(eq("int8"), idsCaptor.capture());
+    return (long[]) idsCaptor.getValue();
+  }
+}
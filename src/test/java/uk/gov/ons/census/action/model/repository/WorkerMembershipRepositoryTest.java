@@ -0,0 +1,106 @@
+package uk.gov.ons.census.action.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class WorkerMembershipRepositoryTest {
+  private static final String CASE_INDEX = "case_to_process_shard_64";
+  private static final String FULFILMENT_INDEX = "fulfilment_to_process_shard_64";
+
+  private Statement statement;
+  private WorkerMembershipRepository underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    statement = mock(Statement.class);
+    Connection connection = mock(Connection.class);
+    when(connection.createStatement()).thenReturn(statement);
+
+    JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+        .thenAnswer(
+            invocation ->
+                invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+    underTest = new WorkerMembershipRepository(jdbcTemplate);
+  }
+
+  @Test
+  public void testShardIndexesCreatedWhenMissing() throws Exception {
+    // Given
+    givenLockAcquired(true);
+    givenIndexValidity(CASE_INDEX, null);
+    givenIndexValidity(FULFILMENT_INDEX, null);
+
+    // When
+    boolean created = underTest.createShardIndexes(64);
+
+    // Then
+    assertThat(created).isTrue();
+    verify(statement).execute(startsWith("CREATE INDEX CONCURRENTLY " + CASE_INDEX + " "));
+    verify(statement).execute(startsWith("CREATE INDEX CONCURRENTLY " + FULFILMENT_INDEX + " "));
+    verify(statement, never()).execute(startsWith("DROP INDEX"));
+    verify(statement).execute(contains("pg_advisory_unlock"));
+  }
+
+  @Test
+  public void testInvalidShardIndexRebuilt() throws Exception {
+    // Given
+    givenLockAcquired(true);
+    givenIndexValidity(CASE_INDEX, false);
+    givenIndexValidity(FULFILMENT_INDEX, true);
+
+    // When
+    underTest.createShardIndexes(64);
+
+    // Then
+    InOrder inOrder = inOrder(statement);
+    inOrder.verify(statement).execute("DROP INDEX CONCURRENTLY IF EXISTS actionv2." + CASE_INDEX);
+    inOrder.verify(statement).execute(startsWith("CREATE INDEX CONCURRENTLY " + CASE_INDEX + " "));
+    verify(statement, never()).execute(contains(FULFILMENT_INDEX));
+  }
+
+  @Test
+  public void testShardIndexesLeftToTheWorkerHoldingTheLock() throws Exception {
+    // Given
+    givenLockAcquired(false);
+
+    // When
+    boolean created = underTest.createShardIndexes(64);
+
+    // Then
+    assertThat(created).isFalse();
+    verify(statement, never()).execute(any());
+  }
+
+  private void givenLockAcquired(boolean acquired) throws Exception {
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.next()).thenReturn(true);
+    when(resultSet.getBoolean(1)).thenReturn(acquired);
+    when(statement.executeQuery(contains("pg_try_advisory_lock"))).thenReturn(resultSet);
+  }
+
+  private void givenIndexValidity(String indexName, Boolean valid) throws Exception {
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.next()).thenReturn(valid != null);
+    if (valid != null) {
+      when(resultSet.getBoolean(1)).thenReturn(valid);
+    }
+    when(statement.executeQuery(contains("relname = '" + indexName + "'"))).thenReturn(resultSet);
+  }
+}
@@ -15,6 +15,8 @@ import org.springframework.beans.factory.annotation.Value;
 import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
 import uk.gov.ons.census.action.builders.FieldworkFollowupBuilder;
 import uk.gov.ons.census.action.builders.PrintFileDtoBuilder;
+import uk.gov.ons.census.action.model.CaseRecord;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
 import uk.gov.ons.census.action.model.dto.FieldworkFollowup;
 import uk.gov.ons.census.action.model.dto.PrintFileDto;
 import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
@@ -187,4 +189,42 @@ public class CaseProcessorTest {
     verify(rabbitTemplate)
         .convertAndSend(eq(actionCaseExchange), eq(""), eq(responseManagementEvent));
   }
+
+  @Test
+  public void testProcessCaseRecordForField() {
+    // Given
+    ActionPlan actionPlan = new ActionPlan();
+    actionPlan.setId(UUID.randomUUID());
+    ActionRule actionRule = new ActionRule();
+    actionRule.setId(UUID.randomUUID());
+    actionRule.setActionType(ActionType.FIELD);
+    actionRule.setActionPlan(actionPlan);
+    CaseRecord caze = CaseRecord.builder().caseRef(123L).build();
+    CaseToProcessRecord caseToProcess =
+        new CaseToProcessRecord(1L, caze, actionRule, UUID.randomUUID(), 666, null);
+
+    FieldworkFollowup fieldworkFollowup = new FieldworkFollowup();
+    fieldworkFollowup.setCaseRef("123");
+    ResponseManagementEvent responseManagementEvent = new ResponseManagementEvent();
+
+    when(fieldworkFollowupBuilder.buildFieldworkFollowup(any(), any(), any()))
+        .thenReturn(fieldworkFollowup);
+    when(caseSelectedBuilder.buildFieldMessage(any(), any())).thenReturn(responseManagementEvent);
+
+    // When
+    underTest.process(caseToProcess);
+
+    // Then
+    verify(fieldworkFollowupBuilder)
+        .buildFieldworkFollowup(
+            eq(caze), eq(actionPlan.getId().toString()), eq(ActionType.FIELD.name()));
+    verify(caseSelectedBuilder).buildFieldMessage(eq("123"), eq(actionRule.getId()));
+    verify(rabbitTemplate)
+        .convertAndSend(
+            eq(outboundExchange),
+            eq(ActionType.FIELD.getHandler().getRoutingKey()),
+            eq(fieldworkFollowup));
+    verify(rabbitTemplate)
+        .convertAndSend(eq(actionCaseExchange), eq(""), eq(responseManagementEvent));
+  }
 }
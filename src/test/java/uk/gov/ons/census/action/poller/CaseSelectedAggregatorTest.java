@@ -0,0 +1,156 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.gov.ons.census.action.builders.CaseSelectedBuilder;
+import uk.gov.ons.census.action.model.dto.CasesSelected;
+import uk.gov.ons.census.action.model.dto.EventType;
+import uk.gov.ons.census.action.model.dto.ResponseManagementEvent;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.ActionType;
+import uk.gov.ons.census.action.model.entity.Case;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
+
+public class CaseSelectedAggregatorTest {
+  private static final String ACTION_CASE_EXCHANGE = "action-case-exchange";
+
+  private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+
+  @Test
+  public void testOneEventPerActionRuleAndBatch() {
+    // Given
+    CaseSelectedAggregator underTest = buildAggregator(true);
+    ActionRule printRule = buildActionRule(ActionType.ICL1E);
+    ActionRule fieldRule = buildActionRule(ActionType.FIELD);
+    UUID batchId = UUID.randomUUID();
+    UUID otherBatchId = UUID.randomUUID();
+
+    // When
+    underTest.sendCasesSelected(
+        List.of(
+            buildCaseToProcess(printRule, batchId, 1),
+            buildCaseToProcess(fieldRule, null, 2),
+            buildCaseToProcess(printRule, batchId, 3),
+            buildCaseToProcess(printRule, otherBatchId, 4),
+            buildCaseToProcess(fieldRule, null, 5)));
+
+    // Then
+    List<ResponseManagementEvent> events = captureEvents(3);
+
+    CasesSelected printBatch = events.get(0).getPayload().getCasesSelected();
+    assertThat(events.get(0).getEvent().getType()).isEqualTo(EventType.PRINT_CASES_SELECTED);
+    assertThat(printBatch.getActionRuleId()).isEqualTo(printRule.getId());
+    assertThat(printBatch.getBatchId()).isEqualTo(batchId.toString());
+    assertThat(printBatch.getPackCode()).isEqualTo("P_IC_ICL1");
+    assertThat(printBatch.getCaseCount()).isEqualTo(2);
+    assertThat(printBatch.getCaseRefs()).containsExactly(1L, 3L);
+
+    CasesSelected fieldRuleCases = events.get(1).getPayload().getCasesSelected();
+    assertThat(events.get(1).getEvent().getType()).isEqualTo(EventType.FIELD_CASES_SELECTED);
+    assertThat(fieldRuleCases.getActionRuleId()).isEqualTo(fieldRule.getId());
+    assertThat(fieldRuleCases.getBatchId()).isNull();
+    assertThat(fieldRuleCases.getCaseCount()).isEqualTo(2);
+    assertThat(fieldRuleCases.getCaseRefs()).containsExactly(2L, 5L);
+
+    CasesSelected otherPrintBatch = events.get(2).getPayload().getCasesSelected();
+    assertThat(otherPrintBatch.getBatchId()).isEqualTo(otherBatchId.toString());
+    assertThat(otherPrintBatch.getCaseCount()).isEqualTo(1);
+    assertThat(otherPrintBatch.getCaseRefs()).containsExactly(4L);
+  }
+
+  @Test
+  public void testOneEventPerFulfilmentBatchAndCode() {
+    // Given
+    CaseSelectedAggregator underTest = buildAggregator(true);
+    UUID batchId = UUID.randomUUID();
+
+    // When
+    underTest.sendFulfilmentsSelected(
+        List.of(
+            buildFulfilmentToProcess("P_OR_H1", batchId, 1),
+            buildFulfilmentToProcess("P_OR_H1", batchId, 2),
+            buildFulfilmentToProcess("P_OR_I1", batchId, 3)));
+
+    // Then
+    List<ResponseManagementEvent> events = captureEvents(2);
+
+    CasesSelected householdPacks = events.get(0).getPayload().getCasesSelected();
+    assertThat(householdPacks.getActionRuleId()).isNull();
+    assertThat(householdPacks.getPackCode()).isEqualTo("P_OR_H1");
+    assertThat(householdPacks.getCaseCount()).isEqualTo(2);
+    assertThat(householdPacks.getCaseRefs()).containsExactly(1L, 2L);
+
+    CasesSelected individualPacks = events.get(1).getPayload().getCasesSelected();
+    assertThat(individualPacks.getPackCode()).isEqualTo("P_OR_I1");
+    assertThat(individualPacks.getCaseCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testNothingSentWhenDisabled() {
+    // Given
+    CaseSelectedAggregator underTest = buildAggregator(false);
+
+    // When
+    underTest.sendCasesSelected(
+        List.of(buildCaseToProcess(buildActionRule(ActionType.ICL1E), UUID.randomUUID(), 1)));
+
+    // Then
+    verifyZeroInteractions(rabbitTemplate);
+  }
+
+  private CaseSelectedAggregator buildAggregator(boolean aggregateCaseSelected) {
+    return new CaseSelectedAggregator(
+        new CaseSelectedBuilder(), rabbitTemplate, ACTION_CASE_EXCHANGE, aggregateCaseSelected);
+  }
+
+  private List<ResponseManagementEvent> captureEvents(int expectedEvents) {
+    ArgumentCaptor<ResponseManagementEvent> eventCaptor =
+        ArgumentCaptor.forClass(ResponseManagementEvent.class);
+    verify(rabbitTemplate, times(expectedEvents))
+        .convertAndSend(eq(ACTION_CASE_EXCHANGE), eq(""), eventCaptor.capture());
+    verify(rabbitTemplate, times(expectedEvents))
+        .convertAndSend(anyString(), anyString(), any(Object.class));
+    return eventCaptor.getAllValues();
+  }
+
+  private ActionRule buildActionRule(ActionType actionType) {
+    ActionRule actionRule = new ActionRule();
+    actionRule.setId(UUID.randomUUID());
+    actionRule.setActionType(actionType);
+    return actionRule;
+  }
+
+  private CaseToProcess buildCaseToProcess(ActionRule actionRule, UUID batchId, int caseRef) {
+    Case caze = new Case();
+    caze.setCaseRef(caseRef);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setCaze(caze);
+    caseToProcess.setActionRule(actionRule);
+    caseToProcess.setBatchId(batchId);
+    return caseToProcess;
+  }
+
+  private FulfilmentToProcess buildFulfilmentToProcess(
+      String fulfilmentCode, UUID batchId, int caseRef) {
+    Case caze = new Case();
+    caze.setCaseRef(caseRef);
+    FulfilmentToProcess fulfilmentToProcess = new FulfilmentToProcess();
+    fulfilmentToProcess.setCaze(caze);
+    fulfilmentToProcess.setFulfilmentCode(fulfilmentCode);
+    fulfilmentToProcess.setBatchId(batchId);
+    return fulfilmentToProcess;
+  }
+}
@@ -0,0 +1,123 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.jeasy.random.EasyRandom;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import uk.gov.ons.census.action.messaging.RabbitQueueHelper;
+import uk.gov.ons.census.action.model.entity.ActionPlan;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.ActionType;
+import uk.gov.ons.census.action.model.entity.Case;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.repository.ActionPlanRepository;
+import uk.gov.ons.census.action.model.repository.ActionRuleRepository;
+import uk.gov.ons.census.action.model.repository.CaseRepository;
+import uk.gov.ons.census.action.model.repository.CaseToProcessRepository;
+import uk.gov.ons.census.action.model.repository.FulfilmentToProcessRepository;
+
+/**
+ * Checks that claiming a chunk doesn't do a secondary select per row. The poller is slowed right
+ * down so that it doesn't steal the rows.
+ */
+@ContextConfiguration
+@SpringBootTest(
+    properties = {
+      "scheduler.frequency=3600000",
+      "spring.jpa.properties.hibernate.generate_statistics=true"
+    })
+@ActiveProfiles("test")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class ChunkClaimStatementCountIT {
+  private static final String OUTBOUND_FIELD_QUEUE = "Action.Field";
+  private static final String ACTION_CASE_QUEUE = "action.events";
+  private static final int NUMBER_OF_CASES = 20;
+  private static final EasyRandom easyRandom = new EasyRandom();
+
+  @Autowired private RabbitQueueHelper rabbitQueueHelper;
+  @Autowired private CaseRepository caseRepository;
+  @Autowired private ActionRuleRepository actionRuleRepository;
+  @Autowired private ActionPlanRepository actionPlanRepository;
+  @Autowired private CaseToProcessRepository caseToProcessRepository;
+  @Autowired private FulfilmentToProcessRepository fulfilmentToProcessRepository;
+  @Autowired private ChunkProcessor chunkProcessor;
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  private ActionPlan actionPlan;
+
+  @Before
+  public void setUp() {
+    rabbitQueueHelper.purgeQueue(OUTBOUND_FIELD_QUEUE);
+    rabbitQueueHelper.purgeQueue(ACTION_CASE_QUEUE);
+    fulfilmentToProcessRepository.deleteAllInBatch();
+    caseToProcessRepository.deleteAllInBatch();
+    caseRepository.deleteAllInBatch();
+    actionRuleRepository.deleteAllInBatch();
+    actionPlanRepository.deleteAllInBatch();
+
+    actionPlan = new ActionPlan();
+    actionPlan.setId(UUID.randomUUID());
+    actionPlan.setName("Statement count");
+    actionPlan = actionPlanRepository.saveAndFlush(actionPlan);
+  }
+
+  @Test
+  public void testStatementsPerChunk() {
+    // Given
+    ActionRule actionRule = setUpActionRule();
+    ActionRule otherActionRule = setUpActionRule();
+    for (int i = 0; i < NUMBER_OF_CASES; i++) {
+      setUpCaseToProcess(i % 2 == 0 ? actionRule : otherActionRule);
+    }
+
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+
+    // When
+    int rowsProcessed = chunkProcessor.processChunk(NUMBER_OF_CASES);
+
+    // Then
+    assertThat(rowsProcessed).isEqualTo(NUMBER_OF_CASES);
+    assertThat(caseToProcessRepository.count()).isZero();
+
+    // One for the claim, then one per action rule (with its plan), however many cases there are
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+  }
+
+  private ActionRule setUpActionRule() {
+    ActionRule actionRule = new ActionRule();
+    actionRule.setId(UUID.randomUUID());
+    actionRule.setTriggerDateTime(OffsetDateTime.now());
+    actionRule.setHasTriggered(true);
+    actionRule.setActionType(ActionType.FIELD);
+    actionRule.setActionPlan(actionPlan);
+    actionRule.setClassifiersClause(" case_type != 'HI'");
+    return actionRuleRepository.saveAndFlush(actionRule);
+  }
+
+  private void setUpCaseToProcess(ActionRule actionRule) {
+    Case caze = easyRandom.nextObject(Case.class);
+    caze.setActionPlanId(actionPlan.getId());
+    caze.setRefusalReceived(null);
+    caze = caseRepository.saveAndFlush(caze);
+
+    CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setActionRule(actionRule);
+    caseToProcess.setBatchId(UUID.randomUUID());
+    caseToProcess.setBatchQuantity(NUMBER_OF_CASES);
+    caseToProcess.setCaze(caze);
+    caseToProcessRepository.saveAndFlush(caseToProcess);
+  }
+}
@@ -0,0 +1,155 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jeasy.random.EasyRandom;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.entity.ActionPlan;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.ActionType;
+import uk.gov.ons.census.action.model.entity.Case;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.repository.ActionPlanRepository;
+import uk.gov.ons.census.action.model.repository.ActionRuleRepository;
+import uk.gov.ons.census.action.model.repository.BulkDeleteRepository;
+import uk.gov.ons.census.action.model.repository.CaseRepository;
+import uk.gov.ons.census.action.model.repository.CaseToProcessRepository;
+import uk.gov.ons.census.action.model.repository.ChunkClaimRepository;
+import uk.gov.ons.census.action.model.repository.FulfilmentToProcessRepository;
+
+/**
+ * Compares the cost of removing a chunk of processed rows from the case_to_process 'queue' using
+ * the original delete-per-entity approach, the bulk delete and the claim-by-delete query.
+ *
+ * <p>This is slow and only produces timings in the log, so it's skipped unless run with
+ * -Dbenchmark=true. The poller is slowed right down so that it doesn't steal the rows.
+ */
+@ContextConfiguration
+@SpringBootTest(properties = {"scheduler.frequency=3600000"})
+@ActiveProfiles("test")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class ChunkDeleteBenchmarkIT {
+  private static final Logger log = LoggerFactory.getLogger(ChunkDeleteBenchmarkIT.class);
+  private static final int[] CHUNK_SIZES = {1000, 10000, 50000};
+  private static final EasyRandom easyRandom = new EasyRandom();
+
+  @Autowired private CaseRepository caseRepository;
+  @Autowired private ActionRuleRepository actionRuleRepository;
+  @Autowired private ActionPlanRepository actionPlanRepository;
+  @Autowired private CaseToProcessRepository caseToProcessRepository;
+  @Autowired private FulfilmentToProcessRepository fulfilmentToProcessRepository;
+  @Autowired private BulkDeleteRepository bulkDeleteRepository;
+  @Autowired private ChunkClaimRepository chunkClaimRepository;
+  @Autowired private JdbcTemplate jdbcTemplate;
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  private ActionRule actionRule;
+  private Case caze;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+    fulfilmentToProcessRepository.deleteAllInBatch();
+    caseToProcessRepository.deleteAllInBatch();
+    caseRepository.deleteAllInBatch();
+    actionRuleRepository.deleteAllInBatch();
+    actionPlanRepository.deleteAllInBatch();
+
+    ActionPlan actionPlan = new ActionPlan();
+    actionPlan.setId(UUID.randomUUID());
+    actionPlan.setName("Benchmark");
+    actionPlan = actionPlanRepository.saveAndFlush(actionPlan);
+
+    actionRule = new ActionRule();
+    actionRule.setId(UUID.randomUUID());
+    actionRule.setTriggerDateTime(OffsetDateTime.now());
+    actionRule.setHasTriggered(true);
+    actionRule.setActionType(ActionType.P_RL_1RL1_1);
+    actionRule.setActionPlan(actionPlan);
+    actionRule.setClassifiersClause(" case_type != 'HI'");
+    actionRule = actionRuleRepository.saveAndFlush(actionRule);
+
+    caze = easyRandom.nextObject(Case.class);
+    caze.setActionPlanId(actionPlan.getId());
+    caze.setRefusalReceived(null);
+    caze = caseRepository.saveAndFlush(caze);
+  }
+
+  @Test
+  public void benchmarkDeletingProcessedChunks() {
+    for (int chunkSize : CHUNK_SIZES) {
+      insertCasesToProcess(chunkSize);
+      long perEntityDeleteMillis =
+          timeInTransaction(
+              () -> {
+                chunkClaimRepository
+                    .findCaseChunkToProcess(chunkSize, ShardRange.ALL)
+                    .forEach(caseToProcessRepository::delete);
+              });
+      assertThat(caseToProcessRepository.count()).isZero();
+
+      insertCasesToProcess(chunkSize);
+      long bulkDeleteMillis =
+          timeInTransaction(
+              () -> {
+                bulkDeleteRepository.deleteCasesToProcess(
+                    chunkClaimRepository
+                        .findCaseChunkToProcess(chunkSize, ShardRange.ALL)
+                        .stream()
+                        .mapToLong(CaseToProcess::getId)
+                        .toArray());
+              });
+      assertThat(caseToProcessRepository.count()).isZero();
+
+      insertCasesToProcess(chunkSize);
+      long claimByDeleteMillis =
+          timeInTransaction(
+              () ->
+                  chunkClaimRepository.findAndDeleteCaseChunkToProcess(
+                      chunkSize, ShardRange.ALL));
+      assertThat(caseToProcessRepository.count()).isZero();
+
+      log.with("chunkSize", chunkSize)
+          .with("perEntityDeleteMillis", perEntityDeleteMillis)
+          .with("bulkDeleteMillis", bulkDeleteMillis)
+          .with("claimByDeleteMillis", claimByDeleteMillis)
+          .info("Chunk delete benchmark");
+    }
+  }
+
+  private void insertCasesToProcess(int numberOfRows) {
+    UUID batchId = UUID.randomUUID();
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO actionv2.case_to_process (caze_case_ref, action_rule_id, batch_id,"
+            + " batch_quantity) VALUES (?, ?, ?, ?)",
+        Stream.generate(
+                () -> new Object[] {caze.getCaseRef(), actionRule.getId(), batchId, numberOfRows})
+            .limit(numberOfRows)
+            .collect(Collectors.toList()));
+  }
+
+  private long timeInTransaction(Runnable runnable) {
+    long startTime = System.nanoTime();
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> runnable.run());
+    return (System.nanoTime() - startTime) / 1_000_000;
+  }
+}
@@ -0,0 +1,83 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import uk.gov.ons.census.action.messaging.CapturedMessage;
+import uk.gov.ons.census.action.messaging.CapturingRabbitTemplate;
+
+public class ChunkPipelineTest {
+  private CapturingRabbitTemplate rabbitTemplate;
+  private ChunkPipeline underTest;
+
+  @Before
+  public void setUp() {
+    rabbitTemplate = spy(new CapturingRabbitTemplate(mock(ConnectionFactory.class)));
+    doNothing().when(rabbitTemplate).send(any(CapturedMessage.class));
+    underTest = new ChunkPipeline(rabbitTemplate, 4, 3);
+  }
+
+  @After
+  public void tearDown() {
+    underTest.shutdown();
+  }
+
+  @Test
+  public void testMessagesArePublishedInRowOrder() {
+    // Given
+    List<Integer> rows = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+    // When
+    underTest.buildAndPublish(
+        rows, row -> rabbitTemplate.convertAndSend("exchange", "key", "row " + row));
+
+    // Then
+    ArgumentCaptor<CapturedMessage> messageCaptor = ArgumentCaptor.forClass(CapturedMessage.class);
+    verify(rabbitTemplate, times(20)).send(messageCaptor.capture());
+    assertThat(messageCaptor.getAllValues())
+        .extracting(message -> new String(message.getMessage().getBody()))
+        .containsExactlyElementsOf(
+            rows.stream().map(row -> "row " + row).collect(Collectors.toList()));
+    assertThat(messageCaptor.getAllValues())
+        .extracting(CapturedMessage::getExchange, CapturedMessage::getRoutingKey)
+        .containsOnly(tuple("exchange", "key"));
+  }
+
+  @Test
+  public void testFailedBuildFailsTheChunk() {
+    // Given
+    List<Integer> rows = List.of(0, 1, 2);
+
+    // When
+    assertThatThrownBy(
+            () ->
+                underTest.buildAndPublish(
+                    rows,
+                    row -> {
+                      if (row == 0) {
+                        throw new RuntimeException("Broken");
+                      }
+                      rabbitTemplate.convertAndSend("exchange", "key", "row " + row);
+                    }))
+        .hasMessage("Broken");
+
+    // Then nothing after the failed row is published
+    verify(rabbitTemplate, never()).send(any(CapturedMessage.class));
+  }
+}
@@ -1,72 +1,143 @@
 package uk.gov.ons.census.action.poller;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
 
 public class ChunkPollerTest {
+  private static final int CHUNK_SIZE = 10;
 
   @Test
   public void testProcessQueuedCases() {
     // Given
     ChunkProcessor chunkProcessor = mock(ChunkProcessor.class);
-    ChunkPoller underTest = new ChunkPoller(chunkProcessor);
+    ChunkPoller underTest = buildChunkPoller(chunkProcessor);
 
     // When
     underTest.processQueuedCases();
 
     // Then
-    verify(chunkProcessor).processChunk();
-    verify(chunkProcessor).isThereWorkToDo();
+    verify(chunkProcessor).processChunk(CHUNK_SIZE);
   }
 
   @Test
   public void testProcessQueuedFulfilments() {
     // Given
     ChunkProcessor chunkProcessor = mock(ChunkProcessor.class);
-    ChunkPoller underTest = new ChunkPoller(chunkProcessor);
+    ChunkPoller underTest = buildChunkPoller(chunkProcessor);
 
     // When
     underTest.processFulfilments();
 
     // Then
-    verify(chunkProcessor).processFulfilmentChunk();
-    verify(chunkProcessor).isThereFulfilmentWorkToDo();
+    verify(chunkProcessor).processFulfilmentChunk(CHUNK_SIZE);
   }
 
   @Test
   public void testProcessQueuedCasesMultipleChunks() {
     // Given
     ChunkProcessor chunkProcessor = mock(ChunkProcessor.class);
-    ChunkPoller underTest = new ChunkPoller(chunkProcessor);
-    when(chunkProcessor.isThereWorkToDo()).thenReturn(true).thenReturn(true).thenReturn(false);
+    ChunkPoller underTest = buildChunkPoller(chunkProcessor);
+    when(chunkProcessor.processChunk(anyInt()))
+        .thenReturn(CHUNK_SIZE)
+        .thenReturn(CHUNK_SIZE)
+        .thenReturn(CHUNK_SIZE - 1);
 
     // When
     underTest.processQueuedCases();
 
     // Then
-    verify(chunkProcessor, times(3)).processChunk();
-    verify(chunkProcessor, times(3)).isThereWorkToDo();
+    verify(chunkProcessor, times(3)).processChunk(CHUNK_SIZE);
   }
 
   @Test
   public void testProcessQueuedFulfilmentsMultipleChunks() {
     // Given
     ChunkProcessor chunkProcessor = mock(ChunkProcessor.class);
-    ChunkPoller underTest = new ChunkPoller(chunkProcessor);
-    when(chunkProcessor.isThereFulfilmentWorkToDo())
-        .thenReturn(true)
-        .thenReturn(true)
-        .thenReturn(false);
+    ChunkPoller underTest = buildChunkPoller(chunkProcessor);
+    when(chunkProcessor.processFulfilmentChunk(anyInt()))
+        .thenReturn(CHUNK_SIZE)
+        .thenReturn(CHUNK_SIZE)
+        .thenReturn(0);
 
     // When
     underTest.processFulfilments();
 
     // Then
-    verify(chunkProcessor, times(3)).processFulfilmentChunk();
-    verify(chunkProcessor, times(3)).isThereFulfilmentWorkToDo();
+    verify(chunkProcessor, times(3)).processFulfilmentChunk(CHUNK_SIZE);
+  }
+
+  @Test
+  public void testFailedChunkShrinksChunkSize() {
+    // Given
+    ChunkProcessor chunkProcessor = mock(ChunkProcessor.class);
+    ChunkSizeController caseChunkSizeController =
+        new ChunkSizeController("cases", CHUNK_SIZE, 1, CHUNK_SIZE, 5000);
+    ChunkPoller underTest =
+        new ChunkPoller(
+            chunkProcessor,
+            caseChunkSizeController,
+            ChunkSizeController.fixed("f", CHUNK_SIZE),
+            new QueueWakeUp(0),
+            new QueueWakeUp(0),
+            buildThrottle(mock(AmqpAdmin.class)));
+    when(chunkProcessor.processChunk(anyInt())).thenThrow(new RuntimeException("Broken"));
+
+    // When
+    assertThatThrownBy(underTest::processQueuedCases).isInstanceOf(RuntimeException.class);
+
+    // Then
+    assertThat(caseChunkSizeController.getChunkSize()).isEqualTo(CHUNK_SIZE / 2);
+  }
+
+  @Test
+  public void testBackedUpFieldQueuePausesCasesButNotFulfilments() {
+    // Given
+    ChunkProcessor chunkProcessor = mock(ChunkProcessor.class);
+    AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+    when(amqpAdmin.getQueueInfo("Action.Printer"))
+        .thenReturn(new QueueInformation("Action.Printer", 0, 1));
+    when(amqpAdmin.getQueueInfo("Action.Field"))
+        .thenReturn(new QueueInformation("Action.Field", 1000, 1));
+    DownstreamQueueThrottle throttle = buildThrottle(amqpAdmin);
+    throttle.checkQueueDepths();
+    ChunkPoller underTest = buildChunkPoller(chunkProcessor, throttle);
+
+    // When
+    underTest.processQueuedCases();
+    underTest.processFulfilments();
+
+    // Then
+    verify(chunkProcessor, never()).processChunk(anyInt());
+    verify(chunkProcessor).processFulfilmentChunk(CHUNK_SIZE);
+  }
+
+  private ChunkPoller buildChunkPoller(ChunkProcessor chunkProcessor) {
+    return buildChunkPoller(chunkProcessor, buildThrottle(mock(AmqpAdmin.class)));
+  }
+
+  private ChunkPoller buildChunkPoller(
+      ChunkProcessor chunkProcessor, DownstreamQueueThrottle downstreamQueueThrottle) {
+    return new ChunkPoller(
+        chunkProcessor,
+        ChunkSizeController.fixed("cases", CHUNK_SIZE),
+        ChunkSizeController.fixed("fulfilments", CHUNK_SIZE),
+        new QueueWakeUp(0),
+        new QueueWakeUp(0),
+        downstreamQueueThrottle);
+  }
+
+  private DownstreamQueueThrottle buildThrottle(AmqpAdmin amqpAdmin) {
+    return new DownstreamQueueThrottle(
+        amqpAdmin, true, "Action.Printer", 100, 500, "Action.Field", 100, 500);
   }
 }
@@ -1,124 +1,324 @@
 package uk.gov.ons.census.action.poller;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.ons.census.action.builders.UacQidLinkBuilder;
+import uk.gov.ons.census.action.cache.UacQidCache;
+import uk.gov.ons.census.action.cache.UacQidReservation;
+import uk.gov.ons.census.action.model.CaseToProcessRecord;
+import uk.gov.ons.census.action.model.ShardRange;
 import uk.gov.ons.census.action.model.entity.CaseToProcess;
 import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
-import uk.gov.ons.census.action.model.repository.CaseToProcessRepository;
-import uk.gov.ons.census.action.model.repository.FulfilmentToProcessRepository;
+import uk.gov.ons.census.action.model.entity.UacQidLink;
+import uk.gov.ons.census.action.model.repository.BulkDeleteRepository;
+import uk.gov.ons.census.action.model.repository.CaseToProcessRecordRepository;
+import uk.gov.ons.census.action.model.repository.ChunkClaimRepository;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ChunkProcessorTest {
-  @Mock private CaseToProcessRepository caseToProcessRepository;
+  private static final int CHUNK_SIZE = 2;
 
-  @Mock private CaseProcessor caseProcessor;
+  @Mock private ChunkClaimRepository chunkClaimRepository;
 
-  @Mock private FulfilmentToProcessRepository fulfilmentToProcessRepository;
+  @Mock private CaseProcessor caseProcessor;
 
   @Mock private FulfilmentProcessor fulfilmentProcessor;
 
-  @InjectMocks private ChunkProcessor underTest;
+  @Mock private BulkDeleteRepository bulkDeleteRepository;
+
+  @Mock private CaseToProcessRecordRepository caseToProcessRecordRepository;
+
+  @Mock private ShardMembership shardMembership;
+
+  @Mock private ChunkPipeline chunkPipeline;
 
-  @Value("${scheduler.chunksize}")
-  private int chunkSize;
+  @Mock private CaseSelectedAggregator caseSelectedAggregator;
+
+  @Mock private UacQidCache uacQidCache;
+
+  @Mock private UacQidChunkPlanner uacQidChunkPlanner;
+
+  @Mock private UacQidLinkBuilder uacQidLinkBuilder;
+
+  @InjectMocks private ChunkProcessor underTest;
 
   @Test
   public void testProcessChunk() {
     // Given
     CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setId(123L);
+    CaseToProcess otherCaseToProcess = new CaseToProcess();
+    otherCaseToProcess.setId(456L);
     List<CaseToProcess> caseToProcessList = new LinkedList<>();
     caseToProcessList.add(caseToProcess);
-    when(caseToProcessRepository.findChunkToProcess(anyInt()))
-        .thenReturn(caseToProcessList.stream());
+    caseToProcessList.add(otherCaseToProcess);
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any()))
+        .thenReturn(caseToProcessList);
 
     // When
-    underTest.processChunk();
+    int actualResult = underTest.processChunk(CHUNK_SIZE);
 
     // Then
-    verify(caseToProcessRepository).findChunkToProcess(eq(chunkSize));
+    assertThat(actualResult).isEqualTo(2);
+    verify(chunkClaimRepository).findCaseChunkToProcess(eq(CHUNK_SIZE), any());
     verify(caseProcessor).process(eq(caseToProcess));
-    verify(caseToProcessRepository).delete(eq(caseToProcess));
+    verify(caseProcessor).process(eq(otherCaseToProcess));
+    verify(bulkDeleteRepository).deleteCasesToProcess(aryEq(new long[] {123L, 456L}));
   }
 
   @Test
-  public void testIsThereWorkToDoNoThereIsNot() {
+  public void testProcessChunkClaimsFromOurShards() {
     // Given
-    when(caseToProcessRepository.count()).thenReturn(0L);
+    ShardRange shardRange = new ShardRange(8, 2, 3);
+    when(shardMembership.getShardRange()).thenReturn(shardRange);
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any())).thenReturn(List.of());
 
     // When
-    boolean actualResult = underTest.isThereWorkToDo();
+    underTest.processChunk(CHUNK_SIZE);
 
     // Then
-    verify(caseToProcessRepository).count();
-    assertThat(actualResult).isFalse();
+    verify(chunkClaimRepository).findCaseChunkToProcess(eq(CHUNK_SIZE), eq(shardRange));
   }
 
   @Test
-  public void testIsThereWorkToDoYesThereIs() {
+  public void testProcessChunkThroughPipeline() {
     // Given
-    when(caseToProcessRepository.count()).thenReturn(666L);
+    ReflectionTestUtils.setField(underTest, "pipelineEnabled", true);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setId(123L);
+    List<CaseToProcess> cases = List.of(caseToProcess);
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any())).thenReturn(cases);
 
     // When
-    boolean actualResult = underTest.isThereWorkToDo();
+    int actualResult = underTest.processChunk(CHUNK_SIZE);
 
     // Then
-    verify(caseToProcessRepository).count();
-    assertThat(actualResult).isTrue();
+    assertThat(actualResult).isEqualTo(1);
+    verify(chunkPipeline).buildAndPublish(eq(cases), any());
+    verify(caseProcessor, never()).process(any(CaseToProcess.class));
+    verify(bulkDeleteRepository).deleteCasesToProcess(aryEq(new long[] {123L}));
   }
 
   @Test
-  public void testProcessFulfilmentChunk() {
+  public void testPipelinedChunkBuiltFromPrefetchedUacQidLinksAndDetachedRows() {
     // Given
-    FulfilmentToProcess fulfilments = new FulfilmentToProcess();
-    List<FulfilmentToProcess> fulfilementsToSendList = new LinkedList<>();
-    fulfilementsToSendList.add(fulfilments);
-    when(fulfilmentToProcessRepository.findChunkToProcess(anyInt()))
-        .thenReturn(fulfilementsToSendList.stream());
+    ReflectionTestUtils.setField(underTest, "pipelineEnabled", true);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setId(123L);
+    List<CaseToProcess> cases = List.of(caseToProcess);
+    Set<UUID> caseIds = Set.of(UUID.randomUUID());
+    Map<UUID, List<UacQidLink>> uacQidLinks = Map.of();
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any())).thenReturn(cases);
+    when(uacQidChunkPlanner.planExistingUacQidCases(cases)).thenReturn(caseIds);
+    when(uacQidLinkBuilder.findUacQidLinks(caseIds)).thenReturn(uacQidLinks);
+    doAnswer(
+            invocation -> {
+              invocation.<Runnable>getArgument(1).run();
+              return null;
+            })
+        .when(uacQidLinkBuilder)
+        .runWithUacQidLinks(eq(uacQidLinks), any());
+    doAnswer(
+            invocation -> {
+              List<CaseToProcess> rows = invocation.getArgument(0);
+              rows.forEach(invocation.<Consumer<CaseToProcess>>getArgument(1));
+              return null;
+            })
+        .when(chunkPipeline)
+        .buildAndPublish(eq(cases), any());
 
     // When
-    underTest.processFulfilmentChunk();
+    underTest.processChunk(CHUNK_SIZE);
 
     // Then
-    verify(fulfilmentToProcessRepository).findChunkToProcess(eq(chunkSize));
-    verify(fulfilmentProcessor).process(eq(fulfilments));
-    verify(fulfilmentToProcessRepository).delete(eq(fulfilments));
+    InOrder inOrder = inOrder(uacQidLinkBuilder, chunkClaimRepository, chunkPipeline);
+    inOrder.verify(uacQidLinkBuilder).findUacQidLinks(caseIds);
+    inOrder.verify(chunkClaimRepository).detachChunk();
+    inOrder.verify(chunkPipeline).buildAndPublish(eq(cases), any());
+    verify(uacQidLinkBuilder).runWithUacQidLinks(eq(uacQidLinks), any());
+    verify(caseProcessor).process(caseToProcess);
   }
 
   @Test
-  public void testIsThereFulfilmentWorkToDoNoThereIsNot() {
+  public void testProcessChunkReservesUacQidsOnce() {
     // Given
-    when(fulfilmentToProcessRepository.countByBatchIdNotNull()).thenReturn(0L);
+    ReflectionTestUtils.setField(underTest, "reserveUacQids", true);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setId(123L);
+    CaseToProcess otherCaseToProcess = new CaseToProcess();
+    otherCaseToProcess.setId(456L);
+    List<CaseToProcess> cases = List.of(caseToProcess, otherCaseToProcess);
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any())).thenReturn(cases);
+    Map<Integer, Integer> pairsPerType = Map.of(1, 2);
+    when(uacQidChunkPlanner.planCases(cases)).thenReturn(pairsPerType);
+    UacQidReservation uacQidReservation = mock(UacQidReservation.class);
+    when(uacQidCache.reserve(pairsPerType)).thenReturn(uacQidReservation);
+    doAnswer(
+            invocation -> {
+              ((Runnable) invocation.getArgument(1)).run();
+              return null;
+            })
+        .when(uacQidCache)
+        .runWithReservation(eq(uacQidReservation), any());
 
     // When
-    boolean actualResult = underTest.isThereFulfilmentWorkToDo();
+    underTest.processChunk(CHUNK_SIZE);
 
     // Then
-    verify(fulfilmentToProcessRepository).countByBatchIdNotNull();
-    assertThat(actualResult).isFalse();
+    verify(uacQidCache).reserve(pairsPerType);
+    verify(uacQidCache, times(2)).runWithReservation(eq(uacQidReservation), any());
+    verify(caseProcessor).process(eq(caseToProcess));
+    verify(caseProcessor).process(eq(otherCaseToProcess));
   }
 
   @Test
-  public void testIsThereFulfilmentWorkToDoYesThereIs() {
+  public void testProcessChunkWithoutUacsReservesNothing() {
     // Given
-    when(fulfilmentToProcessRepository.countByBatchIdNotNull()).thenReturn(666L);
+    ReflectionTestUtils.setField(underTest, "reserveUacQids", true);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    List<CaseToProcess> cases = List.of(caseToProcess);
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any())).thenReturn(cases);
+    when(uacQidChunkPlanner.planCases(cases)).thenReturn(Map.of());
 
     // When
-    boolean actualResult = underTest.isThereFulfilmentWorkToDo();
+    underTest.processChunk(CHUNK_SIZE);
 
     // Then
-    verify(fulfilmentToProcessRepository).countByBatchIdNotNull();
-    assertThat(actualResult).isTrue();
+    verify(uacQidCache, never()).reserve(any(Map.class));
+    verify(caseProcessor).process(eq(caseToProcess));
+  }
+
+  @Test
+  public void testProcessEmptyChunk() {
+    // Given
+    when(chunkClaimRepository.findCaseChunkToProcess(anyInt(), any())).thenReturn(List.of());
+
+    // When
+    int actualResult = underTest.processChunk(CHUNK_SIZE);
+
+    // Then
+    assertThat(actualResult).isZero();
+    verify(caseProcessor, never()).process(any(CaseToProcess.class));
+    verify(bulkDeleteRepository, never()).deleteCasesToProcess(any());
+  }
+
+  @Test
+  public void testProcessChunkClaimByDelete() {
+    // Given
+    ReflectionTestUtils.setField(underTest, "claimByDelete", true);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    when(chunkClaimRepository.findAndDeleteCaseChunkToProcess(anyInt(), any()))
+        .thenReturn(List.of(caseToProcess));
+
+    // When
+    int actualResult = underTest.processChunk(CHUNK_SIZE);
+
+    // Then
+    assertThat(actualResult).isEqualTo(1);
+    verify(chunkClaimRepository).findAndDeleteCaseChunkToProcess(eq(CHUNK_SIZE), any());
+    verify(caseProcessor).process(eq(caseToProcess));
+    verify(chunkClaimRepository, never()).findCaseChunkToProcess(anyInt(), any());
+    verify(bulkDeleteRepository, never()).deleteCasesToProcess(any());
+  }
+
+  @Test
+  public void testProcessChunkWithJdbcRowMapper() {
+    // Given
+    ReflectionTestUtils.setField(underTest, "jdbcRowMapper", true);
+    CaseToProcessRecord caseToProcess = new CaseToProcessRecord(123L, null, null, null, 1, null);
+    when(caseToProcessRecordRepository.findChunkToProcess(anyInt(), any()))
+        .thenReturn(List.of(caseToProcess));
+
+    // When
+    int actualResult = underTest.processChunk(CHUNK_SIZE);
+
+    // Then
+    assertThat(actualResult).isEqualTo(1);
+    verify(caseToProcessRecordRepository).findChunkToProcess(eq(CHUNK_SIZE), any());
+    verify(caseProcessor).process(eq(caseToProcess));
+    verify(bulkDeleteRepository).deleteCasesToProcess(aryEq(new long[] {123L}));
+    verify(chunkClaimRepository, never()).findCaseChunkToProcess(anyInt(), any());
+  }
+
+  @Test
+  public void testProcessChunkWithJdbcRowMapperClaimByDelete() {
+    // Given
+    ReflectionTestUtils.setField(underTest, "jdbcRowMapper", true);
+    ReflectionTestUtils.setField(underTest, "claimByDelete", true);
+    CaseToProcessRecord caseToProcess = new CaseToProcessRecord(123L, null, null, null, 1, null);
+    when(caseToProcessRecordRepository.findAndDeleteChunkToProcess(anyInt(), any()))
+        .thenReturn(List.of(caseToProcess));
+
+    // When
+    int actualResult = underTest.processChunk(CHUNK_SIZE);
+
+    // Then
+    assertThat(actualResult).isEqualTo(1);
+    verify(caseProcessor).process(eq(caseToProcess));
+    verify(bulkDeleteRepository, never()).deleteCasesToProcess(any());
+    verify(chunkClaimRepository, never()).findAndDeleteCaseChunkToProcess(anyInt(), any());
+  }
+
+  @Test
+  public void testProcessFulfilmentChunk() {
+    // Given
+    FulfilmentToProcess fulfilments = new FulfilmentToProcess();
+    fulfilments.setId(789L);
+    List<FulfilmentToProcess> fulfilementsToSendList = new LinkedList<>();
+    fulfilementsToSendList.add(fulfilments);
+    when(chunkClaimRepository.findFulfilmentChunkToProcess(anyInt(), any()))
+        .thenReturn(fulfilementsToSendList);
+
+    // When
+    int actualResult = underTest.processFulfilmentChunk(CHUNK_SIZE);
+
+    // Then
+    assertThat(actualResult).isEqualTo(1);
+    verify(chunkClaimRepository).findFulfilmentChunkToProcess(eq(CHUNK_SIZE), any());
+    verify(fulfilmentProcessor).process(eq(fulfilments));
+    verify(bulkDeleteRepository).deleteFulfilmentsToProcess(aryEq(new long[] {789L}));
+  }
+
+  @Test
+  public void testProcessFulfilmentChunkClaimByDelete() {
+    // Given
+    ReflectionTestUtils.setField(underTest, "claimByDelete", true);
+    FulfilmentToProcess fulfilments = new FulfilmentToProcess();
+    when(chunkClaimRepository.findAndDeleteFulfilmentChunkToProcess(anyInt(), any()))
+        .thenReturn(List.of(fulfilments));
+
+    // When
+    int actualResult = underTest.processFulfilmentChunk(CHUNK_SIZE);
+
+    // Then
+    assertThat(actualResult).isEqualTo(1);
+    verify(chunkClaimRepository).findAndDeleteFulfilmentChunkToProcess(eq(CHUNK_SIZE), any());
+    verify(fulfilmentProcessor).process(eq(fulfilments));
+    verify(chunkClaimRepository, never()).findFulfilmentChunkToProcess(anyInt(), any());
+    verify(bulkDeleteRepository, never()).deleteFulfilmentsToProcess(any());
   }
 }
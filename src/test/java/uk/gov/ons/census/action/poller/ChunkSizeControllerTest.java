@@ -0,0 +1,107 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ChunkSizeControllerTest {
+  private static final long TARGET_MILLIS = 1000;
+
+  @Test
+  public void testFixedChunkSizeNeverChanges() {
+    // Given
+    ChunkSizeController underTest = ChunkSizeController.fixed("test", 1000);
+
+    // When
+    underTest.recordSuccess(1000, TimeUnit.MILLISECONDS.toNanos(1));
+    underTest.recordSuccess(1000, TimeUnit.MINUTES.toNanos(10));
+    underTest.recordFailure();
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(1000);
+  }
+
+  @Test
+  public void testFastFullChunkGrowsChunkSize() {
+    // Given
+    ChunkSizeController underTest =
+        new ChunkSizeController("test", 1000, 100, 100000, TARGET_MILLIS);
+
+    // When 1000 rows took 400ms, so 2500 would hit the target
+    underTest.recordSuccess(1000, TimeUnit.MILLISECONDS.toNanos(400));
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(2000); // Growth is capped at doubling
+
+    // When 2000 rows took 800ms, so 2500 would hit the target
+    underTest.recordSuccess(2000, TimeUnit.MILLISECONDS.toNanos(800));
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(2500);
+  }
+
+  @Test
+  public void testPartialChunkDoesNotGrowChunkSize() {
+    // Given
+    ChunkSizeController underTest =
+        new ChunkSizeController("test", 1000, 100, 100000, TARGET_MILLIS);
+
+    // When
+    underTest.recordSuccess(10, TimeUnit.MILLISECONDS.toNanos(1));
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(1000);
+  }
+
+  @Test
+  public void testSlowChunkShrinksChunkSize() {
+    // Given
+    ChunkSizeController underTest =
+        new ChunkSizeController("test", 1000, 100, 100000, TARGET_MILLIS);
+
+    // When
+    underTest.recordSuccess(1000, TimeUnit.MILLISECONDS.toNanos(1250));
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(800);
+
+    // When it's very slow indeed
+    underTest.recordSuccess(800, TimeUnit.SECONDS.toNanos(60));
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(400); // Shrinking is capped at halving
+  }
+
+  @Test
+  public void testFailureHalvesChunkSizeButNotBelowMin() {
+    // Given
+    ChunkSizeController underTest =
+        new ChunkSizeController("test", 1000, 300, 100000, TARGET_MILLIS);
+
+    // When
+    underTest.recordFailure();
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(500);
+
+    // When
+    underTest.recordFailure();
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(300);
+  }
+
+  @Test
+  public void testChunkSizeNeverExceedsMax() {
+    // Given
+    ChunkSizeController underTest =
+        new ChunkSizeController("test", 1000, 100, 1500, TARGET_MILLIS);
+
+    // When
+    underTest.recordSuccess(1000, TimeUnit.MILLISECONDS.toNanos(1));
+
+    // Then
+    assertThat(underTest.getChunkSize()).isEqualTo(1500);
+  }
+}
@@ -0,0 +1,98 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import org.junit.Test;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import uk.gov.ons.census.action.model.entity.ActionHandler;
+
+public class DownstreamQueueThrottleTest {
+  private static final String PRINTER_QUEUE = "Action.Printer";
+  private static final String FIELD_QUEUE = "Action.Field";
+
+  private final AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+  private final DownstreamQueueThrottle underTest =
+      new DownstreamQueueThrottle(amqpAdmin, true, PRINTER_QUEUE, 100, 500, FIELD_QUEUE, 100, 500);
+
+  @Test
+  public void testFullChunksBelowLowWatermark() {
+    // Given
+    givenQueueDepths(100, 0);
+
+    // When
+    underTest.checkQueueDepths();
+
+    // Then
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.PRINTER)).isEqualTo(1000);
+  }
+
+  @Test
+  public void testChunksShrinkBetweenWatermarks() {
+    // Given
+    givenQueueDepths(400, 0);
+
+    // When
+    underTest.checkQueueDepths();
+
+    // Then
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.PRINTER)).isEqualTo(250);
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.FIELD)).isEqualTo(1000);
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.values())).isEqualTo(250);
+  }
+
+  @Test
+  public void testStaysPausedBetweenWatermarks() {
+    // Given
+    givenQueueDepths(0, 500);
+    underTest.checkQueueDepths();
+
+    // When
+    givenQueueDepths(0, 200);
+    underTest.checkQueueDepths();
+
+    // Then
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.FIELD)).isZero();
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.PRINTER)).isEqualTo(1000);
+  }
+
+  @Test
+  public void testResumesBelowLowWatermark() {
+    // Given
+    givenQueueDepths(0, 500);
+    underTest.checkQueueDepths();
+
+    // When
+    givenQueueDepths(0, 100);
+    underTest.checkQueueDepths();
+
+    // Then
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.FIELD)).isEqualTo(1000);
+  }
+
+  @Test
+  public void testKeepsLastStateWhenQueueCannotBeChecked() {
+    // Given
+    givenQueueDepths(0, 1000);
+    underTest.checkQueueDepths();
+
+    // When
+    when(amqpAdmin.getQueueInfo(FIELD_QUEUE))
+        .thenThrow(new AmqpIOException(new IOException("Connection lost")));
+    underTest.checkQueueDepths();
+
+    // Then
+    assertThat(underTest.limitChunkSize(1000, ActionHandler.FIELD)).isZero();
+  }
+
+  private void givenQueueDepths(int printerMessageCount, int fieldMessageCount) {
+    when(amqpAdmin.getQueueInfo(PRINTER_QUEUE))
+        .thenReturn(new QueueInformation(PRINTER_QUEUE, printerMessageCount, 1));
+    when(amqpAdmin.getQueueInfo(FIELD_QUEUE))
+        .thenReturn(new QueueInformation(FIELD_QUEUE, fieldMessageCount, 1));
+  }
+}
@@ -41,7 +41,8 @@ public class FulfilmentProcessorTest {
             uacQidLinkBuilder,
             caseSelectedBuilder,
             OUTBOUND_EXCHANGE,
-            ACTION_CASE_EXCHANGE);
+            ACTION_CASE_EXCHANGE,
+            false);
 
     EasyRandom easyRandom = new EasyRandom();
     FulfilmentToProcess fulfilmentToProcess = easyRandom.nextObject(FulfilmentToProcess.class);
@@ -118,7 +119,8 @@ public class FulfilmentProcessorTest {
             uacQidLinkBuilder,
             caseSelectedBuilder,
             OUTBOUND_EXCHANGE,
-            ACTION_CASE_EXCHANGE);
+            ACTION_CASE_EXCHANGE,
+            false);
 
     EasyRandom easyRandom = new EasyRandom();
     FulfilmentToProcess fulfilmentToProcess = easyRandom.nextObject(FulfilmentToProcess.class);
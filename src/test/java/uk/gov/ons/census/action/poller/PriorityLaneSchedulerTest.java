@@ -0,0 +1,168 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.Test;
+import uk.gov.ons.census.action.poller.PriorityLaneScheduler.Lane;
+
+public class PriorityLaneSchedulerTest {
+  private static final long IDLE_RECHECK = 1000;
+
+  private final List<String> chunksProcessed = new ArrayList<>();
+  private final QueueWakeUp queueWakeUp = new QueueWakeUp(60000);
+  private long now = 0;
+
+  @Test
+  public void testWeightedShareWhileBothLanesHaveWork() {
+    // Given
+    LaneWork fulfilments = new LaneWork("fulfilments", 6);
+    LaneWork cases = new LaneWork("cases", 6);
+    PriorityLaneScheduler underTest = buildScheduler(fulfilments.lane(3), cases.lane(1));
+
+    // When
+    underTest.processLanes();
+
+    // Then the fulfilments get three chunks to every case chunk, until they've run out
+    assertThat(chunksProcessed.subList(0, 8))
+        .containsExactly(
+            "fulfilments",
+            "fulfilments",
+            "cases",
+            "fulfilments",
+            "fulfilments",
+            "fulfilments",
+            "cases",
+            "fulfilments");
+  }
+
+  @Test
+  public void testIdleLaneIsRecheckedDuringBacklog() {
+    // Given
+    LaneWork fulfilments = new LaneWork("fulfilments", 0);
+    LaneWork cases = new LaneWork("cases", 10);
+    PriorityLaneScheduler underTest = buildScheduler(fulfilments.lane(3), cases.lane(1));
+
+    // When
+    underTest.processLanes();
+
+    // Then the fulfilments are looked at again every time the idle recheck time passes
+    assertThat(chunksProcessed.stream().filter("fulfilments"::equals).count()).isEqualTo(4);
+  }
+
+  @Test
+  public void testLaneWithWorkAgainIsNoLongerIdle() {
+    // Given
+    Deque<Boolean> fulfilmentChunks =
+        new ArrayDeque<>(List.of(false, true, true, true, true, true, false));
+    Lane fulfilments =
+        new Lane(
+            "fulfilments",
+            1,
+            () -> {
+              chunksProcessed.add("fulfilments");
+              now += 400;
+              return !fulfilmentChunks.isEmpty() && fulfilmentChunks.poll();
+            });
+    LaneWork cases = new LaneWork("cases", 4);
+    PriorityLaneScheduler underTest = buildScheduler(fulfilments, cases.lane(1));
+
+    // When
+    underTest.processLanes();
+
+    // Then the fulfilments are worked through even though the cases went idle in the meantime
+    assertThat(fulfilmentChunks).isEmpty();
+  }
+
+  @Test
+  public void testBrokenLaneDoesNotStopTheOthers() {
+    // Given
+    LaneWork cases = new LaneWork("cases", 3);
+    Lane brokenLane =
+        new Lane(
+            "fulfilments",
+            3,
+            () -> {
+              throw new RuntimeException("Broken");
+            });
+    PriorityLaneScheduler underTest = buildScheduler(brokenLane, cases.lane(1));
+
+    // When
+    underTest.processLanes();
+
+    // Then
+    assertThat(chunksProcessed).containsOnly("cases").hasSize(4);
+  }
+
+  @Test
+  public void testReturnsWhenAllLanesIdle() {
+    // Given
+    LaneWork fulfilments = new LaneWork("fulfilments", 0);
+    LaneWork cases = new LaneWork("cases", 0);
+    PriorityLaneScheduler underTest = buildScheduler(fulfilments.lane(3), cases.lane(1));
+
+    // When
+    underTest.processLanes();
+
+    // Then
+    assertThat(chunksProcessed).containsExactlyInAnyOrder("fulfilments", "cases");
+  }
+
+  @Test
+  public void testIdleLanesWokenByNewWork() {
+    // Given
+    queueWakeUp.setListening(true);
+    Lane lane =
+        new Lane(
+            "fulfilments",
+            1,
+            () -> {
+              chunksProcessed.add("fulfilments");
+              if (chunksProcessed.size() == 1) {
+                // New work arrives while the first chunk is being processed
+                queueWakeUp.wakeUp();
+              } else {
+                // Stop listening, so the worker goes back to polling rather than waiting again
+                queueWakeUp.setListening(false);
+              }
+              return false;
+            });
+    PriorityLaneScheduler underTest = buildScheduler(lane);
+
+    // When
+    underTest.processLanes();
+
+    // Then
+    assertThat(chunksProcessed).containsExactly("fulfilments", "fulfilments");
+  }
+
+  private PriorityLaneScheduler buildScheduler(Lane... lanes) {
+    return new PriorityLaneScheduler(List.of(lanes), IDLE_RECHECK, () -> now, queueWakeUp);
+  }
+
+  // A lane with a number of full chunks waiting, each of which takes 400ms to process
+  private class LaneWork implements BooleanSupplier {
+    private final String name;
+    private int fullChunksRemaining;
+
+    LaneWork(String name, int fullChunksRemaining) {
+      this.name = name;
+      this.fullChunksRemaining = fullChunksRemaining;
+    }
+
+    Lane lane(int weight) {
+      return new Lane(name, weight, this);
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+      chunksProcessed.add(name);
+      now += 400;
+      return fullChunksRemaining-- > 0;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class QueueWakeUpTest {
+
+  @Test
+  public void testNotListeningFallsBackToPolling() {
+    // Given
+    QueueWakeUp underTest = new QueueWakeUp(60000);
+
+    // When
+    boolean result = underTest.awaitWakeUp(underTest.getWakeUpCount());
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  public void testWakeUpSinceLastLookDoesNotWait() {
+    // Given
+    QueueWakeUp underTest = new QueueWakeUp(60000);
+    underTest.setListening(true);
+    long wakeUpCount = underTest.getWakeUpCount();
+    underTest.wakeUp();
+
+    // When
+    long startTime = System.currentTimeMillis();
+    boolean result = underTest.awaitWakeUp(wakeUpCount);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(System.currentTimeMillis() - startTime).isLessThan(60000);
+  }
+
+  @Test
+  public void testWakeUpFromAnotherThread() throws InterruptedException {
+    // Given
+    QueueWakeUp underTest = new QueueWakeUp(60000);
+    underTest.setListening(true);
+    Thread waker =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              underTest.wakeUp();
+            });
+
+    // When
+    waker.start();
+    boolean result = underTest.awaitWakeUp(underTest.getWakeUpCount());
+    waker.join();
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(underTest.getWakeUpCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testLosingTheListenerSendsWaitingWorkersBackToPolling()
+      throws InterruptedException {
+    // Given
+    QueueWakeUp underTest = new QueueWakeUp(60000);
+    underTest.setListening(true);
+    Thread listener =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              underTest.setListening(false);
+            });
+
+    // When
+    long startTime = System.currentTimeMillis();
+    listener.start();
+    boolean result = underTest.awaitWakeUp(underTest.getWakeUpCount());
+    listener.join();
+
+    // Then
+    assertThat(result).isFalse();
+    assertThat(System.currentTimeMillis() - startTime).isLessThan(60000);
+    assertThat(underTest.awaitWakeUp(underTest.getWakeUpCount())).isFalse();
+  }
+
+  @Test
+  public void testIdlePollWhenNoWakeUp() {
+    // Given
+    QueueWakeUp underTest = new QueueWakeUp(50);
+    underTest.setListening(true);
+
+    // When
+    boolean result = underTest.awaitWakeUp(underTest.getWakeUpCount());
+
+    // Then
+    assertThat(result).isTrue();
+  }
+}
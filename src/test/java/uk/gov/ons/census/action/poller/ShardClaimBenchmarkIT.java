@@ -0,0 +1,179 @@
+package uk.gov.ons.census.action.poller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jeasy.random.EasyRandom;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.entity.ActionPlan;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.ActionType;
+import uk.gov.ons.census.action.model.entity.Case;
+import uk.gov.ons.census.action.model.repository.ActionPlanRepository;
+import uk.gov.ons.census.action.model.repository.ActionRuleRepository;
+import uk.gov.ons.census.action.model.repository.CaseRepository;
+import uk.gov.ons.census.action.model.repository.CaseToProcessRepository;
+import uk.gov.ons.census.action.model.repository.FulfilmentToProcessRepository;
+import uk.gov.ons.census.action.model.repository.WorkerMembershipRepository;
+
+/**
+ * Compares how much of the case_to_process 'queue' a sharded worker's claim has to read with and
+ * without the shard index, when most of the table belongs to other workers. Postgres' own EXPLAIN
+ * ANALYZE figures are logged: the rows it had to throw away and the buffers it touched.
+ *
+ * <p>This is slow and only produces figures in the log, so it's skipped unless run with
+ * -Dbenchmark=true. The poller is slowed right down so that it doesn't steal the rows. It doesn't
+ * assert that the index helps: whether Postgres chooses it depends on the table's statistics, and
+ * the figures are what shows it.
+ */
+@ContextConfiguration
+@SpringBootTest(properties = {"scheduler.frequency=3600000"})
+@ActiveProfiles("test")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class ShardClaimBenchmarkIT {
+  private static final Logger log = LoggerFactory.getLogger(ShardClaimBenchmarkIT.class);
+  private static final int SHARDS = 64;
+  private static final int ROWS = 200000;
+  private static final int ROWS_LEFT_IN_SLICE = 100;
+  private static final int CHUNK_SIZE = 1000;
+  private static final ShardRange SLICE = new ShardRange(SHARDS, 0, 7);
+  private static final EasyRandom easyRandom = new EasyRandom();
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Autowired private CaseRepository caseRepository;
+  @Autowired private ActionRuleRepository actionRuleRepository;
+  @Autowired private ActionPlanRepository actionPlanRepository;
+  @Autowired private CaseToProcessRepository caseToProcessRepository;
+  @Autowired private FulfilmentToProcessRepository fulfilmentToProcessRepository;
+  @Autowired private WorkerMembershipRepository workerMembershipRepository;
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  private ActionRule actionRule;
+  private Case caze;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+    fulfilmentToProcessRepository.deleteAllInBatch();
+    caseToProcessRepository.deleteAllInBatch();
+    caseRepository.deleteAllInBatch();
+    actionRuleRepository.deleteAllInBatch();
+    actionPlanRepository.deleteAllInBatch();
+
+    ActionPlan actionPlan = new ActionPlan();
+    actionPlan.setId(UUID.randomUUID());
+    actionPlan.setName("Benchmark");
+    actionPlan = actionPlanRepository.saveAndFlush(actionPlan);
+
+    actionRule = new ActionRule();
+    actionRule.setId(UUID.randomUUID());
+    actionRule.setTriggerDateTime(OffsetDateTime.now());
+    actionRule.setHasTriggered(true);
+    actionRule.setActionType(ActionType.P_RL_1RL1_1);
+    actionRule.setActionPlan(actionPlan);
+    actionRule.setClassifiersClause(" case_type != 'HI'");
+    actionRule = actionRuleRepository.saveAndFlush(actionRule);
+
+    caze = easyRandom.nextObject(Case.class);
+    caze.setActionPlanId(actionPlan.getId());
+    caze.setRefusalReceived(null);
+    caze = caseRepository.saveAndFlush(caze);
+  }
+
+  @After
+  public void tearDown() {
+    if (Boolean.getBoolean("benchmark")) {
+      dropShardIndexes();
+    }
+  }
+
+  @Test
+  public void benchmarkShardedClaimScan() throws Exception {
+    insertCasesToProcess(ROWS);
+
+    // Leave the worker's own buckets nearly empty, as if it had caught up with its share
+    jdbcTemplate.update(
+        "DELETE FROM actionv2.case_to_process WHERE id IN (SELECT id FROM"
+            + " actionv2.case_to_process WHERE "
+            + SLICE.filterSql("id")
+            + " OFFSET ?)",
+        ROWS_LEFT_IN_SLICE);
+
+    dropShardIndexes();
+    jdbcTemplate.execute("ANALYZE actionv2.case_to_process");
+    JsonNode withoutIndex = explainClaim();
+
+    workerMembershipRepository.createShardIndexes(SHARDS);
+    jdbcTemplate.execute("ANALYZE actionv2.case_to_process");
+    JsonNode withIndex = explainClaim();
+
+    log.with("rows", ROWS)
+        .with("rowsLeftInSlice", ROWS_LEFT_IN_SLICE)
+        .with("rowsRemovedByFilterWithoutIndex", rowsRemovedByFilter(withoutIndex.get("Plan")))
+        .with("rowsRemovedByFilterWithIndex", rowsRemovedByFilter(withIndex.get("Plan")))
+        .with("buffersWithoutIndex", buffers(withoutIndex.get("Plan")))
+        .with("buffersWithIndex", buffers(withIndex.get("Plan")))
+        .with("executionMillisWithoutIndex", withoutIndex.get("Execution Time").asDouble())
+        .with("executionMillisWithIndex", withIndex.get("Execution Time").asDouble())
+        .info("Shard claim scan benchmark");
+  }
+
+  private JsonNode explainClaim() throws Exception {
+    String plan =
+        jdbcTemplate.queryForObject(
+            "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) SELECT id FROM actionv2.case_to_process"
+                + " WHERE "
+                + SLICE.filterSql("id")
+                + " LIMIT "
+                + CHUNK_SIZE
+                + " FOR UPDATE SKIP LOCKED",
+            String.class);
+    return objectMapper.readTree(plan).get(0);
+  }
+
+  // Summed over the whole plan, because the filter is on whichever scan node was chosen
+  private long rowsRemovedByFilter(JsonNode plan) {
+    long rowsRemoved = plan.path("Rows Removed by Filter").asLong();
+    for (JsonNode subPlan : plan.path("Plans")) {
+      rowsRemoved += rowsRemovedByFilter(subPlan);
+    }
+    return rowsRemoved;
+  }
+
+  private long buffers(JsonNode plan) {
+    return plan.path("Shared Hit Blocks").asLong() + plan.path("Shared Read Blocks").asLong();
+  }
+
+  private void dropShardIndexes() {
+    jdbcTemplate.execute("DROP INDEX IF EXISTS actionv2.case_to_process_shard_" + SHARDS);
+    jdbcTemplate.execute("DROP INDEX IF EXISTS actionv2.fulfilment_to_process_shard_" + SHARDS);
+  }
+
+  private void insertCasesToProcess(int numberOfRows) {
+    UUID batchId = UUID.randomUUID();
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO actionv2.case_to_process (caze_case_ref, action_rule_id, batch_id,"
+            + " batch_quantity) VALUES (?, ?, ?, ?)",
+        Stream.generate(
+                () -> new Object[] {caze.getCaseRef(), actionRule.getId(), batchId, numberOfRows})
+            .limit(numberOfRows)
+            .collect(Collectors.toList()));
+  }
+}
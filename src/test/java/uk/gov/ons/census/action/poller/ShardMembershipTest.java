@@ -0,0 +1,165 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.ons.census.action.model.ShardRange;
+import uk.gov.ons.census.action.model.repository.WorkerMembershipRepository;
+
+public class ShardMembershipTest {
+  private static final int SHARDS = 64;
+  private static final long TIMEOUT = 30000;
+
+  @Test
+  public void testShardingDisabled() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = new ShardMembership(workerMembershipRepository);
+
+    // When
+    underTest.heartbeat();
+
+    // Then
+    assertThat(underTest.getShardRange()).isEqualTo(ShardRange.ALL);
+    verify(workerMembershipRepository, never()).heartbeat(any());
+  }
+
+  @Test
+  public void testClaimsEverythingUntilFirstHeartbeat() {
+    // Given
+    ShardMembership underTest = buildShardMembership(mock(WorkerMembershipRepository.class));
+
+    // When
+    ShardRange actualShardRange = underTest.getShardRange();
+
+    // Then
+    assertThat(actualShardRange).isEqualTo(ShardRange.ALL);
+  }
+
+  @Test
+  public void testOnlyWorker() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = buildShardMembership(workerMembershipRepository);
+    UUID workerId = stubWorkers(workerMembershipRepository, underTest, 0, 1);
+
+    // When
+    underTest.heartbeat();
+
+    // Then
+    verify(workerMembershipRepository).heartbeat(workerId);
+    verify(workerMembershipRepository).deleteExpired(TIMEOUT);
+    assertThat(underTest.getShardRange()).isEqualTo(new ShardRange(SHARDS, 0, SHARDS - 1));
+  }
+
+  @Test
+  public void testShardsRebalancedWhenWorkersJoin() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = buildShardMembership(workerMembershipRepository);
+    stubWorkers(workerMembershipRepository, underTest, 0, 1);
+    underTest.heartbeat();
+
+    // When
+    stubWorkers(workerMembershipRepository, underTest, 2, 3);
+    underTest.heartbeat();
+
+    // Then
+    assertThat(underTest.getShardRange()).isEqualTo(new ShardRange(SHARDS, 42, 63));
+  }
+
+  @Test
+  public void testMoreWorkersThanShards() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = buildShardMembership(workerMembershipRepository);
+    stubWorkers(workerMembershipRepository, underTest, 0, SHARDS + 1);
+
+    // When
+    underTest.heartbeat();
+
+    // Then
+    assertThat(underTest.getShardRange().isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testKeepsShardsWhenHeartbeatFails() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = buildShardMembership(workerMembershipRepository);
+    stubWorkers(workerMembershipRepository, underTest, 1, 2);
+    underTest.heartbeat();
+    doThrow(new RuntimeException("Database down"))
+        .when(workerMembershipRepository)
+        .heartbeat(any());
+
+    // When
+    underTest.heartbeat();
+
+    // Then
+    assertThat(underTest.getShardRange()).isEqualTo(new ShardRange(SHARDS, 32, 63));
+  }
+
+  @Test
+  public void testShardIndexesInstalled() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = buildShardMembership(workerMembershipRepository);
+    ReflectionTestUtils.setField(underTest, "installIndexes", true);
+
+    // When
+    underTest.installIndexes();
+
+    // Then
+    verify(workerMembershipRepository).createShardIndexes(SHARDS);
+  }
+
+  @Test
+  public void testShardIndexesNotInstalledUnlessAskedFor() {
+    // Given
+    WorkerMembershipRepository workerMembershipRepository = mock(WorkerMembershipRepository.class);
+    ShardMembership underTest = buildShardMembership(workerMembershipRepository);
+
+    // When
+    underTest.installIndexes();
+
+    // Then
+    verify(workerMembershipRepository, never()).createShardIndexes(anyInt());
+  }
+
+  private ShardMembership buildShardMembership(
+      WorkerMembershipRepository workerMembershipRepository) {
+    ShardMembership shardMembership = new ShardMembership(workerMembershipRepository);
+    ReflectionTestUtils.setField(shardMembership, "shardingEnabled", true);
+    ReflectionTestUtils.setField(shardMembership, "shards", SHARDS);
+    ReflectionTestUtils.setField(shardMembership, "timeoutMillis", TIMEOUT);
+    return shardMembership;
+  }
+
+  // Puts this worker at the given position in the list of live workers
+  private UUID stubWorkers(
+      WorkerMembershipRepository workerMembershipRepository,
+      ShardMembership shardMembership,
+      int position,
+      int numberOfWorkers) {
+    UUID workerId = (UUID) ReflectionTestUtils.getField(shardMembership, "workerId");
+    List<UUID> workers = new ArrayList<>();
+    for (int i = 0; i < numberOfWorkers; i++) {
+      workers.add(i == position ? workerId : UUID.randomUUID());
+    }
+
+    when(workerMembershipRepository.findWorkers()).thenReturn(workers);
+    return workerId;
+  }
+}
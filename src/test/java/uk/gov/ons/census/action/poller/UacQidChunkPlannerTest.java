@@ -0,0 +1,121 @@
+package uk.gov.ons.census.action.poller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Test;
+import uk.gov.ons.census.action.model.entity.ActionRule;
+import uk.gov.ons.census.action.model.entity.ActionType;
+import uk.gov.ons.census.action.model.entity.Case;
+import uk.gov.ons.census.action.model.entity.CaseToProcess;
+import uk.gov.ons.census.action.model.entity.FulfilmentToProcess;
+
+public class UacQidChunkPlannerTest {
+  private final UacQidChunkPlanner underTest = new UacQidChunkPlanner();
+
+  @Test
+  public void testPlanCases() {
+    // Given
+    List<CaseToProcess> cases =
+        List.of(
+            buildCaseToProcess(ActionType.P_QU_H2, "HH", "W1000", "U", null),
+            buildCaseToProcess(ActionType.P_RL_1RL1_1, "HH", "E1000", "U", null),
+            buildCaseToProcess(ActionType.P_RL_1RL1_1, "HH", "E1000", "U", null),
+            buildCaseToProcess(ActionType.CE_IC03, "CE", "E1000", "E", 5),
+            buildCaseToProcess(ActionType.ICL1E, "HH", "E1000", "U", null));
+
+    // When
+    Map<Integer, Integer> actualPairsPerType = underTest.planCases(cases);
+
+    // Then
+    assertThat(actualPairsPerType).isEqualTo(Map.of(1, 2, 2, 1, 3, 1, 21, 5));
+  }
+
+  @Test
+  public void testPlanCasesForLettersWithoutUacs() {
+    // Given
+    List<CaseToProcess> cases =
+        List.of(
+            buildCaseToProcess(ActionType.P_RL_1RL1A, "HH", "E1000", "U", null),
+            buildCaseToProcess(ActionType.P_NC_NCLTA1, "HH", "E1000", "U", null));
+
+    // When
+    Map<Integer, Integer> actualPairsPerType = underTest.planCases(cases);
+
+    // Then
+    assertThat(actualPairsPerType).isEmpty();
+  }
+
+  @Test
+  public void testPlanCasesSkipsCasesWhichWillFail() {
+    // Given
+    List<CaseToProcess> cases =
+        List.of(buildCaseToProcess(ActionType.P_RL_1RL1_1, "HH", "X1000", "U", null));
+
+    // When
+    Map<Integer, Integer> actualPairsPerType = underTest.planCases(cases);
+
+    // Then
+    assertThat(actualPairsPerType).isEmpty();
+  }
+
+  @Test
+  public void testPlanExistingUacQidCases() {
+    // Given
+    CaseToProcess initialContact = buildCaseToProcess(ActionType.ICL1E, "HH", "E1000", "U", null);
+    initialContact.getCaze().setCaseId(UUID.randomUUID());
+    CaseToProcess reminder = buildCaseToProcess(ActionType.P_RL_1RL1_1, "HH", "E1000", "U", null);
+    reminder.getCaze().setCaseId(UUID.randomUUID());
+
+    // When
+    Set<UUID> actualCaseIds = underTest.planExistingUacQidCases(List.of(initialContact, reminder));
+
+    // Then
+    assertThat(actualCaseIds).containsExactly(initialContact.getCaze().getCaseId());
+  }
+
+  @Test
+  public void testPlanFulfilments() {
+    // Given
+    List<FulfilmentToProcess> fulfilments =
+        List.of(
+            buildFulfilmentToProcess("P_OR_H1"),
+            buildFulfilmentToProcess("P_OR_H1"),
+            buildFulfilmentToProcess("P_OR_I1"),
+            buildFulfilmentToProcess("P_LP_HL1"));
+
+    // When
+    Map<Integer, Integer> actualPairsPerType = underTest.planFulfilments(fulfilments);
+
+    // Then
+    assertThat(actualPairsPerType).isEqualTo(Map.of(1, 2, 21, 1));
+  }
+
+  private CaseToProcess buildCaseToProcess(
+      ActionType actionType,
+      String caseType,
+      String region,
+      String addressLevel,
+      Integer ceExpectedCapacity) {
+    Case caze = new Case();
+    caze.setCaseType(caseType);
+    caze.setRegion(region);
+    caze.setAddressLevel(addressLevel);
+    ActionRule actionRule = new ActionRule();
+    actionRule.setActionType(actionType);
+    CaseToProcess caseToProcess = new CaseToProcess();
+    caseToProcess.setCaze(caze);
+    caseToProcess.setActionRule(actionRule);
+    caseToProcess.setCeExpectedCapacity(ceExpectedCapacity);
+    return caseToProcess;
+  }
+
+  private FulfilmentToProcess buildFulfilmentToProcess(String fulfilmentCode) {
+    FulfilmentToProcess fulfilmentToProcess = new FulfilmentToProcess();
+    fulfilmentToProcess.setFulfilmentCode(fulfilmentCode);
+    return fulfilmentToProcess;
+  }
+}
@@ -2,6 +2,7 @@ package uk.gov.ons.census.action.utility;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static uk.gov.ons.census.action.utility.ActionTypeHelper.doesNotRequireUacQid;
 import static uk.gov.ons.census.action.utility.ActionTypeHelper.isExpectedCapacityActionType;
 
 import org.junit.Test;
@@ -22,4 +23,18 @@ public class ActionTypeHelperTest {
 
     assertFalse(testActionType);
   }
+
+  @Test
+  public void testDoesNotRequireUacQidIsTrue() {
+    boolean testActionType = doesNotRequireUacQid(ActionType.P_NC_NCLTA1);
+
+    assertTrue(testActionType);
+  }
+
+  @Test
+  public void testDoesNotRequireUacQidIsFalse() {
+    boolean testActionType = doesNotRequireUacQid(ActionType.P_RL_1RL1_1);
+
+    assertFalse(testActionType);
+  }
 }